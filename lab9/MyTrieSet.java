@@ -30,13 +30,14 @@ public class MyTrieSet implements TrieSet61B {
      */
     @Override
     public boolean contains(String key) {
-        List<String> collection = collection();
-        for (String aString : collection) {
-            if (aString.equals(key)) {
-                return true;
-            }
+        if (key == null) {
+            return false;
+        }
+        Node currentNode = root;
+        for (int i = 0; i < key.length() && currentNode != null; i += 1) {
+            currentNode = currentNode.next.get(key.charAt(i));
         }
-        return false;
+        return currentNode != null && currentNode.isKey;
     }
 
     /**
@@ -59,58 +60,55 @@ public class MyTrieSet implements TrieSet61B {
     }
 
     /**
-     * Returns a list of all words that start with PREFIX
+     * Returns a list of all words that start with PREFIX, PREFIX itself included if it
+     * is one.
      */
     @Override
     public List<String> keysWithPrefix(String prefix) {
-        List<String> keysWithPrefix = new LinkedList<>();
+        List<String> keysWithPrefix = new ArrayList<>();
         Node currentNode = root;
-        for (int i = 0; i < prefix.length(); i += 1) {
-            char c = prefix.charAt(i);
-            currentNode = currentNode.next.get(c);
+        for (int i = 0; i < prefix.length() && currentNode != null; i += 1) {
+            currentNode = currentNode.next.get(prefix.charAt(i));
         }
-        for (char c : currentNode.next.keySet()) {
-            colHelper(prefix + c, keysWithPrefix, currentNode.next.get(c));
+        if (currentNode != null) {
+            colHelper(new StringBuilder(prefix), keysWithPrefix, currentNode);
         }
         return keysWithPrefix;
     }
 
-    private List<String> collection() {
-        List<String> result = new LinkedList<>();
-        colHelper("", result, root);
-        return result;
-    }
-
-    private void colHelper(String s, List<String> x, Node n) {
-        if (n == null) {
-            return;
-        }
-        if (n.isKey == true) {
-            x.add(s);
+    /**
+     * Adds to X every key at or under N, S being the characters down to N. S is shared
+     * all the way down and left as it was found.
+     */
+    private void colHelper(StringBuilder s, List<String> x, Node n) {
+        if (n.isKey) {
+            x.add(s.toString());
         }
-        for (char c : n.next.keySet()) {
-            colHelper(s + c, x, n.next.get(c));
+        for (Map.Entry<Character, Node> child : n.next.entrySet()) {
+            s.append(child.getKey().charValue());
+            colHelper(s, x, child.getValue());
+            s.setLength(s.length() - 1);
         }
     }
 
     /**
-     * Returns the longest prefix of KEY that exists in the Trie
-     * Not required for Lab 9. If you don't implement this, throw an
-     * UnsupportedOperationException.
+     * Returns the longest prefix of KEY that is a key in the Trie, or "" if there is none,
+     * walking KEY once.
      */
     @Override
     public String longestPrefixOf(String key) {
-        int i = 0;
-        try {
-            for (; i < key.length(); i += 1) {
-                if (keysWithPrefix(key.substring(0, i)).size() == 0) {
-                    break;
-                }
+        int longest = 0;
+        Node currentNode = root;
+        for (int i = 0; i < key.length(); i += 1) {
+            currentNode = currentNode.next.get(key.charAt(i));
+            if (currentNode == null) {
+                break;
+            }
+            if (currentNode.isKey) {
+                longest = i + 1;
             }
-        } catch (NullPointerException e) {
-            return key.substring(0, i - 1);
         }
-        return key;
+        return key.substring(0, longest);
     }
 
     /* GLOBAL HELPER */
@@ -0,0 +1,202 @@
+package bearmaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An immutable radix trie laid out in a handful of primitive arrays. Nodes are numbered
+ * breadth first, so the children of every node are consecutive and sit next to each
+ * other in memory: finding the child to go down to is a binary search over a short run
+ * of FIRSTS, and every label is a slice of one LABELS array. There are no objects per
+ * node at all, and a name dictionary takes a fraction of what MyTrieSet's nodes and
+ * HashMaps do.
+ *
+ * add and clear throw UnsupportedOperationException; build a RadixTrieSet and freeze()
+ * it instead. Safe to share between threads.
+ */
+public class FrozenTrieSet implements TrieSet61B {
+    /** The labels of all nodes, one after the other in node order. */
+    private final char[] labels;
+    /** The label of node i is labels[labelStart[i]] .. labels[labelStart[i + 1] - 1]. */
+    private final int[] labelStart;
+    /** The first character of the label of each node; 0 for the root, which has none. */
+    private final char[] firsts;
+    /** The children of node i are nodes childStart[i] .. childStart[i + 1] - 1. */
+    private final int[] childStart;
+    /** Whether the characters down to each node are a key. */
+    private final BitSet keys;
+    private final int size;
+
+    /** Makes a frozen copy of SET, taking RadixTrieSet's structure as is. */
+    public FrozenTrieSet(TrieSet61B set) {
+        RadixTrieSet radix;
+        if (set instanceof RadixTrieSet) {
+            radix = (RadixTrieSet) set;
+        } else {
+            radix = new RadixTrieSet();
+            for (String key : set.keysWithPrefix("")) {
+                radix.add(key);
+            }
+        }
+
+        /* The list is the breadth first queue, and its order the numbering. */
+        List<RadixTrieSet.Node> order = new ArrayList<>(radix.nodeCount());
+        order.add(radix.root());
+        int n = radix.nodeCount();
+        int chars = 0;
+        labelStart = new int[n + 1];
+        firsts = new char[n];
+        childStart = new int[n + 1];
+        keys = new BitSet(n);
+        for (int i = 0; i < n; i += 1) {
+            RadixTrieSet.Node node = order.get(i);
+            labelStart[i] = chars;
+            chars += node.label.length;
+            firsts[i] = node.label.length > 0 ? node.label[0] : 0;
+            childStart[i] = order.size();
+            order.addAll(Arrays.asList(node.children));
+            if (node.isKey) {
+                keys.set(i);
+            }
+        }
+        labelStart[n] = chars;
+        childStart[n] = n;
+        labels = new char[chars];
+        for (int i = 0; i < n; i += 1) {
+            char[] label = order.get(i).label;
+            System.arraycopy(label, 0, labels, labelStart[i], label.length);
+        }
+        size = radix.size();
+    }
+
+    /** Returns how many keys there are. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns how many nodes there are, the root included. */
+    public int nodeCount() {
+        return firsts.length;
+    }
+
+    /** Throws UnsupportedOperationException: frozen tries do not change. */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Frozen tries cannot be cleared.");
+    }
+
+    /** Throws UnsupportedOperationException: frozen tries do not change. */
+    @Override
+    public void add(String key) {
+        throw new UnsupportedOperationException("Frozen tries cannot be added to.");
+    }
+
+    /** Returns the child of NODE whose label starts with C, or -1 if there is none. */
+    private int child(int node, char c) {
+        int i = Arrays.binarySearch(firsts, childStart[node], childStart[node + 1], c);
+        return i < 0 ? -1 : i;
+    }
+
+    /** Returns whether all of the label of NODE appears in KEY from index I on. */
+    private boolean matches(int node, String key, int i) {
+        int start = labelStart[node];
+        int length = labelStart[node + 1] - start;
+        if (key.length() - i < length) {
+            return false;
+        }
+        for (int j = 0; j < length; j += 1) {
+            if (labels[start + j] != key.charAt(i + j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if the Trie contains KEY, false otherwise */
+    @Override
+    public boolean contains(String key) {
+        if (key == null) {
+            return false;
+        }
+        int node = 0;
+        int i = 0;
+        while (i < key.length()) {
+            node = child(node, key.charAt(i));
+            if (node < 0 || !matches(node, key, i)) {
+                return false;
+            }
+            i += labelStart[node + 1] - labelStart[node];
+        }
+        return keys.get(node);
+    }
+
+    /**
+     * Returns a list of all words that start with PREFIX, PREFIX itself included if it is
+     * one, in increasing order.
+     */
+    @Override
+    public List<String> keysWithPrefix(String prefix) {
+        List<String> result = new ArrayList<>();
+        int node = 0;
+        int i = 0;
+        /* How much of the label of NODE PREFIX covers: it may end midway along it. */
+        int matched = 0;
+        while (i < prefix.length()) {
+            node = child(node, prefix.charAt(i));
+            if (node < 0) {
+                return result;
+            }
+            int start = labelStart[node];
+            int length = labelStart[node + 1] - start;
+            matched = 0;
+            while (matched < length && i < prefix.length()) {
+                if (labels[start + matched] != prefix.charAt(i)) {
+                    return result;
+                }
+                matched += 1;
+                i += 1;
+            }
+        }
+        StringBuilder sb = new StringBuilder(prefix);
+        sb.append(labels, labelStart[node] + matched, labelStart[node + 1] - labelStart[node]
+                - matched);
+        collect(node, sb, result);
+        return result;
+    }
+
+    /** Adds to RESULT every key at or under NODE, SB being the characters down to NODE. */
+    private void collect(int node, StringBuilder sb, List<String> result) {
+        if (keys.get(node)) {
+            result.add(sb.toString());
+        }
+        for (int child = childStart[node]; child < childStart[node + 1]; child += 1) {
+            int length = sb.length();
+            sb.append(labels, labelStart[child], labelStart[child + 1] - labelStart[child]);
+            collect(child, sb, result);
+            sb.setLength(length);
+        }
+    }
+
+    /**
+     * Returns the longest prefix of KEY that is a key in the Trie, or "" if there is none.
+     */
+    @Override
+    public String longestPrefixOf(String key) {
+        int node = 0;
+        int i = 0;
+        int longest = 0;
+        while (i < key.length()) {
+            node = child(node, key.charAt(i));
+            if (node < 0 || !matches(node, key, i)) {
+                break;
+            }
+            i += labelStart[node + 1] - labelStart[node];
+            if (keys.get(node)) {
+                longest = i;
+            }
+        }
+        return key.substring(0, longest);
+    }
+}
@@ -0,0 +1,236 @@
+package bearmaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A TrieSet61B in which every chain of nodes with one child and no key is merged into one
+ * edge labeled with all of its characters, so a dictionary of names takes a node per
+ * branch or key rather than one per character. Children are kept in plain arrays sorted by
+ * the first character of their labels and found by binary search, with no boxing.
+ *
+ * Keys come out of keysWithPrefix in increasing order. freeze() makes an immutable copy
+ * laid out in flat arrays, smaller and faster still. Not thread safe.
+ */
+public class RadixTrieSet implements TrieSet61B {
+    private static final char[] NO_CHARS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    /** Package private so that FrozenTrieSet can lay the nodes out. */
+    static class Node {
+        /** The characters on the edge into this node; none for the root. */
+        char[] label;
+        boolean isKey;
+        /** The first characters of the children's labels, in increasing order. */
+        char[] firsts = NO_CHARS;
+        Node[] children = NO_CHILDREN;
+
+        Node(char[] label, boolean isKey) {
+            this.label = label;
+            this.isKey = isKey;
+        }
+
+        /** Returns the index of the child whose label starts with C, or < 0 if none does. */
+        int find(char c) {
+            return Arrays.binarySearch(firsts, c);
+        }
+
+        /** Adds CHILD, whose label starts with no character another child's does. */
+        void add(Node child) {
+            int i = -find(child.label[0]) - 1;
+            int n = firsts.length;
+            char[] newFirsts = new char[n + 1];
+            Node[] newChildren = new Node[n + 1];
+            System.arraycopy(firsts, 0, newFirsts, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(firsts, i, newFirsts, i + 1, n - i);
+            System.arraycopy(children, i, newChildren, i + 1, n - i);
+            newFirsts[i] = child.label[0];
+            newChildren[i] = child;
+            firsts = newFirsts;
+            children = newChildren;
+        }
+    }
+
+    private Node root;
+    private int size;
+    private int nodes;
+
+    public RadixTrieSet() {
+        clear();
+    }
+
+    /** Clears all items out of Trie */
+    @Override
+    public void clear() {
+        root = new Node(NO_CHARS, false);
+        size = 0;
+        nodes = 1;
+    }
+
+    /** Returns how many keys there are. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns how many nodes there are, the root included. */
+    public int nodeCount() {
+        return nodes;
+    }
+
+    /** Package private so that FrozenTrieSet can lay the nodes out. */
+    Node root() {
+        return root;
+    }
+
+    /** Returns true if the Trie contains KEY, false otherwise */
+    @Override
+    public boolean contains(String key) {
+        if (key == null) {
+            return false;
+        }
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            int c = node.find(key.charAt(i));
+            if (c < 0) {
+                return false;
+            }
+            node = node.children[c];
+            if (!matches(node.label, key, i)) {
+                return false;
+            }
+            i += node.label.length;
+        }
+        return node.isKey;
+    }
+
+    /** Returns whether all of LABEL appears in KEY from index I on. */
+    private static boolean matches(char[] label, String key, int i) {
+        if (key.length() - i < label.length) {
+            return false;
+        }
+        for (int j = 0; j < label.length; j += 1) {
+            if (label[j] != key.charAt(i + j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Inserts string KEY into Trie */
+    @Override
+    public void add(String key) {
+        if (key == null || key.length() < 1) {
+            return;
+        }
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            int c = node.find(key.charAt(i));
+            if (c < 0) {
+                node.add(new Node(key.substring(i).toCharArray(), true));
+                size += 1;
+                nodes += 1;
+                return;
+            }
+            Node child = node.children[c];
+            int common = 1;
+            while (common < child.label.length && i + common < key.length()
+                    && child.label[common] == key.charAt(i + common)) {
+                common += 1;
+            }
+            if (common < child.label.length) {
+                /* KEY leaves the edge midway: split it where it does. */
+                Node middle = new Node(Arrays.copyOf(child.label, common), false);
+                child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                middle.add(child);
+                node.children[c] = middle;
+                nodes += 1;
+                child = middle;
+            }
+            node = child;
+            i += common;
+        }
+        if (!node.isKey) {
+            node.isKey = true;
+            size += 1;
+        }
+    }
+
+    /**
+     * Returns a list of all words that start with PREFIX, PREFIX itself included if it is
+     * one, in increasing order.
+     */
+    @Override
+    public List<String> keysWithPrefix(String prefix) {
+        List<String> keys = new ArrayList<>();
+        Node node = root;
+        int i = 0;
+        /* How much of the label into NODE PREFIX covers: it may end midway along it. */
+        int matched = 0;
+        while (i < prefix.length()) {
+            int c = node.find(prefix.charAt(i));
+            if (c < 0) {
+                return keys;
+            }
+            node = node.children[c];
+            matched = 0;
+            while (matched < node.label.length && i < prefix.length()) {
+                if (node.label[matched] != prefix.charAt(i)) {
+                    return keys;
+                }
+                matched += 1;
+                i += 1;
+            }
+        }
+        StringBuilder sb = new StringBuilder(prefix);
+        sb.append(node.label, matched, node.label.length - matched);
+        collect(node, sb, keys);
+        return keys;
+    }
+
+    /** Adds to KEYS every key at or under NODE, SB being the characters down to NODE. */
+    private static void collect(Node node, StringBuilder sb, List<String> keys) {
+        if (node.isKey) {
+            keys.add(sb.toString());
+        }
+        for (Node child : node.children) {
+            int length = sb.length();
+            sb.append(child.label);
+            collect(child, sb, keys);
+            sb.setLength(length);
+        }
+    }
+
+    /**
+     * Returns the longest prefix of KEY that is a key in the Trie, or "" if there is none.
+     */
+    @Override
+    public String longestPrefixOf(String key) {
+        Node node = root;
+        int i = 0;
+        int longest = 0;
+        while (i < key.length()) {
+            int c = node.find(key.charAt(i));
+            if (c < 0) {
+                break;
+            }
+            node = node.children[c];
+            if (!matches(node.label, key, i)) {
+                break;
+            }
+            i += node.label.length;
+            if (node.isKey) {
+                longest = i;
+            }
+        }
+        return key.substring(0, longest);
+    }
+
+    /** Returns an immutable copy of this trie in flat arrays. */
+    public FrozenTrieSet freeze() {
+        return new FrozenTrieSet(this);
+    }
+}
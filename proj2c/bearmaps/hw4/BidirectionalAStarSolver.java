@@ -0,0 +1,142 @@
+package bearmaps.hw4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bidirectional A*: one search grows forward from the start while another grows backward
+ * from the end, and the shortest path is found where they meet. Each search only has to
+ * cover about half the distance, which pays off most when the heuristic is a loose bound
+ * (detours around hills or the bay); where straight-line distance is already close to
+ * the road distance, plain A* explores about as few states.
+ *
+ * Both searches use the average potential pf(v) = (h(v, end) - h(v, start)) / 2 (backward
+ * pr = -pf), which is consistent in both directions whenever h is, so the usual
+ * bidirectional Dijkstra stopping rule applies: once the smallest forward key plus the
+ * smallest backward key reaches the best path seen so far, that path is shortest.
+ *
+ * The backward search walks the graph's outgoing edges, so the graph must be symmetric
+ * (every edge u -> v has a twin v -> u of the same weight), as street map graphs are.
+ */
+public class BidirectionalAStarSolver implements ShortestPathsSolver<Integer> {
+    private static final int TIMEOUT_CHECK_INTERVAL = 1024;
+
+    private final IndexedAStarGraph input;
+    private final int start;
+    private final int end;
+    private final SearchState forward;
+    private final SearchState backward;
+    /** Length of the best path seen so far, and the vertex where its two halves meet. */
+    private double best = Double.POSITIVE_INFINITY;
+    private int meeting = -1;
+
+    private SolverOutcome outcome;
+    private List<Integer> solution = new ArrayList<>();
+    private double solutionWeight = 0.0;
+    private int numStatesExplored = 0;
+    private double explorationTime = 0.0;
+
+    /**
+     * Finds the shortest path from START to END in INPUT, giving up after TIMEOUT seconds.
+     */
+    public BidirectionalAStarSolver(IndexedAStarGraph input, int start, int end,
+                                    double timeout) {
+        long startTime = System.nanoTime();
+        long deadline = startTime + (long) (timeout * 1e9);
+        this.input = input;
+        this.start = start;
+        this.end = end;
+        forward = SearchState.forCurrentThread(input.numVertices(), 0);
+        backward = SearchState.forCurrentThread(input.numVertices(), 1);
+        forward.relax(start, -1, 0.0, potential(start));
+        backward.relax(end, -1, 0.0, -potential(end));
+        if (start == end) {
+            best = 0.0;
+            meeting = start;
+        }
+
+        boolean timedOut = false;
+        while (!forward.isEmpty() && !backward.isEmpty()
+                && forward.smallestPriority() + backward.smallestPriority() < best) {
+            numStatesExplored += 1;
+            if (numStatesExplored % TIMEOUT_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                timedOut = true;
+                break;
+            }
+            if (forward.smallestPriority() <= backward.smallestPriority()) {
+                expand(forward, backward, 1);
+            } else {
+                expand(backward, forward, -1);
+            }
+        }
+        explorationTime = (System.nanoTime() - startTime) / 1e9;
+
+        if (timedOut) {
+            outcome = SolverOutcome.TIMEOUT;
+        } else if (meeting == -1) {
+            outcome = SolverOutcome.UNSOLVABLE;
+        } else {
+            outcome = SolverOutcome.SOLVED;
+            solutionWeight = best;
+            for (int v = meeting; v != -1; v = forward.edgeTo(v)) {
+                solution.add(v);
+            }
+            Collections.reverse(solution);
+            for (int v = backward.edgeTo(meeting); v != -1; v = backward.edgeTo(v)) {
+                solution.add(v);
+            }
+        }
+    }
+
+    /**
+     * Settles the closest vertex of SEARCH and relaxes its edges. OTHER is the search
+     * going the other way, SIGN is 1 going forward and -1 going backward.
+     */
+    private void expand(SearchState search, SearchState other, int sign) {
+        int current = search.removeSmallest();
+        double distToCurrent = search.distTo(current);
+        for (int e = input.edgesFrom(current); e < input.edgesFrom(current + 1); e += 1) {
+            int next = input.edgeTo(e);
+            double dist = distToCurrent + input.edgeWeight(e);
+            if (dist < search.distTo(next)) {
+                search.relax(next, current, dist, dist + sign * potential(next));
+                double through = dist + other.distTo(next);
+                if (through < best) {
+                    best = through;
+                    meeting = next;
+                }
+            }
+        }
+    }
+
+    private double potential(int v) {
+        return (input.estimatedDistanceToGoal(v, end)
+                - input.estimatedDistanceToGoal(v, start)) / 2;
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    @Override
+    public List<Integer> solution() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    @Override
+    public double explorationTime() {
+        return explorationTime;
+    }
+}
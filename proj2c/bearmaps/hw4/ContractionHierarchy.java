@@ -0,0 +1,431 @@
+package bearmaps.hw4;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A contraction hierarchy over a symmetric IndexedAStarGraph, e.g. a CompactStreetMapGraph.
+ *
+ * Preprocessing contracts the vertices one at a time, least important first, where
+ * importance is twice the edge difference (shortcuts needed minus edges removed) plus the
+ * number of neighbors already contracted plus the vertex's level in the hierarchy so far;
+ * the last two spread contraction evenly over the map. Contracting v removes it from the graph and,
+ * for each pair of neighbors u, w whose shortest path ran through v, adds a shortcut
+ * u - w remembering v as its middle vertex. A bounded Dijkstra (the witness search)
+ * decides whether some other path is as short, in which case no shortcut is needed.
+ *
+ * What remains is, for every vertex, its edges and shortcuts to vertices contracted
+ * after it (its "upward" edges), stored in CSR arrays. ContractionHierarchySolver answers
+ * queries by searching upward from both ends, which settles only a few hundred vertices
+ * even on large graphs, then unpacks shortcuts back into original edges.
+ *
+ * Hierarchies can be saved with write() and loaded with read(); see main().
+ */
+public class ContractionHierarchy {
+    private static final int MAGIC = 0x424d4348; // "BMCH"
+    /** 2 added the fingerprint of the graph the hierarchy was built for. */
+    private static final int VERSION = 2;
+    /** Witness searches give up after settling this many vertices and add the shortcut. */
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    /** The same, when only estimating how many shortcuts a contraction would need. */
+    private static final int SIMULATION_SETTLE_LIMIT = 50;
+
+    /** The fingerprint() of the graph the hierarchy was built for. */
+    private final long graphFingerprint;
+    /** The order in which each vertex was contracted. */
+    private final int[] rank;
+    /** Upward edges of v are offsets[v] .. offsets[v + 1] - 1. */
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+    /** The vertex a shortcut bypasses, or -1 for an edge of the original graph. */
+    private final int[] middles;
+
+    /* Scratch state used only while contracting. */
+    private int[][] adjTargets;
+    private double[][] adjWeights;
+    private int[][] adjMiddles;
+    private int[] adjSize;
+    private boolean[] contracted;
+    private int[] contractedNeighbors;
+    /** One more than the highest level of any contracted neighbor. */
+    private int[] level;
+    private double[] priority;
+
+    private ContractionHierarchy(long graphFingerprint, int[] rank, int[] offsets,
+                                 int[] targets, double[] weights, int[] middles) {
+        this.graphFingerprint = graphFingerprint;
+        this.rank = rank;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.middles = middles;
+    }
+
+    /** Builds the hierarchy for G, which must be symmetric. */
+    public ContractionHierarchy(IndexedAStarGraph g) {
+        int n = g.numVertices();
+        graphFingerprint = g.fingerprint();
+        rank = new int[n];
+        offsets = new int[n + 1];
+        initAdjacency(g);
+
+        /* Entries go stale when a vertex's priority changes; those are skipped. */
+        PriorityQueue<double[]> order = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        for (int v = 0; v < n; v += 1) {
+            priority[v] = contract(v, false);
+            order.add(new double[]{priority[v], v});
+        }
+
+        /* Upward edges, in contraction order; moved into CSR form at the end. */
+        int[][] upTargets = new int[n][];
+        double[][] upWeights = new double[n][];
+        int[][] upMiddles = new int[n][];
+        int numContracted = 0;
+        while (!order.isEmpty()) {
+            double[] entry = order.poll();
+            int v = (int) entry[1];
+            if (contracted[v] || entry[0] != priority[v]) {
+                continue;
+            }
+            /* Lazy update: contracting far-away vertices can still change ours. */
+            priority[v] = contract(v, false);
+            if (!order.isEmpty() && priority[v] > order.peek()[0]) {
+                order.add(new double[]{priority[v], v});
+                continue;
+            }
+            int k = 0;
+            upTargets[v] = new int[adjSize[v]];
+            upWeights[v] = new double[adjSize[v]];
+            upMiddles[v] = new int[adjSize[v]];
+            for (int i = 0; i < adjSize[v]; i += 1) {
+                int u = adjTargets[v][i];
+                if (!contracted[u]) {
+                    upTargets[v][k] = u;
+                    upWeights[v][k] = adjWeights[v][i];
+                    upMiddles[v][k] = adjMiddles[v][i];
+                    k += 1;
+                }
+            }
+            upTargets[v] = Arrays.copyOf(upTargets[v], k);
+            upWeights[v] = Arrays.copyOf(upWeights[v], k);
+            upMiddles[v] = Arrays.copyOf(upMiddles[v], k);
+            contract(v, true);
+            contracted[v] = true;
+            rank[v] = numContracted;
+            numContracted += 1;
+
+            for (int i = 0; i < k; i += 1) {
+                int u = upTargets[v][i];
+                removeEdge(u, v);
+                contractedNeighbors[u] += 1;
+                level[u] = Math.max(level[u], level[v] + 1);
+                priority[u] = contract(u, false);
+                order.add(new double[]{priority[u], u});
+            }
+        }
+
+        for (int v = 0; v < n; v += 1) {
+            offsets[v + 1] = offsets[v] + upTargets[v].length;
+        }
+        targets = new int[offsets[n]];
+        weights = new double[offsets[n]];
+        middles = new int[offsets[n]];
+        for (int v = 0; v < n; v += 1) {
+            System.arraycopy(upTargets[v], 0, targets, offsets[v], upTargets[v].length);
+            System.arraycopy(upWeights[v], 0, weights, offsets[v], upWeights[v].length);
+            System.arraycopy(upMiddles[v], 0, middles, offsets[v], upMiddles[v].length);
+        }
+        adjTargets = null;
+        adjWeights = null;
+        adjMiddles = null;
+        adjSize = null;
+        contracted = null;
+        contractedNeighbors = null;
+        level = null;
+        priority = null;
+    }
+
+    /** Copies G's edges into growable per-vertex lists, keeping the lightest parallel edge. */
+    private void initAdjacency(IndexedAStarGraph g) {
+        int n = g.numVertices();
+        adjTargets = new int[n][];
+        adjWeights = new double[n][];
+        adjMiddles = new int[n][];
+        adjSize = new int[n];
+        contracted = new boolean[n];
+        contractedNeighbors = new int[n];
+        level = new int[n];
+        priority = new double[n];
+        for (int v = 0; v < n; v += 1) {
+            int degree = g.edgesFrom(v + 1) - g.edgesFrom(v);
+            adjTargets[v] = new int[Math.max(degree, 1)];
+            adjWeights[v] = new double[Math.max(degree, 1)];
+            adjMiddles[v] = new int[Math.max(degree, 1)];
+        }
+        for (int v = 0; v < n; v += 1) {
+            for (int e = g.edgesFrom(v); e < g.edgesFrom(v + 1); e += 1) {
+                if (g.edgeTo(e) != v) {
+                    addOrLowerEdge(v, g.edgeTo(e), g.edgeWeight(e), -1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the shortcuts contracting V needs. If APPLY, adds them; otherwise just counts
+     * them, with a cheaper witness search. Returns V's priority.
+     */
+    private double contract(int v, boolean apply) {
+        int numShortcuts = 0, numEdges = 0;
+        double maxWeight = 0;
+        for (int i = 0; i < adjSize[v]; i += 1) {
+            if (!contracted[adjTargets[v][i]]) {
+                numEdges += 1;
+                maxWeight = Math.max(maxWeight, adjWeights[v][i]);
+            }
+        }
+        for (int i = 0; i < adjSize[v]; i += 1) {
+            int u = adjTargets[v][i];
+            if (contracted[u]) {
+                continue;
+            }
+            double toU = adjWeights[v][i];
+            SearchState witness = witnessSearch(u, v, toU + maxWeight,
+                    apply ? WITNESS_SETTLE_LIMIT : SIMULATION_SETTLE_LIMIT);
+            for (int j = i + 1; j < adjSize[v]; j += 1) {
+                int w = adjTargets[v][j];
+                if (contracted[w]) {
+                    continue;
+                }
+                double viaV = toU + adjWeights[v][j];
+                if (witness.distTo(w) > viaV) {
+                    numShortcuts += 1;
+                    if (apply) {
+                        addOrLowerEdge(u, w, viaV, v);
+                        addOrLowerEdge(w, u, viaV, v);
+                    }
+                }
+            }
+        }
+        return 2 * (numShortcuts - numEdges) + contractedNeighbors[v] + level[v];
+    }
+
+    /**
+     * Dijkstra from SOURCE over the uncontracted vertices other than SKIP, stopping at
+     * distance LIMIT or after SETTLE_LIMIT vertices. Shortcuts are only ever added when
+     * this finds no path, so stopping early can only add extra shortcuts.
+     */
+    private SearchState witnessSearch(int source, int skip, double limit, int settleLimit) {
+        SearchState state = SearchState.forCurrentThread(rank.length, 0);
+        state.relax(source, -1, 0.0, 0.0);
+        int settled = 0;
+        while (!state.isEmpty() && state.smallestPriority() <= limit
+                && settled < settleLimit) {
+            int x = state.removeSmallest();
+            settled += 1;
+            double distToX = state.distTo(x);
+            for (int i = 0; i < adjSize[x]; i += 1) {
+                int y = adjTargets[x][i];
+                if (y == skip || contracted[y]) {
+                    continue;
+                }
+                double dist = distToX + adjWeights[x][i];
+                if (dist < state.distTo(y)) {
+                    state.relax(y, x, dist, dist);
+                }
+            }
+        }
+        return state;
+    }
+
+    private void addOrLowerEdge(int from, int to, double weight, int middle) {
+        for (int i = 0; i < adjSize[from]; i += 1) {
+            if (adjTargets[from][i] == to) {
+                if (weight < adjWeights[from][i]) {
+                    adjWeights[from][i] = weight;
+                    adjMiddles[from][i] = middle;
+                }
+                return;
+            }
+        }
+        if (adjSize[from] == adjTargets[from].length) {
+            int capacity = 2 * adjSize[from];
+            adjTargets[from] = Arrays.copyOf(adjTargets[from], capacity);
+            adjWeights[from] = Arrays.copyOf(adjWeights[from], capacity);
+            adjMiddles[from] = Arrays.copyOf(adjMiddles[from], capacity);
+        }
+        adjTargets[from][adjSize[from]] = to;
+        adjWeights[from][adjSize[from]] = weight;
+        adjMiddles[from][adjSize[from]] = middle;
+        adjSize[from] += 1;
+    }
+
+    /** Removes the edge FROM - TO, if there is one, by moving the last edge into its place. */
+    private void removeEdge(int from, int to) {
+        for (int i = 0; i < adjSize[from]; i += 1) {
+            if (adjTargets[from][i] == to) {
+                int last = adjSize[from] - 1;
+                adjTargets[from][i] = adjTargets[from][last];
+                adjWeights[from][i] = adjWeights[from][last];
+                adjMiddles[from][i] = adjMiddles[from][last];
+                adjSize[from] = last;
+                return;
+            }
+        }
+    }
+
+    public int numVertices() {
+        return rank.length;
+    }
+
+    /**
+     * Returns the fingerprint() of the graph this hierarchy was built for. Its queries only
+     * give shortest paths on a graph with the same fingerprint.
+     */
+    public long graphFingerprint() {
+        return graphFingerprint;
+    }
+
+    /** Returns the number of upward edges, shortcuts included. */
+    public int numEdges() {
+        return targets.length;
+    }
+
+    /** The upward edges of v are the edges e with upEdgesFrom(v) <= e < upEdgesFrom(v + 1). */
+    public int upEdgesFrom(int v) {
+        return offsets[v];
+    }
+
+    public int edgeTo(int e) {
+        return targets[e];
+    }
+
+    public double edgeWeight(int e) {
+        return weights[e];
+    }
+
+    /**
+     * Appends to PATH the vertices after A on the original-graph path that the upward edge
+     * between A and B stands for, ending with B.
+     */
+    void unpack(int a, int b, List<Integer> path) {
+        int middle = middle(a, b);
+        if (middle == -1) {
+            path.add(b);
+        } else {
+            unpack(a, middle, path);
+            unpack(middle, b, path);
+        }
+    }
+
+    /** Returns the middle vertex of the upward edge between A and B. */
+    private int middle(int a, int b) {
+        int lower = rank[a] < rank[b] ? a : b;
+        int higher = lower == a ? b : a;
+        for (int e = offsets[lower]; e < offsets[lower + 1]; e += 1) {
+            if (targets[e] == higher) {
+                return middles[e];
+            }
+        }
+        throw new IllegalArgumentException("No edge between " + a + " and " + b + ".");
+    }
+
+    /** Writes this hierarchy to FILENAME. */
+    public void write(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(graphFingerprint);
+            out.writeInt(rank.length);
+            out.writeInt(targets.length);
+            for (int r : rank) {
+                out.writeInt(r);
+            }
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            for (int target : targets) {
+                out.writeInt(target);
+            }
+            for (double weight : weights) {
+                out.writeDouble(weight);
+            }
+            for (int middle : middles) {
+                out.writeInt(middle);
+            }
+        }
+    }
+
+    /**
+     * Memory-maps FILENAME and reads the hierarchy stored in it. Throws IOException if it is
+     * not a hierarchy of this version, or is cut short.
+     */
+    public static ContractionHierarchy read(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != MAGIC) {
+                throw new IOException(filename + " is not a contraction hierarchy.");
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new IOException(filename + " has hierarchy version " + version
+                        + ", expected " + VERSION + ". Rebuild it.");
+            }
+            long graphFingerprint = buf.getLong();
+            int n = buf.getInt(), m = buf.getInt();
+            int[] rank = readInts(buf, n);
+            int[] offsets = readInts(buf, n + 1);
+            int[] targets = readInts(buf, m);
+            double[] weights = new double[m];
+            buf.asDoubleBuffer().get(weights);
+            buf.position(buf.position() + m * Double.BYTES);
+            int[] middles = readInts(buf, m);
+            return new ContractionHierarchy(graphFingerprint, rank, offsets, targets, weights,
+                    middles);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                | NegativeArraySizeException e) {
+            throw new IOException(filename + " is truncated or corrupt. Rebuild it.", e);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buf, int count) {
+        int[] res = new int[count];
+        buf.asIntBuffer().get(res);
+        buf.position(buf.position() + count * Integer.BYTES);
+        return res;
+    }
+
+    /**
+     * Builds the hierarchy for the graph in args[0] (OSM XML or snapshot) and writes it
+     * to args[1].
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java bearmaps.hw4.ContractionHierarchy graph out.ch");
+            return;
+        }
+        CompactStreetMapGraph g = new StreetMapGraph(args[0]).compact();
+        long start = System.currentTimeMillis();
+        ContractionHierarchy ch = new ContractionHierarchy(g);
+        System.out.println(String.format("Contracted %d vertices in %d ms; %d upward edges "
+                        + "from %d original edges.", ch.numVertices(),
+                System.currentTimeMillis() - start, ch.numEdges(), g.numEdges()));
+        ch.write(args[1]);
+    }
+}
@@ -0,0 +1,137 @@
+package bearmaps.hw4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Answers shortest path queries with a ContractionHierarchy: a Dijkstra search goes
+ * upward from each end, using only edges to vertices contracted later, and the best
+ * path is found where the two meet. The shortcuts on that path are then unpacked, so
+ * solution() holds the same kind of vertex-by-vertex path the other solvers return.
+ */
+public class ContractionHierarchySolver implements ShortestPathsSolver<Integer> {
+    private static final int TIMEOUT_CHECK_INTERVAL = 1024;
+
+    private final ContractionHierarchy ch;
+    private double best = Double.POSITIVE_INFINITY;
+    private int meeting = -1;
+
+    private SolverOutcome outcome;
+    private List<Integer> solution = new ArrayList<>();
+    private double solutionWeight = 0.0;
+    private int numStatesExplored = 0;
+    private double explorationTime = 0.0;
+
+    /**
+     * Finds the shortest path from START to END in the graph CH was built from, giving up
+     * after TIMEOUT seconds.
+     */
+    public ContractionHierarchySolver(ContractionHierarchy ch, int start, int end,
+                                      double timeout) {
+        long startTime = System.nanoTime();
+        long deadline = startTime + (long) (timeout * 1e9);
+        this.ch = ch;
+        SearchState forward = SearchState.forCurrentThread(ch.numVertices(), 0);
+        SearchState backward = SearchState.forCurrentThread(ch.numVertices(), 1);
+        forward.relax(start, -1, 0.0, 0.0);
+        backward.relax(end, -1, 0.0, 0.0);
+
+        /* A direction is done once nothing left in it is closer than the best path. */
+        boolean timedOut = false;
+        while (true) {
+            boolean forwardLive = !forward.isEmpty() && forward.smallestPriority() < best;
+            boolean backwardLive = !backward.isEmpty() && backward.smallestPriority() < best;
+            if (!forwardLive && !backwardLive) {
+                break;
+            }
+            numStatesExplored += 1;
+            if (numStatesExplored % TIMEOUT_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                timedOut = true;
+                break;
+            }
+            if (forwardLive && (!backwardLive
+                    || forward.smallestPriority() <= backward.smallestPriority())) {
+                expand(forward, backward);
+            } else {
+                expand(backward, forward);
+            }
+        }
+
+        if (timedOut) {
+            outcome = SolverOutcome.TIMEOUT;
+        } else if (meeting == -1) {
+            outcome = SolverOutcome.UNSOLVABLE;
+        } else {
+            outcome = SolverOutcome.SOLVED;
+            solutionWeight = best;
+            List<Integer> up = new ArrayList<>();
+            for (int v = meeting; v != -1; v = forward.edgeTo(v)) {
+                up.add(v);
+            }
+            Collections.reverse(up);
+            for (int v = backward.edgeTo(meeting); v != -1; v = backward.edgeTo(v)) {
+                up.add(v);
+            }
+            solution.add(up.get(0));
+            for (int i = 0; i < up.size() - 1; i += 1) {
+                ch.unpack(up.get(i), up.get(i + 1), solution);
+            }
+        }
+        explorationTime = (System.nanoTime() - startTime) / 1e9;
+    }
+
+    /**
+     * Settles the closest vertex of SEARCH and relaxes its upward edges, unless it is
+     * stalled: if some vertex above it was reached by a shorter route than the one that
+     * got here, no shortest path goes up through it, so there is no point going on.
+     */
+    private void expand(SearchState search, SearchState other) {
+        int current = search.removeSmallest();
+        double distToCurrent = search.distTo(current);
+        double through = distToCurrent + other.distTo(current);
+        if (through < best) {
+            best = through;
+            meeting = current;
+        }
+        /* The graph is symmetric, so current's upward edges are also the downward edges
+         * into it from above. */
+        for (int e = ch.upEdgesFrom(current); e < ch.upEdgesFrom(current + 1); e += 1) {
+            if (search.distTo(ch.edgeTo(e)) + ch.edgeWeight(e) < distToCurrent) {
+                return;
+            }
+        }
+        for (int e = ch.upEdgesFrom(current); e < ch.upEdgesFrom(current + 1); e += 1) {
+            int next = ch.edgeTo(e);
+            double dist = distToCurrent + ch.edgeWeight(e);
+            if (dist < search.distTo(next)) {
+                search.relax(next, current, dist, dist);
+            }
+        }
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    @Override
+    public List<Integer> solution() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    @Override
+    public double explorationTime() {
+        return explorationTime;
+    }
+}
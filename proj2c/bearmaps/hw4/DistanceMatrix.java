@@ -0,0 +1,183 @@
+package bearmaps.hw4;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Shortest path distances from every one of a set of sources to every one of a set of
+ * targets, computed with the bucket method over a ContractionHierarchy:
+ * <ol>
+ *   <li>From each target t, an upward search leaves an entry (t, d(v, t)) in the bucket
+ *   of every vertex v it settles.</li>
+ *   <li>From each source s, an upward search looks into the bucket of every vertex u it
+ *   settles, and d(s, u) + d(u, t) is a candidate for d(s, t).</li>
+ * </ol>
+ * Every shortest path has a highest vertex that both searches reach, so the smallest
+ * candidate is the distance. Each upward search settles a few hundred vertices no matter
+ * how many points there are, so an S x T matrix costs S + T small searches plus the bucket
+ * scans instead of S x T full searches. Both phases run their searches in parallel on the
+ * common fork-join pool, one search per task.
+ *
+ * The matrix is stored row-major in a single double array; unreachable pairs are infinite.
+ */
+public class DistanceMatrix {
+    private final int rows;
+    private final int cols;
+    private final double[] distances;
+
+    /**
+     * Computes the distances from each of SOURCES to each of TARGETS in the graph CH was
+     * built from. Row i is SOURCES[i], column j is TARGETS[j].
+     */
+    public DistanceMatrix(ContractionHierarchy ch, int[] sources, int[] targets) {
+        rows = sources.length;
+        cols = targets.length;
+        distances = new double[rows * cols];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        if (rows == 0 || cols == 0) {
+            return;
+        }
+
+        /* Upward searches from the targets, one array of settled vertices and their
+         * distances per target. */
+        int[][] settled = new int[cols][];
+        double[][] settledDist = new double[cols][];
+        IntStream.range(0, cols).parallel().forEach(j -> {
+            Settled up = upwardSearch(ch, targets[j]);
+            settled[j] = Arrays.copyOf(up.vertices, up.size);
+            settledDist[j] = Arrays.copyOf(up.dists, up.size);
+        });
+
+        /* Buckets: all entries sorted by vertex, so a vertex's bucket is one run found by
+         * binary search. Each entry packs (vertex, entry number) into a long for sorting. */
+        int numEntries = 0;
+        for (int[] vs : settled) {
+            numEntries += vs.length;
+        }
+        long[] order = new long[numEntries];
+        int[] entryTarget = new int[numEntries];
+        double[] entryDist = new double[numEntries];
+        int k = 0;
+        for (int j = 0; j < cols; j += 1) {
+            for (int i = 0; i < settled[j].length; i += 1) {
+                order[k] = ((long) settled[j][i] << 32) | k;
+                entryTarget[k] = j;
+                entryDist[k] = settledDist[j][i];
+                k += 1;
+            }
+        }
+        Arrays.parallelSort(order);
+        Buckets buckets = new Buckets(order, entryTarget, entryDist);
+
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            Settled up = upwardSearch(ch, sources[i]);
+            for (int u = 0; u < up.size; u += 1) {
+                buckets.scan(up.vertices[u], up.dists[u], distances, i * cols);
+            }
+        });
+    }
+
+    /**
+     * Runs a full upward search from SOURCE, with stall-on-demand, and returns the vertices
+     * it settled without stalling them, with their distances from SOURCE.
+     */
+    private static Settled upwardSearch(ContractionHierarchy ch, int source) {
+        SearchState search = SearchState.forCurrentThread(ch.numVertices(), 0);
+        Settled settled = new Settled();
+        search.relax(source, -1, 0.0, 0.0);
+        while (!search.isEmpty()) {
+            int current = search.removeSmallest();
+            double distToCurrent = search.distTo(current);
+            boolean stalled = false;
+            for (int e = ch.upEdgesFrom(current); e < ch.upEdgesFrom(current + 1) && !stalled;
+                 e += 1) {
+                stalled = search.distTo(ch.edgeTo(e)) + ch.edgeWeight(e) < distToCurrent;
+            }
+            if (stalled) {
+                continue;
+            }
+            settled.add(current, distToCurrent);
+            for (int e = ch.upEdgesFrom(current); e < ch.upEdgesFrom(current + 1); e += 1) {
+                int next = ch.edgeTo(e);
+                double dist = distToCurrent + ch.edgeWeight(e);
+                if (dist < search.distTo(next)) {
+                    search.relax(next, current, dist, dist);
+                }
+            }
+        }
+        return settled;
+    }
+
+    /** A growable list of (vertex, distance) pairs. */
+    private static class Settled {
+        private int[] vertices = new int[64];
+        private double[] dists = new double[64];
+        private int size = 0;
+
+        void add(int v, double d) {
+            if (size == vertices.length) {
+                vertices = Arrays.copyOf(vertices, 2 * size);
+                dists = Arrays.copyOf(dists, 2 * size);
+            }
+            vertices[size] = v;
+            dists[size] = d;
+            size += 1;
+        }
+    }
+
+    /** The bucket entries of all targets, sorted by the vertex they were left at. */
+    private static class Buckets {
+        private final int[] vertices;
+        private final int[] targets;
+        private final double[] dists;
+
+        Buckets(long[] order, int[] entryTarget, double[] entryDist) {
+            int m = order.length;
+            vertices = new int[m];
+            targets = new int[m];
+            dists = new double[m];
+            for (int i = 0; i < m; i += 1) {
+                int entry = (int) order[i];
+                vertices[i] = (int) (order[i] >>> 32);
+                targets[i] = entryTarget[entry];
+                dists[i] = entryDist[entry];
+            }
+        }
+
+        /** Offers D plus each entry of U's bucket as the distance to that entry's target. */
+        void scan(int u, double d, double[] matrix, int row) {
+            int i = Arrays.binarySearch(vertices, u);
+            if (i < 0) {
+                return;
+            }
+            while (i > 0 && vertices[i - 1] == u) {
+                i -= 1;
+            }
+            for (; i < vertices.length && vertices[i] == u; i += 1) {
+                double through = d + dists[i];
+                int cell = row + targets[i];
+                if (through < matrix[cell]) {
+                    matrix[cell] = through;
+                }
+            }
+        }
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    /** Returns the distance from source I to target J, or infinity if there is no path. */
+    public double get(int i, int j) {
+        return distances[i * cols + j];
+    }
+
+    /** Returns the whole matrix, row-major. Callers must not modify it. */
+    public double[] distances() {
+        return distances;
+    }
+}
@@ -0,0 +1,32 @@
+package bearmaps.hw4;
+
+/**
+ * A graph whose vertices are the ints 0 .. numVertices() - 1 and whose edges are numbered
+ * as well, so that a solver can walk adjacency without allocating anything.
+ * The outgoing edges of v are the edges e with edgesFrom(v) <= e < edgesFrom(v + 1).
+ */
+public interface IndexedAStarGraph {
+    int numVertices();
+    int edgesFrom(int v);
+    int edgeTo(int e);
+    double edgeWeight(int e);
+    double estimatedDistanceToGoal(int s, int goal);
+
+    /**
+     * Returns a checksum of the vertex count and of every edge's source, target and weight,
+     * so that data precomputed on this graph and saved to a file can tell whether it is
+     * being loaded for the same graph. Takes time linear in the size of the graph.
+     */
+    default long fingerprint() {
+        int n = numVertices();
+        long h = n;
+        for (int v = 0; v < n; v += 1) {
+            h = h * 0x9E3779B97F4A7C15L + edgesFrom(v + 1);
+            for (int e = edgesFrom(v); e < edgesFrom(v + 1); e += 1) {
+                h = h * 0x9E3779B97F4A7C15L + edgeTo(e);
+                h = h * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(edgeWeight(e));
+            }
+        }
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,93 @@
+package bearmaps.hw4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A* for graphs whose vertices are ints, such as CompactStreetMapGraph. Unlike
+ * AStarSolver, nothing is boxed or hashed while searching: distTo, edgeTo and the fringe
+ * live in primitive arrays owned by a per-thread SearchState, which is reset in O(1)
+ * between queries instead of being reallocated.
+ */
+public class IndexedAStarSolver implements ShortestPathsSolver<Integer> {
+    /** How many vertices to settle between looks at the clock. */
+    private static final int TIMEOUT_CHECK_INTERVAL = 1024;
+
+    private SolverOutcome outcome;
+    private List<Integer> solution = new ArrayList<>();
+    private double solutionWeight = 0.0;
+    private int numStatesExplored = 0;
+    private double explorationTime = 0.0;
+
+    /**
+     * Finds the shortest path from START to END in INPUT, giving up after TIMEOUT seconds.
+     */
+    public IndexedAStarSolver(IndexedAStarGraph input, int start, int end, double timeout) {
+        long startTime = System.nanoTime();
+        long deadline = startTime + (long) (timeout * 1e9);
+        SearchState state = SearchState.forCurrentThread(input.numVertices(), 0);
+        state.relax(start, -1, 0.0, input.estimatedDistanceToGoal(start, end));
+
+        boolean timedOut = false;
+        while (!state.isEmpty()) {
+            int current = state.removeSmallest();
+            if (current == end) {
+                break;
+            }
+            numStatesExplored += 1;
+            if (numStatesExplored % TIMEOUT_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                timedOut = true;
+                break;
+            }
+            double distToCurrent = state.distTo(current);
+            for (int e = input.edgesFrom(current); e < input.edgesFrom(current + 1); e += 1) {
+                int next = input.edgeTo(e);
+                double dist = distToCurrent + input.edgeWeight(e);
+                if (dist < state.distTo(next)) {
+                    state.relax(next, current, dist,
+                            dist + input.estimatedDistanceToGoal(next, end));
+                }
+            }
+        }
+        explorationTime = (System.nanoTime() - startTime) / 1e9;
+
+        if (timedOut) {
+            outcome = SolverOutcome.TIMEOUT;
+        } else if (!state.reached(end)) {
+            outcome = SolverOutcome.UNSOLVABLE;
+        } else {
+            outcome = SolverOutcome.SOLVED;
+            solutionWeight = state.distTo(end);
+            for (int v = end; v != -1; v = state.edgeTo(v)) {
+                solution.add(v);
+            }
+            Collections.reverse(solution);
+        }
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    @Override
+    public List<Integer> solution() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    @Override
+    public double explorationTime() {
+        return explorationTime;
+    }
+}
@@ -0,0 +1,45 @@
+package bearmaps.hw4;
+
+/**
+ * The IndexedAStarGraph counterpart of LandmarkAStarGraph: the edges of the wrapped graph,
+ * with the larger of its own estimate and the ALT bound from Landmarks computed on it.
+ */
+public class IndexedLandmarkGraph implements IndexedAStarGraph {
+    private final IndexedAStarGraph graph;
+    private final Landmarks landmarks;
+
+    /** Wraps GRAPH, which LANDMARKS must have been computed on. */
+    public IndexedLandmarkGraph(IndexedAStarGraph graph, Landmarks landmarks) {
+        if (graph.numVertices() != landmarks.numVertices()) {
+            throw new IllegalArgumentException("Landmarks cover " + landmarks.numVertices()
+                    + " vertices, graph has " + graph.numVertices() + ".");
+        }
+        this.graph = graph;
+        this.landmarks = landmarks;
+    }
+
+    @Override
+    public int numVertices() {
+        return graph.numVertices();
+    }
+
+    @Override
+    public int edgesFrom(int v) {
+        return graph.edgesFrom(v);
+    }
+
+    @Override
+    public int edgeTo(int e) {
+        return graph.edgeTo(e);
+    }
+
+    @Override
+    public double edgeWeight(int e) {
+        return graph.edgeWeight(e);
+    }
+
+    @Override
+    public double estimatedDistanceToGoal(int s, int goal) {
+        return Math.max(graph.estimatedDistanceToGoal(s, goal), landmarks.lowerBound(s, goal));
+    }
+}
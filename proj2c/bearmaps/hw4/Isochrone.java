@@ -0,0 +1,177 @@
+package bearmaps.hw4;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+
+import java.util.Arrays;
+
+/**
+ * Everything reachable from a source within each of several distance budgets, found with
+ * one Dijkstra search that stops at the largest budget.
+ *
+ * Dijkstra settles vertices in order of distance, so the vertices within any budget are a
+ * prefix of the settle order: the result is one array of vertices and their distances,
+ * plus for each budget the length of its prefix. The search itself runs on the calling
+ * thread's SearchState, so any number of threads can compute isochrones at once; the
+ * result arrays belong to the caller.
+ */
+public class Isochrone {
+    private final double[] budgets;
+    private final int[] vertices;
+    private final double[] dists;
+    /** The vertices within budgets[b] are vertices[0 .. counts[b] - 1]. */
+    private final int[] counts;
+
+    /**
+     * Finds the vertices of G within each of BUDGETS of SOURCE. BUDGETS must not be
+     * negative and are kept sorted, smallest first, so budget(0) is the smallest.
+     */
+    public Isochrone(IndexedAStarGraph g, int source, double[] budgets) {
+        if (budgets.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("At most " + Byte.MAX_VALUE + " budgets.");
+        }
+        this.budgets = budgets.clone();
+        Arrays.sort(this.budgets);
+        counts = new int[budgets.length];
+        double limit = 0;
+        for (double budget : budgets) {
+            if (!(budget >= 0)) {
+                throw new IllegalArgumentException("Budgets must not be negative: " + budget);
+            }
+            limit = Math.max(limit, budget);
+        }
+
+        SearchState search = SearchState.forCurrentThread(g.numVertices(), 0);
+        int[] vs = new int[64];
+        double[] ds = new double[64];
+        int size = 0;
+        search.relax(source, -1, 0.0, 0.0);
+        while (!search.isEmpty() && search.smallestPriority() <= limit) {
+            int current = search.removeSmallest();
+            double distToCurrent = search.distTo(current);
+            if (size == vs.length) {
+                vs = Arrays.copyOf(vs, 2 * size);
+                ds = Arrays.copyOf(ds, 2 * size);
+            }
+            vs[size] = current;
+            ds[size] = distToCurrent;
+            size += 1;
+            for (int e = g.edgesFrom(current); e < g.edgesFrom(current + 1); e += 1) {
+                int next = g.edgeTo(e);
+                double dist = distToCurrent + g.edgeWeight(e);
+                if (dist <= limit && dist < search.distTo(next)) {
+                    search.relax(next, current, dist, dist);
+                }
+            }
+        }
+        vertices = Arrays.copyOf(vs, size);
+        dists = Arrays.copyOf(ds, size);
+        for (int b = 0; b < budgets.length; b += 1) {
+            counts[b] = prefixWithin(this.budgets[b]);
+        }
+    }
+
+    /** Returns how many of the settled vertices are at most BUDGET away. */
+    private int prefixWithin(double budget) {
+        int lo = 0, hi = dists.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (dists[mid] <= budget) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public int numBudgets() {
+        return budgets.length;
+    }
+
+    public double budget(int b) {
+        return budgets[b];
+    }
+
+    /** Returns how many vertices are within budget B. */
+    public int count(int b) {
+        return counts[b];
+    }
+
+    /**
+     * Returns every vertex within the largest budget, closest first; those within budget B
+     * are the first count(B). Callers must not modify the array.
+     */
+    public int[] vertices() {
+        return vertices;
+    }
+
+    /** Returns the distance of each vertex in vertices(). Callers must not modify it. */
+    public double[] dists() {
+        return dists;
+    }
+
+    /**
+     * Rasters the isochrone onto a WIDTH x HEIGHT grid of cells covering the box from
+     * (ULLON, ULLAT) to (LRLON, LRLAT) of G, row by row from the top left. Each cell holds
+     * the index of the smallest budget that reaches a vertex or a road in it, or -1. A road
+     * counts as reached within a budget when both of its ends are.
+     */
+    public byte[] mask(CompactStreetMapGraph g, double ullon, double ullat, double lrlon,
+                       double lrlat, int width, int height) {
+        byte[] mask = new byte[width * height];
+        Arrays.fill(mask, (byte) -1);
+        double xScale = width / (lrlon - ullon), yScale = height / (ullat - lrlat);
+
+        /* Budget levels per settled vertex, looked up by vertex through a sorted copy. */
+        int[] order = vertices.clone();
+        Arrays.sort(order);
+        byte[] levelOf = new byte[order.length];
+        for (int i = 0; i < vertices.length; i += 1) {
+            levelOf[Arrays.binarySearch(order, vertices[i])] = level(dists[i]);
+        }
+
+        for (int i = 0; i < order.length; i += 1) {
+            int v = order[i];
+            byte level = levelOf[i];
+            double x = (g.lon(v) - ullon) * xScale, y = (ullat - g.lat(v)) * yScale;
+            paint(mask, width, height, x, y, level);
+            for (int e = g.edgesFrom(v); e < g.edgesFrom(v + 1); e += 1) {
+                int w = g.edgeTo(e);
+                int j = Arrays.binarySearch(order, w);
+                if (w < v || j < 0) {
+                    continue;
+                }
+                byte both = (byte) Math.max(level, levelOf[j]);
+                double wx = (g.lon(w) - ullon) * xScale, wy = (ullat - g.lat(w)) * yScale;
+                int steps = (int) Math.ceil(Math.max(Math.abs(wx - x), Math.abs(wy - y)));
+                for (int s = 1; s < steps; s += 1) {
+                    double t = (double) s / steps;
+                    paint(mask, width, height, x + t * (wx - x), y + t * (wy - y), both);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /** Returns the index of the smallest budget that covers distance D, as a byte. */
+    private byte level(double d) {
+        for (int b = 0; b < budgets.length; b += 1) {
+            if (d <= budgets[b]) {
+                return (byte) b;
+            }
+        }
+        return -1;
+    }
+
+    /** Marks the cell at (X, Y) with LEVEL, unless it holds a smaller budget already. */
+    private static void paint(byte[] mask, int width, int height, double x, double y,
+                              byte level) {
+        if (level < 0 || x < 0 || y < 0 || x >= width || y >= height) {
+            return;
+        }
+        int cell = (int) y * width + (int) x;
+        if (mask[cell] < 0 || mask[cell] > level) {
+            mask[cell] = level;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package bearmaps.hw4;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Wraps an AStarGraph so that its heuristic is the larger of its own estimate and the ALT
+ * bound from a set of Landmarks, which can only make A* settle fewer vertices. Edges are
+ * those of the wrapped graph. For example
+ * <pre>
+ *   new AStarSolver<>(new LandmarkAStarGraph<>(streetGraph, landmarks, compact::index), ...)
+ * </pre>
+ * where landmarks were computed on compact, the CSR copy of streetGraph.
+ */
+public class LandmarkAStarGraph<Vertex> implements AStarGraph<Vertex> {
+    private final AStarGraph<Vertex> graph;
+    private final Landmarks landmarks;
+    private final ToIntFunction<Vertex> index;
+
+    /**
+     * Wraps GRAPH. INDEX gives the landmark table index of a vertex, or a negative number
+     * for vertices the tables do not cover, which fall back to GRAPH's own estimate.
+     */
+    public LandmarkAStarGraph(AStarGraph<Vertex> graph, Landmarks landmarks,
+                              ToIntFunction<Vertex> index) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.index = index;
+    }
+
+    @Override
+    public List<WeightedEdge<Vertex>> neighbors(Vertex v) {
+        return graph.neighbors(v);
+    }
+
+    @Override
+    public double estimatedDistanceToGoal(Vertex s, Vertex goal) {
+        double estimate = graph.estimatedDistanceToGoal(s, goal);
+        int si = index.applyAsInt(s), gi = index.applyAsInt(goal);
+        if (si < 0 || gi < 0) {
+            return estimate;
+        }
+        return Math.max(estimate, landmarks.lowerBound(si, gi));
+    }
+}
@@ -0,0 +1,348 @@
+package bearmaps.hw4;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Landmark distance tables for the ALT (A*, landmarks, triangle inequality) heuristic.
+ * For a landmark L and any vertices v, t the triangle inequality gives
+ * <pre>
+ *   d(v, t) >= d(L, t) - d(L, v)   and   d(v, t) >= d(v, L) - d(t, L),
+ * </pre>
+ * and the largest of these over a handful of well spread landmarks is usually a much
+ * tighter lower bound on road distance than the straight line is.
+ *
+ * Landmarks are chosen with the farthest strategy: the first is the vertex farthest from
+ * the first vertex that has edges, and each next one is the vertex whose distance to its
+ * closest landmark so far is largest. Only vertices reachable from the first landmark are
+ * candidates, so all landmarks land in one component; elsewhere lowerBound() returns 0.
+ *
+ * Distances are stored as floats rounded down, vertex-major (the k distances of one vertex
+ * are adjacent), and the rounding is undone in the safe direction when subtracting, so
+ * the bound stays admissible. If the graph is symmetric the distances to and from a
+ * landmark are the same and are stored only once.
+ *
+ * Tables can be saved with write() and loaded with read(); see main().
+ */
+public class Landmarks {
+    private static final int MAGIC = 0x424d4c4d; // "BMLM"
+    /** 2 added the fingerprint of the graph the tables were computed on. */
+    private static final int VERSION = 2;
+    /** How many landmarks main() picks if not told otherwise. */
+    public static final int DEFAULT_LANDMARKS = 16;
+
+    private final int numVertices;
+    /** The fingerprint() of the graph the tables were computed on. */
+    private final long graphFingerprint;
+    private final int[] landmarks;
+    /** fromLandmark[v * k + i] is the distance from landmark i to v, rounded down. */
+    private final float[] fromLandmark;
+    /** toLandmark[v * k + i] is the distance from v to landmark i; fromLandmark if symmetric. */
+    private final float[] toLandmark;
+
+    private Landmarks(int numVertices, long graphFingerprint, int[] landmarks,
+                      float[] fromLandmark, float[] toLandmark) {
+        this.numVertices = numVertices;
+        this.graphFingerprint = graphFingerprint;
+        this.landmarks = landmarks;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+    }
+
+    /** Picks up to K landmarks in G and computes their distance tables. */
+    public Landmarks(IndexedAStarGraph g, int k) {
+        numVertices = g.numVertices();
+        graphFingerprint = g.fingerprint();
+        k = Math.min(k, numVertices);
+        fromLandmark = new float[numVertices * k];
+        int[] chosen = new int[k];
+
+        /* Farthest selection: each landmark's own table tells where the next one goes. */
+        double[] closest = new double[numVertices];
+        int count = 0;
+        if (k > 0) {
+            int start = 0;
+            while (start < numVertices - 1 && g.edgesFrom(start) == g.edgesFrom(start + 1)) {
+                start += 1;
+            }
+            double[] dist = dijkstra(g, start);
+            chosen[0] = farthest(dist);
+            Arrays.fill(closest, Double.POSITIVE_INFINITY);
+        }
+        while (count < k) {
+            double[] dist = dijkstra(g, chosen[count]);
+            for (int v = 0; v < numVertices; v += 1) {
+                fromLandmark[v * k + count] = roundDown(dist[v]);
+                closest[v] = Math.min(closest[v], dist[v]);
+            }
+            count += 1;
+            if (count < k) {
+                chosen[count] = farthest(closest);
+            }
+        }
+        landmarks = chosen;
+
+        if (isSymmetric(g)) {
+            toLandmark = fromLandmark;
+        } else {
+            toLandmark = new float[numVertices * k];
+            IndexedAStarGraph reversed = new Reversed(g);
+            int width = k;
+            IntStream.range(0, k).parallel().forEach(i -> {
+                double[] dist = dijkstra(reversed, chosen[i]);
+                for (int v = 0; v < numVertices; v += 1) {
+                    toLandmark[v * width + i] = roundDown(dist[v]);
+                }
+            });
+        }
+    }
+
+    public int numVertices() {
+        return numVertices;
+    }
+
+    /**
+     * Returns the fingerprint() of the graph these tables were computed on. Their bounds
+     * are only admissible on a graph with the same fingerprint.
+     */
+    public long graphFingerprint() {
+        return graphFingerprint;
+    }
+
+    public int numLandmarks() {
+        return landmarks.length;
+    }
+
+    /** Returns the vertex that is landmark I. */
+    public int landmark(int i) {
+        return landmarks[i];
+    }
+
+    /** Returns a lower bound on the distance from V to T. */
+    public double lowerBound(int v, int t) {
+        int k = landmarks.length;
+        int vi = v * k, ti = t * k;
+        double bound = 0;
+        for (int i = 0; i < k; i += 1) {
+            /* Tables hold d rounded down, so d <= nextUp(table). An infinite bound would be
+             * right (T is out of V's reach) but gives every vertex the same priority and
+             * sends A* wandering, so such terms are skipped, as is infinity minus infinity
+             * by the comparisons. */
+            double forward = fromLandmark[ti + i] - (double) Math.nextUp(fromLandmark[vi + i]);
+            if (forward > bound && forward != Double.POSITIVE_INFINITY) {
+                bound = forward;
+            }
+            double backward = toLandmark[vi + i] - (double) Math.nextUp(toLandmark[ti + i]);
+            if (backward > bound && backward != Double.POSITIVE_INFINITY) {
+                bound = backward;
+            }
+        }
+        return bound;
+    }
+
+    /** Returns the distances from SOURCE to every vertex of G, infinity where unreachable. */
+    private static double[] dijkstra(IndexedAStarGraph g, int source) {
+        int n = g.numVertices();
+        SearchState state = SearchState.forCurrentThread(n, 0);
+        state.relax(source, -1, 0.0, 0.0);
+        while (!state.isEmpty()) {
+            int current = state.removeSmallest();
+            double distToCurrent = state.distTo(current);
+            for (int e = g.edgesFrom(current); e < g.edgesFrom(current + 1); e += 1) {
+                int next = g.edgeTo(e);
+                double dist = distToCurrent + g.edgeWeight(e);
+                if (dist < state.distTo(next)) {
+                    state.relax(next, current, dist, dist);
+                }
+            }
+        }
+        double[] dist = new double[n];
+        for (int v = 0; v < n; v += 1) {
+            dist[v] = state.distTo(v);
+        }
+        return dist;
+    }
+
+    /** Returns the vertex with the largest finite entry in DIST. */
+    private static int farthest(double[] dist) {
+        int best = 0;
+        for (int v = 1; v < dist.length; v += 1) {
+            if (dist[v] != Double.POSITIVE_INFINITY
+                    && (dist[best] == Double.POSITIVE_INFINITY || dist[v] > dist[best])) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    /** Returns the largest float no bigger than D. */
+    private static float roundDown(double d) {
+        float f = (float) d;
+        return f > d ? Math.nextDown(f) : f;
+    }
+
+    /** Returns whether every edge of G has a twin going the other way with the same weight. */
+    private static boolean isSymmetric(IndexedAStarGraph g) {
+        for (int v = 0; v < g.numVertices(); v += 1) {
+            for (int e = g.edgesFrom(v); e < g.edgesFrom(v + 1); e += 1) {
+                int w = g.edgeTo(e);
+                boolean twin = false;
+                for (int f = g.edgesFrom(w); f < g.edgesFrom(w + 1) && !twin; f += 1) {
+                    twin = g.edgeTo(f) == v && g.edgeWeight(f) == g.edgeWeight(e);
+                }
+                if (!twin) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** G with every edge turned around, for computing distances to the landmarks. */
+    private static class Reversed implements IndexedAStarGraph {
+        private final int[] offsets;
+        private final int[] targets;
+        private final double[] weights;
+
+        Reversed(IndexedAStarGraph g) {
+            int n = g.numVertices();
+            offsets = new int[n + 1];
+            for (int v = 0; v < n; v += 1) {
+                for (int e = g.edgesFrom(v); e < g.edgesFrom(v + 1); e += 1) {
+                    offsets[g.edgeTo(e) + 1] += 1;
+                }
+            }
+            for (int v = 0; v < n; v += 1) {
+                offsets[v + 1] += offsets[v];
+            }
+            targets = new int[offsets[n]];
+            weights = new double[offsets[n]];
+            int[] next = Arrays.copyOf(offsets, n);
+            for (int v = 0; v < n; v += 1) {
+                for (int e = g.edgesFrom(v); e < g.edgesFrom(v + 1); e += 1) {
+                    int slot = next[g.edgeTo(e)];
+                    next[g.edgeTo(e)] += 1;
+                    targets[slot] = v;
+                    weights[slot] = g.edgeWeight(e);
+                }
+            }
+        }
+
+        @Override
+        public int numVertices() {
+            return offsets.length - 1;
+        }
+
+        @Override
+        public int edgesFrom(int v) {
+            return offsets[v];
+        }
+
+        @Override
+        public int edgeTo(int e) {
+            return targets[e];
+        }
+
+        @Override
+        public double edgeWeight(int e) {
+            return weights[e];
+        }
+
+        @Override
+        public double estimatedDistanceToGoal(int s, int goal) {
+            return 0;
+        }
+    }
+
+    /** Writes these tables to FILENAME. */
+    public void write(String filename) throws IOException {
+        boolean symmetric = toLandmark == fromLandmark;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(graphFingerprint);
+            out.writeInt(numVertices);
+            out.writeInt(landmarks.length);
+            out.writeBoolean(symmetric);
+            for (int landmark : landmarks) {
+                out.writeInt(landmark);
+            }
+            for (float d : fromLandmark) {
+                out.writeFloat(d);
+            }
+            if (!symmetric) {
+                for (float d : toLandmark) {
+                    out.writeFloat(d);
+                }
+            }
+        }
+    }
+
+    /**
+     * Memory-maps FILENAME and reads the tables stored in it. Throws IOException if it is
+     * not a landmark table of this version, or is cut short.
+     */
+    public static Landmarks read(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != MAGIC) {
+                throw new IOException(filename + " is not a landmark table.");
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new IOException(filename + " has landmark version " + version
+                        + ", expected " + VERSION + ". Rebuild it.");
+            }
+            long graphFingerprint = buf.getLong();
+            int n = buf.getInt(), k = buf.getInt();
+            boolean symmetric = buf.get() != 0;
+            int[] landmarks = new int[k];
+            buf.asIntBuffer().get(landmarks);
+            buf.position(buf.position() + k * Integer.BYTES);
+            float[] from = readFloats(buf, n * k);
+            float[] to = symmetric ? from : readFloats(buf, n * k);
+            return new Landmarks(n, graphFingerprint, landmarks, from, to);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                | NegativeArraySizeException e) {
+            throw new IOException(filename + " is truncated or corrupt. Rebuild it.", e);
+        }
+    }
+
+    private static float[] readFloats(MappedByteBuffer buf, int count) {
+        float[] res = new float[count];
+        buf.asFloatBuffer().get(res);
+        buf.position(buf.position() + count * Float.BYTES);
+        return res;
+    }
+
+    /**
+     * Picks args[2] landmarks (default DEFAULT_LANDMARKS) in the graph in args[0] (OSM XML
+     * or snapshot) and writes their tables to args[1].
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java bearmaps.hw4.Landmarks graph out.alt [landmarks]");
+            return;
+        }
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_LANDMARKS;
+        CompactStreetMapGraph g = new StreetMapGraph(args[0]).compact();
+        long start = System.currentTimeMillis();
+        Landmarks landmarks = new Landmarks(g, k);
+        System.out.println(String.format("Computed %d landmark tables over %d vertices in %d ms.",
+                landmarks.numLandmarks(), g.numVertices(), System.currentTimeMillis() - start));
+        landmarks.write(args[1]);
+    }
+}
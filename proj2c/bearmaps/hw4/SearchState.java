@@ -0,0 +1,162 @@
+package bearmaps.hw4;
+
+import java.util.Arrays;
+
+/**
+ * Scratch space for one shortest paths search over an IndexedAStarGraph: distTo and edgeTo
+ * in primitive arrays, plus an indexed binary min-heap of vertices.
+ *
+ * Every entry carries the generation it was written in, and an entry from an older
+ * generation reads as "never reached". Starting a new search is then just a matter of
+ * bumping the generation, so one SearchState can be reused for query after query without
+ * clearing arrays the size of the graph. Not thread-safe; see forCurrentThread().
+ */
+class SearchState {
+    /** How many states each thread keeps, e.g. one per direction of a bidirectional search. */
+    static final int SLOTS = 2;
+
+    private static final ThreadLocal<SearchState[]> STATES = ThreadLocal.withInitial(() -> {
+        SearchState[] states = new SearchState[SLOTS];
+        for (int i = 0; i < SLOTS; i += 1) {
+            states[i] = new SearchState();
+        }
+        return states;
+    });
+
+    private int generation = 0;
+    private int[] stamp = new int[0];
+    private double[] distTo = new double[0];
+    private int[] edgeTo = new int[0];
+    /** Position of each vertex in heap, or -1 once it has been removed. */
+    private int[] heapIndex = new int[0];
+
+    private int[] heap = new int[0];
+    private double[] priority = new double[0];
+    private int size = 0;
+
+    /**
+     * Returns this thread's state number SLOT, cleared and big enough for N vertices.
+     * A search that needs several states at once must use a different slot for each.
+     */
+    static SearchState forCurrentThread(int n, int slot) {
+        SearchState state = STATES.get()[slot];
+        state.reset(n);
+        return state;
+    }
+
+    /** Forgets everything about the previous search, in O(1) unless the graph grew. */
+    void reset(int n) {
+        if (stamp.length < n) {
+            stamp = new int[n];
+            distTo = new double[n];
+            edgeTo = new int[n];
+            heapIndex = new int[n];
+            heap = new int[n];
+            priority = new double[n];
+            generation = 0;
+        }
+        generation += 1;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        size = 0;
+    }
+
+    boolean reached(int v) {
+        return stamp[v] == generation;
+    }
+
+    double distTo(int v) {
+        return reached(v) ? distTo[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /** Returns the vertex before V on the best known path to V, or -1 for the source. */
+    int edgeTo(int v) {
+        return edgeTo[v];
+    }
+
+    /**
+     * Records a path to V of length DIST through FROM, and puts V in the heap with
+     * priority PRIORITY, or lowers its priority if it is already there.
+     */
+    void relax(int v, int from, double dist, double prio) {
+        if (!reached(v)) {
+            stamp[v] = generation;
+            heapIndex[v] = -1;
+        }
+        distTo[v] = dist;
+        edgeTo[v] = from;
+        int i = heapIndex[v];
+        if (i < 0) {
+            i = size;
+            size += 1;
+        }
+        heap[i] = v;
+        priority[i] = prio;
+        heapIndex[v] = i;
+        swim(i);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Returns the priority of the vertex removeSmallest() would return. */
+    double smallestPriority() {
+        return priority[0];
+    }
+
+    int removeSmallest() {
+        int v = heap[0];
+        size -= 1;
+        if (size > 0) {
+            move(size, 0);
+            sink(0);
+        }
+        heapIndex[v] = -1;
+        return v;
+    }
+
+    private void swim(int i) {
+        int v = heap[i];
+        double p = priority[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (priority[parent] <= p) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        heap[i] = v;
+        priority[i] = p;
+        heapIndex[v] = i;
+    }
+
+    private void sink(int i) {
+        int v = heap[i];
+        double p = priority[i];
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && priority[child + 1] < priority[child]) {
+                child += 1;
+            }
+            if (p <= priority[child]) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        heap[i] = v;
+        priority[i] = p;
+        heapIndex[v] = i;
+    }
+
+    /** Copies the heap entry at FROM to position TO. */
+    private void move(int from, int to) {
+        heap[to] = heap[from];
+        priority[to] = priority[from];
+        heapIndex[heap[to]] = to;
+    }
+}
@@ -0,0 +1,169 @@
+package bearmaps.hw4.streetmap;
+
+import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.IndexedAStarGraph;
+import bearmaps.hw4.WeightedEdge;
+
+import java.util.*;
+
+/**
+ * An immutable street map graph in compressed sparse row (CSR) form, as built by
+ * GraphAssembler or read by GraphSnapshot; every StreetMapGraph is backed by one.
+ * Every node gets a dense int index (its rank by OSM id), and everything else lives in
+ * primitive arrays indexed by it: the outgoing edges of v are offsets[v] .. offsets[v + 1] - 1,
+ * with targets[e] and weights[e] describing edge e. There is no per-node or per-edge
+ * object, so the graph costs a few dozen bytes per node and per edge instead of the
+ * several hundred a HashMap / HashSet / WeightedEdge representation needs.
+ *
+ * Solvers should use the IndexedAStarGraph methods, which never allocate. The
+ * AStarGraph<Long> methods are only there so this graph can be handed to the existing
+ * solvers, and build WeightedEdges on every call.
+ */
+public class CompactStreetMapGraph implements AStarGraph<Long>, IndexedAStarGraph {
+    private final long[] ids;
+    private final double[] lons;
+    private final double[] lats;
+    private final String[] names;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+    /** Index of each edge's way name in wayNames, which holds every distinct name once. */
+    private final int[] edgeWays;
+    private final String[] wayNames;
+
+    /** Wraps already-built arrays without copying them. IDS must be sorted. */
+    CompactStreetMapGraph(long[] ids, double[] lons, double[] lats, String[] names,
+                          int[] offsets, int[] targets, double[] weights,
+                          int[] edgeWays, String[] wayNames) {
+        this.ids = ids;
+        this.lons = lons;
+        this.lats = lats;
+        this.names = names;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.edgeWays = edgeWays;
+        this.wayNames = wayNames;
+    }
+
+    /**
+     * Returns the dense index of the node with OSM id ID, or -1 if there is no such node.
+     * Runs in O(log N) time without allocating.
+     */
+    public int index(long id) {
+        int v = Arrays.binarySearch(ids, id);
+        return v < 0 ? -1 : v;
+    }
+
+    /** Returns the OSM id of the node with index V. */
+    public long id(int v) {
+        return ids[v];
+    }
+
+    public double lon(int v) {
+        return lons[v];
+    }
+
+    public double lat(int v) {
+        return lats[v];
+    }
+
+    /** Returns the name of the node with index V, or null if it has none. */
+    public String name(int v) {
+        return names[v];
+    }
+
+    public int numEdges() {
+        return targets.length;
+    }
+
+    /** Returns the name of the way edge E lies on. */
+    public String edgeName(int e) {
+        return wayNames[edgeWays[e]];
+    }
+
+    @Override
+    public int numVertices() {
+        return ids.length;
+    }
+
+    @Override
+    public int edgesFrom(int v) {
+        return offsets[v];
+    }
+
+    @Override
+    public int edgeTo(int e) {
+        return targets[e];
+    }
+
+    @Override
+    public double edgeWeight(int e) {
+        return weights[e];
+    }
+
+    /** Returns the great-circle distance between the nodes with indices S and GOAL. */
+    @Override
+    public double estimatedDistanceToGoal(int s, int goal) {
+        return StreetMapGraph.distance(lons[s], lons[goal], lats[s], lats[goal]);
+    }
+
+    /**
+     * Returns a list of outgoing edges for the node with OSM id V. Assumes V exists in
+     * this graph.
+     */
+    @Override
+    public List<WeightedEdge<Long>> neighbors(Long v) {
+        int s = index(v);
+        List<WeightedEdge<Long>> incidentList = new ArrayList<>(offsets[s + 1] - offsets[s]);
+        for (int e = offsets[s]; e < offsets[s + 1]; e += 1) {
+            WeightedEdge<Long> edge = new WeightedEdge<>(v, ids[targets[e]], weights[e]);
+            edge.setName(edgeName(e));
+            incidentList.add(edge);
+        }
+        return incidentList;
+    }
+
+    @Override
+    public double estimatedDistanceToGoal(Long s, Long goal) {
+        return estimatedDistanceToGoal(index(s), index(goal));
+    }
+
+    /* Raw arrays, for GraphSnapshot. Callers must not modify them. */
+
+    long[] ids() {
+        return ids;
+    }
+
+    double[] lons() {
+        return lons;
+    }
+
+    double[] lats() {
+        return lats;
+    }
+
+    String[] names() {
+        return names;
+    }
+
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] targets() {
+        return targets;
+    }
+
+    double[] weights() {
+        return weights;
+    }
+
+    int[] edgeWays() {
+        return edgeWays;
+    }
+
+    String[] wayNames() {
+        return wayNames;
+    }
+}
@@ -0,0 +1,255 @@
+package bearmaps.hw4.streetmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Collects the nodes and way segments GraphBuildingHandler finds, in growable primitive
+ * arrays, and then assembles them into a cleaned CompactStreetMapGraph.
+ *
+ * Each SAX thread collects into an assembler of its own, and OsmReader merges those in
+ * file order with addAll(). Collecting is kept as cheap as possible: no per-node or
+ * per-edge objects, and way names interned once. Everything that is proportional to the
+ * number of nodes or edges (resolving OSM ids, counting degrees, haversine weights,
+ * filling the CSR arrays) runs in build(), split across the common fork-join pool. What
+ * build() returns is the final graph: StreetMapGraph keeps it as is.
+ *
+ * The result is the graph StreetMapGraph always built: the first copy of a duplicated
+ * node id wins, segments touching unknown nodes are dropped, every segment becomes an
+ * edge in both directions, and nodes with no edges and no name are removed.
+ */
+class GraphAssembler {
+    private int numNodes = 0;
+    private long[] nodeIds = new long[1024];
+    private double[] nodeLats = new double[1024];
+    private double[] nodeLons = new double[1024];
+    private String[] nodeNames = new String[1024];
+
+    private int numSegments = 0;
+    private long[] segmentFrom = new long[1024];
+    private long[] segmentTo = new long[1024];
+    private int[] segmentWay = new int[1024];
+
+    private final Map<String, Integer> wayIndex = new HashMap<>();
+    private String[] wayNames = new String[64];
+
+    void addNode(long id, double lat, double lon) {
+        growNodes(numNodes + 1);
+        nodeIds[numNodes] = id;
+        nodeLats[numNodes] = lat;
+        nodeLons[numNodes] = lon;
+        numNodes += 1;
+    }
+
+    /** Names the node added most recently. */
+    void setLastNodeName(String name) {
+        nodeNames[numNodes - 1] = name;
+    }
+
+    /** Adds the segments between consecutive entries of PATH[0 .. SIZE - 1]. */
+    void addWay(long[] path, int size, String name) {
+        if (size < 2) {
+            return;
+        }
+        int way = intern(name);
+        growSegments(numSegments + size - 1);
+        for (int i = 0; i < size - 1; i += 1) {
+            segmentFrom[numSegments] = path[i];
+            segmentTo[numSegments] = path[i + 1];
+            segmentWay[numSegments] = way;
+            numSegments += 1;
+        }
+    }
+
+    /**
+     * Adds everything OTHER collected after what this assembler has, as if one handler had
+     * read both in turn. OTHER is left as it is.
+     */
+    void addAll(GraphAssembler other) {
+        growNodes(numNodes + other.numNodes);
+        System.arraycopy(other.nodeIds, 0, nodeIds, numNodes, other.numNodes);
+        System.arraycopy(other.nodeLats, 0, nodeLats, numNodes, other.numNodes);
+        System.arraycopy(other.nodeLons, 0, nodeLons, numNodes, other.numNodes);
+        System.arraycopy(other.nodeNames, 0, nodeNames, numNodes, other.numNodes);
+        numNodes += other.numNodes;
+
+        int[] ways = new int[other.wayIndex.size()];
+        for (int w = 0; w < ways.length; w += 1) {
+            ways[w] = intern(other.wayNames[w]);
+        }
+        growSegments(numSegments + other.numSegments);
+        System.arraycopy(other.segmentFrom, 0, segmentFrom, numSegments, other.numSegments);
+        System.arraycopy(other.segmentTo, 0, segmentTo, numSegments, other.numSegments);
+        for (int s = 0; s < other.numSegments; s += 1) {
+            segmentWay[numSegments + s] = ways[other.segmentWay[s]];
+        }
+        numSegments += other.numSegments;
+    }
+
+    /** Returns the index of the way name NAME, giving it the next one if it is new. */
+    private int intern(String name) {
+        Integer way = wayIndex.get(name);
+        if (way == null) {
+            way = wayIndex.size();
+            wayIndex.put(name, way);
+            if (way == wayNames.length) {
+                wayNames = Arrays.copyOf(wayNames, 2 * way);
+            }
+            wayNames[way] = name;
+        }
+        return way;
+    }
+
+    /** Makes room for at least NEEDED nodes. */
+    private void growNodes(int needed) {
+        if (needed > nodeIds.length) {
+            int capacity = Math.max(needed, 2 * nodeIds.length);
+            nodeIds = Arrays.copyOf(nodeIds, capacity);
+            nodeLats = Arrays.copyOf(nodeLats, capacity);
+            nodeLons = Arrays.copyOf(nodeLons, capacity);
+            nodeNames = Arrays.copyOf(nodeNames, capacity);
+        }
+    }
+
+    /** Makes room for at least NEEDED segments. */
+    private void growSegments(int needed) {
+        if (needed > segmentFrom.length) {
+            int capacity = Math.max(needed, 2 * segmentFrom.length);
+            segmentFrom = Arrays.copyOf(segmentFrom, capacity);
+            segmentTo = Arrays.copyOf(segmentTo, capacity);
+            segmentWay = Arrays.copyOf(segmentWay, capacity);
+        }
+    }
+
+    /** Assembles everything collected so far into a cleaned graph. */
+    CompactStreetMapGraph build() {
+        /* Give every distinct id a slot, owned by the first node that carried it. */
+        long[] sortedIds = Arrays.copyOf(nodeIds, numNodes);
+        Arrays.parallelSort(sortedIds);
+        int numIds = dedup(sortedIds);
+        long[] ids = Arrays.copyOf(sortedIds, numIds);
+        int[] slot = IntStream.range(0, numNodes).parallel()
+                .map(i -> Arrays.binarySearch(ids, nodeIds[i])).toArray();
+        AtomicIntegerArray firstNode = new AtomicIntegerArray(numIds);
+        IntStream.range(0, numIds).parallel().forEach(v -> firstNode.set(v, Integer.MAX_VALUE));
+        IntStream.range(0, numNodes).parallel()
+                .forEach(i -> firstNode.accumulateAndGet(slot[i], i, Math::min));
+        int[] owner = IntStream.range(0, numIds).parallel().map(firstNode::get).toArray();
+
+        /* Resolve both ends of every segment to a slot, -1 if the node is unknown. */
+        int[] from = new int[numSegments];
+        int[] to = new int[numSegments];
+        IntStream.range(0, numSegments).parallel().forEach(s -> {
+            from[s] = slotOf(ids, segmentFrom[s]);
+            to[s] = slotOf(ids, segmentTo[s]);
+        });
+
+        AtomicIntegerArray degrees = new AtomicIntegerArray(numIds);
+        IntStream.range(0, numSegments).parallel().forEach(s -> {
+            if (from[s] >= 0 && to[s] >= 0) {
+                degrees.incrementAndGet(from[s]);
+                degrees.incrementAndGet(to[s]);
+            }
+        });
+        int[] degree = IntStream.range(0, numIds).parallel().map(degrees::get).toArray();
+
+        /* Clean: drop nodes with no edges and no name, renumbering the rest. */
+        int[] newIndex = new int[numIds];
+        int n = 0;
+        for (int v = 0; v < numIds; v += 1) {
+            if (degree[v] > 0 || nodeNames[owner[v]] != null) {
+                newIndex[v] = n;
+                n += 1;
+            } else {
+                newIndex[v] = -1;
+            }
+        }
+        long[] keptIds = new long[n];
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        String[] names = new String[n];
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < numIds; v += 1) {
+            int w = newIndex[v];
+            if (w >= 0) {
+                int i = owner[v];
+                keptIds[w] = ids[v];
+                lats[w] = nodeLats[i];
+                lons[w] = nodeLons[i];
+                names[w] = nodeNames[i];
+                offsets[w + 1] = offsets[w] + degree[v];
+            }
+        }
+
+        /* Fill the CSR arrays, with each segment claiming one slot at either end. */
+        int m = offsets[n];
+        int[] targets = new int[m];
+        double[] weights = new double[m];
+        int[] edgeWays = new int[m];
+        AtomicIntegerArray next = new AtomicIntegerArray(Arrays.copyOf(offsets, n));
+        IntStream.range(0, numSegments).parallel().forEach(s -> {
+            if (from[s] < 0 || to[s] < 0) {
+                return;
+            }
+            int v = newIndex[from[s]], w = newIndex[to[s]];
+            double weight = StreetMapGraph.distance(lons[v], lons[w], lats[v], lats[w]);
+            int e = next.getAndIncrement(v);
+            targets[e] = w;
+            weights[e] = weight;
+            edgeWays[e] = segmentWay[s];
+            e = next.getAndIncrement(w);
+            targets[e] = v;
+            weights[e] = StreetMapGraph.distance(lons[w], lons[v], lats[w], lats[v]);
+            edgeWays[e] = segmentWay[s];
+        });
+
+        /* Threads claimed slots in no particular order; sort each node's edges so
+         * the same file always yields the same graph. */
+        IntStream.range(0, n).parallel()
+                .forEach(v -> sortEdges(targets, weights, edgeWays, offsets[v], offsets[v + 1]));
+
+        return new CompactStreetMapGraph(keptIds, lons, lats, names, offsets, targets, weights,
+                edgeWays, Arrays.copyOf(wayNames, wayIndex.size()));
+    }
+
+    private static int slotOf(long[] ids, long id) {
+        int slot = Arrays.binarySearch(ids, id);
+        return slot < 0 ? -1 : slot;
+    }
+
+    /** Removes adjacent duplicates from the sorted A in place; returns the new length. */
+    private static int dedup(long[] a) {
+        if (a.length == 0) {
+            return 0;
+        }
+        int size = 1;
+        for (int i = 1; i < a.length; i += 1) {
+            if (a[i] != a[size - 1]) {
+                a[size] = a[i];
+                size += 1;
+            }
+        }
+        return size;
+    }
+
+    /** Insertion sort of edges [LO, HI) by target, then way. Degrees are tiny. */
+    private static void sortEdges(int[] targets, double[] weights, int[] ways, int lo, int hi) {
+        for (int i = lo + 1; i < hi; i += 1) {
+            int t = targets[i], way = ways[i];
+            double weight = weights[i];
+            int j = i - 1;
+            while (j >= lo && (targets[j] > t || (targets[j] == t && ways[j] > way))) {
+                targets[j + 1] = targets[j];
+                weights[j + 1] = weights[j];
+                ways[j + 1] = ways[j];
+                j -= 1;
+            }
+            targets[j + 1] = t;
+            weights[j + 1] = weight;
+            ways[j + 1] = way;
+        }
+    }
+}
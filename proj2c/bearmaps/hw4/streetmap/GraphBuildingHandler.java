@@ -24,6 +24,11 @@ import java.util.*;
  *  element in the file. This is a very common but strange-when-you-first-see it pattern.
  *  It is similar to the Visitor pattern we discussed for graphs.
  *
+ *  This handler only does the cheap per-element work on its SAX thread: it records nodes
+ *  and the segments of valid ways in a GraphAssembler, which then builds the graph itself
+ *  in parallel once the whole file has been read. OsmReader runs one handler per piece of
+ *  the file, so the parsing itself is spread over several threads too.
+ *
  *  @author Alan Yao, Maurice Lee, with minor modifications by Lucas Pan for HW4, Spring 2019
  */
 public class GraphBuildingHandler extends DefaultHandler {
@@ -37,16 +42,20 @@ public class GraphBuildingHandler extends DefaultHandler {
             ("motorway", "trunk", "primary", "secondary", "tertiary", "unclassified",
                     "residential", "living_street", "motorway_link", "trunk_link", "primary_link",
                     "secondary_link", "tertiary_link"));
-    private String activeState = "";
-    private Node activeNode = null;
+    /* Element we are inside of. Ints rather than strings so that checking is a compare. */
+    private static final int NONE = 0, NODE = 1, WAY = 2;
+
+    private int activeState = NONE;
     private boolean validWay = false;
-    private List<Long> nodePath = new ArrayList<>();
-    private final StreetMapGraph g;
+    /** Node ids of the current way. Reused from way to way rather than reallocated. */
+    private long[] nodePath = new long[64];
+    private int nodePathSize = 0;
+    private final GraphAssembler assembler;
 
     private String wayName = "";
 
-    public GraphBuildingHandler(StreetMapGraph g) {
-        this.g = g;
+    GraphBuildingHandler(GraphAssembler assembler) {
+        this.assembler = assembler;
     }
 
     /**
@@ -66,40 +75,43 @@ public class GraphBuildingHandler extends DefaultHandler {
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes)
             throws SAXException {
-        if (qName.equals("node")) {
-            /* We encountered a new <node...> tag. */
-            activeState = "node";
-//            System.out.println("Node id: " + attributes.getValue("id"));
-//            System.out.println("Node lon: " + attributes.getValue("lon"));
-//            System.out.println("Node lat: " + attributes.getValue("lat"));
-
-            activeNode = Node.of(Long.parseLong(attributes.getValue("id")),
-                    Double.parseDouble(attributes.getValue("lat")),
-                    Double.parseDouble(attributes.getValue("lon")));
-        } else if (qName.equals("way")) {
-            /* We encountered a new <way...> tag. */
-            activeState = "way";
-//            System.out.println("Beginning a way...");
-        } else if (activeState.equals("way") && qName.equals("nd")) {
-            /* While looking at a way, we found a <nd...> tag. */
-            //System.out.println("Id of a node in this way: " + attributes.getValue("ref"));
-            nodePath.add(Long.parseLong(attributes.getValue("ref")));
-        } else if (activeState.equals("way") && qName.equals("tag")) {
-            /* While looking at a way, we found a <tag...> tag. */
-            String k = attributes.getValue("k");
-            String v = attributes.getValue("v");
-            if (k.equals("highway")) {
-                //System.out.println("Highway type: " + v);
-                validWay = ALLOWED_HIGHWAY_TYPES.contains(v);
-            } else if (k.equals("name")) {
-                //System.out.println("Way Name: " + v);
-                wayName = v;
-            }
-//            System.out.println("Tag with k=" + k + ", v=" + v + ".");
-        } else if (activeState.equals("node") && qName.equals("tag") && attributes.getValue("k")
-                .equals("name")) {
-//            System.out.println("Node's name: " + attributes.getValue("v"));
-            activeNode.setName(attributes.getValue("v"));
+        switch (qName) {
+            case "node":
+                /* We encountered a new <node...> tag. */
+                activeState = NODE;
+                assembler.addNode(Long.parseLong(attributes.getValue("id")),
+                        Double.parseDouble(attributes.getValue("lat")),
+                        Double.parseDouble(attributes.getValue("lon")));
+                break;
+            case "way":
+                /* We encountered a new <way...> tag. */
+                activeState = WAY;
+                break;
+            case "nd":
+                /* While looking at a way, we found a <nd...> tag. */
+                if (activeState == WAY) {
+                    if (nodePathSize == nodePath.length) {
+                        nodePath = Arrays.copyOf(nodePath, 2 * nodePathSize);
+                    }
+                    nodePath[nodePathSize] = Long.parseLong(attributes.getValue("ref"));
+                    nodePathSize += 1;
+                }
+                break;
+            case "tag":
+                String k = attributes.getValue("k");
+                if (activeState == WAY) {
+                    /* While looking at a way, we found a <tag...> tag. */
+                    if (k.equals("highway")) {
+                        validWay = ALLOWED_HIGHWAY_TYPES.contains(attributes.getValue("v"));
+                    } else if (k.equals("name")) {
+                        wayName = attributes.getValue("v");
+                    }
+                } else if (activeState == NODE && k.equals("name")) {
+                    assembler.setLastNodeName(attributes.getValue("v"));
+                }
+                break;
+            default:
+                break;
         }
     }
 
@@ -119,27 +131,18 @@ public class GraphBuildingHandler extends DefaultHandler {
         if (qName.equals("way")) {
             /* We are done looking at a way. (We finished looking at the nodes, speeds, etc...)*/
             if (validWay) {
-                for (int i = 0; i < nodePath.size() - 1; i++) {
-                    long fromID = nodePath.get(i);
-                    long toID = nodePath.get(i + 1);
-                    g.addWeightedEdge(fromID, toID, wayName);
-                    g.addWeightedEdge(toID, fromID, wayName);
-                }
+                assembler.addWay(nodePath, nodePathSize, wayName);
             }
             clearStates();
         } else if (qName.equals("node")) {
-            if (activeNode != null) {
-                g.addNode(activeNode);
-            }
             clearStates();
         }
     }
 
     private void clearStates() {
-        activeState = "";
-        activeNode = null;
+        activeState = NONE;
         validWay = false;
-        nodePath = new ArrayList<>();
+        nodePathSize = 0;
         wayName = "";
     }
 }
@@ -0,0 +1,191 @@
+package bearmaps.hw4.streetmap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes cleaned street map graphs in a versioned binary format, so that the
+ * server can skip parsing the OSM XML on startup. Compile a snapshot once with
+ * <pre>java bearmaps.hw4.streetmap.GraphSnapshot in.osm.xml out.bin</pre>
+ * and point StreetMapGraph (or AugmentedStreetMapGraph) at the .bin file instead.
+ *
+ * The file is the CSR arrays of a CompactStreetMapGraph, big-endian:
+ * <pre>
+ *   int magic, int version, int N (nodes), int M (edges), int W (way names)
+ *   long[N] ids, double[N] lons, double[N] lats
+ *   int[N + 1] offsets, int[M] targets, double[M] weights, int[M] edge ways
+ *   N node names, then W way names
+ * </pre>
+ * where each name is an int byte length (-1 for null) followed by that many UTF-8 bytes.
+ */
+public class GraphSnapshot {
+    /** File name suffix StreetMapGraph uses to tell snapshots from XML. */
+    public static final String SUFFIX = ".bin";
+
+    private static final int MAGIC = 0x424d4753; // "BMGS"
+    /** Bump whenever the layout above changes; older files are then rejected. */
+    private static final int VERSION = 1;
+
+    /** Writes G to FILENAME. */
+    public static void write(CompactStreetMapGraph g, String filename) throws IOException {
+        int n = g.numVertices(), m = g.numEdges();
+        String[] wayNames = g.wayNames();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(m);
+            out.writeInt(wayNames.length);
+            for (long id : g.ids()) {
+                out.writeLong(id);
+            }
+            for (double lon : g.lons()) {
+                out.writeDouble(lon);
+            }
+            for (double lat : g.lats()) {
+                out.writeDouble(lat);
+            }
+            for (int offset : g.offsets()) {
+                out.writeInt(offset);
+            }
+            for (int target : g.targets()) {
+                out.writeInt(target);
+            }
+            for (double weight : g.weights()) {
+                out.writeDouble(weight);
+            }
+            for (int way : g.edgeWays()) {
+                out.writeInt(way);
+            }
+            for (String name : g.names()) {
+                writeString(out, name);
+            }
+            for (String name : wayNames) {
+                writeString(out, name);
+            }
+        }
+    }
+
+    /**
+     * Memory-maps FILENAME and reads the graph stored in it. Throws IOException if it is
+     * not a snapshot of this version, or is cut short.
+     */
+    public static CompactStreetMapGraph read(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != MAGIC) {
+                throw new IOException(filename + " is not a graph snapshot.");
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new IOException(filename + " has snapshot version " + version
+                        + ", expected " + VERSION + ". Recompile it from the XML.");
+            }
+            int n = buf.getInt(), m = buf.getInt(), w = buf.getInt();
+
+            long[] ids = readLongs(buf, n);
+            double[] lons = readDoubles(buf, n);
+            double[] lats = readDoubles(buf, n);
+            int[] offsets = readInts(buf, n + 1);
+            int[] targets = readInts(buf, m);
+            double[] weights = readDoubles(buf, m);
+            int[] edgeWays = readInts(buf, m);
+            String[] names = readStrings(buf, n);
+            String[] wayNames = readStrings(buf, w);
+            return new CompactStreetMapGraph(ids, lons, lats, names, offsets, targets, weights,
+                    edgeWays, wayNames);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                | NegativeArraySizeException e) {
+            throw new IOException(filename + " is truncated or corrupt. Recompile it from the XML.",
+                    e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String[] readStrings(ByteBuffer buf, int count) {
+        String[] res = new String[count];
+        byte[] scratch = new byte[64];
+        for (int i = 0; i < count; i += 1) {
+            int length = buf.getInt();
+            if (length < 0) {
+                continue;
+            }
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, 2 * scratch.length)];
+            }
+            buf.get(scratch, 0, length);
+            res[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return res;
+    }
+
+    private static long[] readLongs(ByteBuffer buf, int count) {
+        long[] res = new long[count];
+        buf.asLongBuffer().get(res);
+        skip(buf, count * Long.BYTES);
+        return res;
+    }
+
+    private static int[] readInts(ByteBuffer buf, int count) {
+        int[] res = new int[count];
+        buf.asIntBuffer().get(res);
+        skip(buf, count * Integer.BYTES);
+        return res;
+    }
+
+    private static double[] readDoubles(ByteBuffer buf, int count) {
+        double[] res = new double[count];
+        buf.asDoubleBuffer().get(res);
+        skip(buf, count * Double.BYTES);
+        return res;
+    }
+
+    private static void skip(ByteBuffer buf, int bytes) {
+        buf.position(buf.position() + bytes);
+    }
+
+    /**
+     * Compiles the OSM XML file args[0] into the snapshot args[1], then reads the snapshot
+     * back and checks that it describes the same graph.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java bearmaps.hw4.streetmap.GraphSnapshot in.osm.xml out"
+                    + SUFFIX);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        StreetMapGraph fromXML = new StreetMapGraph(args[0]);
+        System.out.println("Parsed " + args[0] + " in "
+                + (System.currentTimeMillis() - start) + " ms.");
+        write(fromXML.compact(), args[1]);
+
+        start = System.currentTimeMillis();
+        StreetMapGraph fromSnapshot = new StreetMapGraph(args[1]);
+        System.out.println("Loaded " + args[1] + " in "
+                + (System.currentTimeMillis() - start) + " ms.");
+        if (!fromSnapshot.equals(fromXML)) {
+            throw new IllegalStateException("Snapshot does not match " + args[0] + ".");
+        }
+        System.out.println("Snapshot verified.");
+    }
+}
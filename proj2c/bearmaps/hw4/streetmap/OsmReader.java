@@ -0,0 +1,214 @@
+package bearmaps.hw4.streetmap;
+
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Reads OSM XML into a cleaned CompactStreetMapGraph, parsing pieces of the file in
+ * parallel on the common fork-join pool.
+ *
+ * The file is memory-mapped and cut just before top-level &lt;node&gt; and &lt;way&gt;
+ * elements. Each piece gets the file's prolog and root start tag in front and the root end
+ * tag behind, which makes it a well-formed OSM file of its own, and is read by its own SAX
+ * parser, GraphBuildingHandler and GraphAssembler. The assemblers are then merged in file
+ * order, so the graph is the one a single parser would have built. A '&lt;' can only start
+ * markup in attributes and text, so the cuts are safe unless a comment or CDATA section
+ * spells out a node or way; if any piece fails to parse, the whole file is read again by
+ * one parser.
+ */
+public class OsmReader {
+    /** Pieces smaller than this are not worth a parser of their own. */
+    private static final int MIN_PIECE_BYTES = 1 << 18;
+    /** Pieces per core, so that one slow piece does not leave the other cores idle. */
+    private static final int PIECES_PER_CORE = 4;
+
+    /**
+     * Reads the OSM XML file FILENAME, in as many pieces as pay off on this machine: one,
+     * if it has a single core, since extra parsers then only add their own overhead.
+     */
+    public static CompactStreetMapGraph read(String filename) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return read(filename, cores == 1 ? 1 : cores * PIECES_PER_CORE, MIN_PIECE_BYTES);
+    }
+
+    /** Reads the OSM XML file FILENAME in at most PIECES pieces, however small they get. */
+    public static CompactStreetMapGraph read(String filename, int pieces) {
+        return read(filename, pieces, 1);
+    }
+
+    private static CompactStreetMapGraph read(String filename, int pieces, int minPieceBytes) {
+        ByteBuffer file;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                /* Too big to map at once: read it as a stream, in one piece. */
+                GraphAssembler assembler = new GraphAssembler();
+                try (InputStream in = Channels.newInputStream(channel)) {
+                    parse(in, assembler);
+                } catch (ParserConfigurationException | SAXException e) {
+                    e.printStackTrace();
+                }
+                return assembler.build();
+            }
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new GraphAssembler().build();
+        }
+        int size = file.limit();
+        int first = nextElement(file, 0, size);
+        int rootEnd = lastEndTag(file);
+        int[] cuts = cuts(file, first, rootEnd,
+                (int) Math.max(1, Math.min(pieces, size / minPieceBytes)));
+        if (cuts.length > 2) {
+            GraphAssembler[] parts = IntStream.range(0, cuts.length - 1).parallel()
+                    .mapToObj(i -> readPiece(file, cuts, i, first, rootEnd))
+                    .toArray(GraphAssembler[]::new);
+            if (Arrays.stream(parts).allMatch(part -> part != null)) {
+                for (int i = 1; i < parts.length; i += 1) {
+                    parts[0].addAll(parts[i]);
+                }
+                return parts[0].build();
+            }
+        }
+        GraphAssembler assembler = new GraphAssembler();
+        try {
+            parse(slice(file, 0, size), assembler);
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            e.printStackTrace();
+        }
+        return assembler.build();
+    }
+
+    /**
+     * Returns where to cut FILE, whose first element starts at FIRST (-1 if it has none)
+     * and whose root end tag starts at ROOT_END, into at most PIECES pieces: 0, then the
+     * start of the element nearest after each even share of the file, then its size.
+     */
+    private static int[] cuts(ByteBuffer file, int first, int rootEnd, int pieces) {
+        int size = file.limit();
+        List<Integer> cuts = new ArrayList<>();
+        cuts.add(0);
+        for (int i = 1; i < pieces && first >= 0; i += 1) {
+            int from = Math.max(first, (int) ((long) size * i / pieces));
+            from = Math.max(from, cuts.get(cuts.size() - 1) + 1);
+            int cut = nextElement(file, from, rootEnd);
+            if (cut < 0) {
+                break;
+            }
+            cuts.add(cut);
+        }
+        cuts.add(size);
+        return cuts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Parses piece I of FILE, between CUTS[I] and CUTS[I + 1], into an assembler of its
+     * own, and returns it, or null if the piece is not well-formed on its own. What comes
+     * before FIRST is put in front of the piece, and what comes from ROOT_END on behind it.
+     */
+    private static GraphAssembler readPiece(ByteBuffer file, int[] cuts, int i, int first,
+                                            int rootEnd) {
+        List<InputStream> streams = new ArrayList<>();
+        if (i > 0) {
+            streams.add(slice(file, 0, first));
+        }
+        streams.add(slice(file, cuts[i], cuts[i + 1]));
+        if (i < cuts.length - 2) {
+            streams.add(slice(file, rootEnd, file.limit()));
+        }
+        GraphAssembler assembler = new GraphAssembler();
+        try {
+            parse(new SequenceInputStream(Collections.enumeration(streams)), assembler);
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            return null;
+        }
+        return assembler;
+    }
+
+    private static void parse(InputStream in, GraphAssembler assembler)
+            throws ParserConfigurationException, SAXException, IOException {
+        SAXParserFactory.newInstance().newSAXParser().parse(in,
+                new GraphBuildingHandler(assembler));
+    }
+
+    /**
+     * Returns the offset of the first "&lt;node" or "&lt;way" start tag in FILE between
+     * FROM and TO, or -1 if there is none.
+     */
+    private static int nextElement(ByteBuffer file, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            if (file.get(i) == '<' && (startsTag(file, i + 1, "node", to)
+                    || startsTag(file, i + 1, "way", to))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns whether the tag name at AT in FILE, which ends before TO, is NAME. */
+    private static boolean startsTag(ByteBuffer file, int at, String name, int to) {
+        int end = at + name.length();
+        if (end >= to) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            if (file.get(at + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        byte next = file.get(end);
+        return next == ' ' || next == '\t' || next == '\n' || next == '\r' || next == '/'
+                || next == '>';
+    }
+
+    /** Returns the offset of the last "&lt;/" in FILE, which starts the root end tag. */
+    private static int lastEndTag(ByteBuffer file) {
+        for (int i = file.limit() - 2; i >= 0; i -= 1) {
+            if (file.get(i) == '<' && file.get(i + 1) == '/') {
+                return i;
+            }
+        }
+        return file.limit();
+    }
+
+    /** Returns a stream of the bytes of FILE from FROM up to TO. */
+    private static InputStream slice(ByteBuffer file, int from, int to) {
+        ByteBuffer bytes = file.duplicate();
+        bytes.limit(to).position(from);
+        return new InputStream() {
+            @Override
+            public int read() {
+                return bytes.hasRemaining() ? bytes.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!bytes.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, bytes.remaining());
+                bytes.get(b, off, n);
+                return n;
+            }
+        };
+    }
+}
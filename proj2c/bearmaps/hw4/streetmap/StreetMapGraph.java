@@ -2,27 +2,34 @@ package bearmaps.hw4.streetmap;
 
 import bearmaps.hw4.AStarGraph;
 import bearmaps.hw4.WeightedEdge;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
+/**
+ * A street map graph, with OSM ids as vertices. It is backed by a single
+ * CompactStreetMapGraph, whose primitive arrays hold every node and edge; the
+ * AStarGraph<Long> methods and lon(), lat() and name() look ids up in it, so there is no
+ * object per node or per edge behind this graph. Use compact() to get at the arrays.
+ */
 public class StreetMapGraph implements AStarGraph<Long> {
-    private Map<Long, Node> nodes = new HashMap<>();
-    private Map<Long, Set<WeightedEdge<Long>>> neighbors = new HashMap<>();
+    private final CompactStreetMapGraph graph;
 
-    private StreetMapGraph() {
+    /**
+     * Reads the graph from FILENAME, which is either an OSM XML file or, if it ends in
+     * GraphSnapshot.SUFFIX, a snapshot compiled from one by GraphSnapshot.
+     * @throws UncheckedIOException if FILENAME is a snapshot that cannot be read.
+     */
+    public StreetMapGraph(String filename) {
+        graph = filename.endsWith(GraphSnapshot.SUFFIX)
+                ? StreetMapGraph.readFromSnapshot(filename)
+                : StreetMapGraph.readFromXML(filename);
     }
 
-    public StreetMapGraph(String filename) {
-        StreetMapGraph smg = StreetMapGraph.readFromXML(filename);
-        this.nodes = smg.nodes;
-        this.neighbors = smg.neighbors;
+    /** Returns the graph in CSR form. Node indices are those of the returned graph. */
+    public CompactStreetMapGraph compact() {
+        return graph;
     }
 
     /**
@@ -31,13 +38,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
      **/
     @Override
     public List<WeightedEdge<Long>> neighbors(Long v) {
-        Set<WeightedEdge<Long>> incidentSet = neighbors.get(v);
-        List<WeightedEdge<Long>> incidentList = new ArrayList<>();
-        for (WeightedEdge<Long> e : incidentSet) {
-            incidentList.add(e);
-        }
-
-        return incidentList;
+        return graph.neighbors(v);
     }
 
     /**
@@ -46,84 +47,27 @@ public class StreetMapGraph implements AStarGraph<Long> {
      */
     @Override
     public double estimatedDistanceToGoal(Long s, Long goal) {
-        Node sNode = nodes.get(s);
-        Node goalNode = nodes.get(goal);
-        return distance(sNode.lon(), goalNode.lon(), sNode.lat(), goalNode.lat());
-    }
-
-    /**
-     * Returns a set of my vertices. Altering this set does not alter this
-     * graph.
-     **/
-    private Set<Long> vertices() {
-        Set<Long> vertices = new HashSet<>();
-        for (long id : nodes.keySet()) {
-            vertices.add(id);
-        }
-
-        return vertices;
+        return graph.estimatedDistanceToGoal(s, goal);
     }
 
     /**
      * Factory method. Creates and returns a graph from an OSM XML
-     * file. Assumes file is correctly formatted.
+     * file. Assumes file is correctly formatted. See OsmReader.
      */
-    private static StreetMapGraph readFromXML(String filename) {
-        StreetMapGraph smg = new StreetMapGraph();
-        try {
-            File inputFile = new File(filename);
-            FileInputStream inputStream = new FileInputStream(inputFile);
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
-            GraphBuildingHandler gbh = new GraphBuildingHandler(smg);
-            saxParser.parse(inputStream, gbh);
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            e.printStackTrace();
-        }
-
-        smg.clean();
-        return smg;
-    }
-
-    /** Adds a node to this graph, if it doesn't yet exist. **/
-    void addNode(Node node) {
-        if (!nodes.containsKey(node.id())) {
-            nodes.put(node.id(), node);
-            neighbors.put(node.id(), new HashSet<>());
-        }
-    }
-
-    /** Adds an edge to this graph, if FROMID and TOID are in this graph. Does
-     *  not add additional edge if edge already exists.
-     **/
-    void addWeightedEdge(long fromID, long toID, String name) {
-        if (nodes.containsKey(fromID) && nodes.containsKey(toID)) {
-            Node from = nodes.get(fromID);
-            Node to = nodes.get(toID);
-            double weight = distance(from.lon(), to.lon(), from.lat(), to.lat());
-
-            Set<WeightedEdge<Long>> edgeSet = neighbors.get(fromID);
-            WeightedEdge<Long> weightedEdge = new WeightedEdge<>(from.id(), to.id(), weight);
-            weightedEdge.setName(name);
-            edgeSet.add(weightedEdge);
-        }
+    private static CompactStreetMapGraph readFromXML(String filename) {
+        return OsmReader.read(filename);
     }
 
     /**
-     * Removes vertices with 0 out-degree from graph. Note that this will
-     * cause issues if edges are not bidirectional.
-     **/
-    private void clean() {
-        List<Long> toRemove = new ArrayList<>();
-        for (long id : nodes.keySet()) {
-            if (neighbors(id).size() == 0 && nodes.get(id).name() == null) {
-                toRemove.add(id);
-            }
-        }
-
-        for (long id : toRemove) {
-            nodes.remove(id);
-            neighbors.remove(id);
+     * Factory method. Creates and returns a graph from a snapshot written by GraphSnapshot.
+     * Throws UncheckedIOException if the snapshot cannot be read, e.g. because it is
+     * truncated or of another version: an empty graph would only fail later, and quietly.
+     */
+    private static CompactStreetMapGraph readFromSnapshot(String filename) {
+        try {
+            return GraphSnapshot.read(filename);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load snapshot " + filename + ".", e);
         }
     }
 
@@ -136,35 +80,29 @@ public class StreetMapGraph implements AStarGraph<Long> {
             return false;
         }
 
-        StreetMapGraph otherGraph = (StreetMapGraph) o;
-        Set<Long> myVertices = vertices(), otherGraphVertices = otherGraph.vertices();
-
-        if (myVertices.size() != otherGraphVertices.size()) {
+        CompactStreetMapGraph other = ((StreetMapGraph) o).graph;
+        if (graph.numVertices() != other.numVertices()) {
             return false;
         }
 
-        for (long id : myVertices) {
-            if (!otherGraphVertices.contains(id)) {
+        for (int v = 0; v < graph.numVertices(); v += 1) {
+            int w = other.index(graph.id(v));
+            if (w < 0) {
                 return false;
             }
 
-            List<WeightedEdge<Long>> myNeighbors = neighbors(id);
-            List<WeightedEdge<Long>> otherGraphNeighbors = otherGraph.neighbors(id);
-
-            if (myNeighbors.size() != otherGraphNeighbors.size()) {
+            int degree = graph.edgesFrom(v + 1) - graph.edgesFrom(v);
+            if (degree != other.edgesFrom(w + 1) - other.edgesFrom(w)) {
                 return false;
             }
 
             Set<Long> neighborsSet = new HashSet<>();
-            for (WeightedEdge<Long> e : myNeighbors) {
-                neighborsSet.add(e.to());
+            for (int e = graph.edgesFrom(v); e < graph.edgesFrom(v + 1); e += 1) {
+                neighborsSet.add(graph.id(graph.edgeTo(e)));
             }
 
-            int initialSize = neighborsSet.size();
-
-            for (WeightedEdge<Long> e : otherGraphNeighbors) {
-                neighborsSet.add(e.to());
-                if (neighborsSet.size() != initialSize) {
+            for (int e = other.edgesFrom(w); e < other.edgesFrom(w + 1); e += 1) {
+                if (!neighborsSet.contains(other.id(other.edgeTo(e)))) {
                     return false;
                 }
             }
@@ -179,7 +117,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
      *
      * @source Kevin Lowe & Antares Chen, and https://www.movable-type.co.uk/scripts/latlong.html
      **/
-    private double distance(double lonV, double lonW, double latV, double latW) {
+    static double distance(double lonV, double lonW, double latV, double latW) {
         double phi1 = Math.toRadians(latV);
         double phi2 = Math.toRadians(latW);
         double dphi = Math.toRadians(latW - latV);
@@ -197,10 +135,8 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The longitude of the vertex.
      */
     public double lon(long v) {
-        if (!nodes.containsKey(v)) {
-            return 0.0;
-        }
-        return nodes.get(v).lon();
+        int i = graph.index(v);
+        return i < 0 ? 0.0 : graph.lon(i);
     }
 
     /**
@@ -209,10 +145,8 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The latitude of the vertex.
      */
     public double lat(long v) {
-        if (!nodes.containsKey(v)) {
-            return 0.0;
-        }
-        return nodes.get(v).lat();
+        int i = graph.index(v);
+        return i < 0 ? 0.0 : graph.lat(i);
     }
 
     /**
@@ -221,16 +155,17 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The name of the vertex.
      */
     public String name(long v) {
-        if (!nodes.containsKey(v)) {
-            return null;
-        }
-        return nodes.get(v).name();
+        int i = graph.index(v);
+        return i < 0 ? null : graph.name(i);
     }
 
+    /** Returns a new Node for every vertex. Prefer compact(), which allocates nothing. */
     protected List<Node> getNodes() {
-        List<Node> nodes = new ArrayList<>();
-        for(Map.Entry<Long, Node> nodeEntry: this.nodes.entrySet()){
-            nodes.add(nodeEntry.getValue());
+        List<Node> nodes = new ArrayList<>(graph.numVertices());
+        for (int v = 0; v < graph.numVertices(); v += 1) {
+            Node node = Node.of(graph.id(v), graph.lat(v), graph.lon(v));
+            node.setName(graph.name(v));
+            nodes.add(node);
         }
         return nodes;
     }
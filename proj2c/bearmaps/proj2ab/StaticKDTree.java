@@ -0,0 +1,144 @@
+package bearmaps.proj2ab;
+
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable, balanced 2-d tree over a fixed set of points, each tagged with a long id.
+ * The tree is stored implicitly in three parallel primitive arrays: the subtree covering
+ * positions [lo, hi) has its root at (lo + hi) / 2, splitting on x at even depths and on y
+ * at odd depths. Building takes O(N log N) expected time; nearest() takes O(log N) expected
+ * time, allocates nothing and is safe to call from many threads at once.
+ * Distances are plain euclidean distances squared, as in the proj2ab Point.
+ */
+public class StaticKDTree {
+    private final double[] xs;
+    private final double[] ys;
+    private final long[] ids;
+
+    /**
+     * Builds the tree. The arrays are copied, so the caller may reuse them.
+     * @param x The x coordinates of the points.
+     * @param y The y coordinates of the points.
+     * @param id The id attached to each point.
+     */
+    public StaticKDTree(double[] x, double[] y, long[] id) {
+        if (x.length != y.length || x.length != id.length) {
+            throw new IllegalArgumentException("Coordinate and id arrays differ in length.");
+        }
+        xs = x.clone();
+        ys = y.clone();
+        ids = id.clone();
+        build(0, xs.length, 0);
+    }
+
+    /** Returns the number of points in the tree. */
+    public int size() {
+        return ids.length;
+    }
+
+    /** Returns the id of the point closest to (X, Y). */
+    public long nearest(double x, double y) {
+        if (ids.length == 0) {
+            throw new NoSuchElementException("Tree is empty.");
+        }
+        int best = nearestHelper(0, ids.length, 0, x, y, ids.length >>> 1);
+        return ids[best];
+    }
+
+    private int nearestHelper(int lo, int hi, int depth, double x, double y, int best) {
+        if (lo >= hi) {
+            return best;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (distance(mid, x, y) < distance(best, x, y)) {
+            best = mid;
+        }
+        double toBorder = lookAtX(depth) ? x - xs[mid] : y - ys[mid];
+        if (toBorder < 0) {
+            best = nearestHelper(lo, mid, depth + 1, x, y, best);
+            // the bad side can only help if the splitting border is closer than the best so far
+            if (toBorder * toBorder < distance(best, x, y)) {
+                best = nearestHelper(mid + 1, hi, depth + 1, x, y, best);
+            }
+        } else {
+            best = nearestHelper(mid + 1, hi, depth + 1, x, y, best);
+            if (toBorder * toBorder < distance(best, x, y)) {
+                best = nearestHelper(lo, mid, depth + 1, x, y, best);
+            }
+        }
+        return best;
+    }
+
+    private double distance(int i, double x, double y) {
+        double dx = xs[i] - x, dy = ys[i] - y;
+        return dx * dx + dy * dy;
+    }
+
+    /** Puts the median of [LO, HI) at its middle, then recurses on both halves. */
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, lookAtX(depth));
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    /** Quickselect: rearranges [LO, HI] so that position K holds the K-th smallest coordinate. */
+    private void select(int lo, int hi, int k, boolean byX) {
+        while (hi > lo) {
+            int p = partition(lo, hi, byX);
+            if (p < k) {
+                lo = p + 1;
+            } else if (p > k) {
+                hi = p - 1;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int partition(int lo, int hi, boolean byX) {
+        swap(lo, (lo + hi) >>> 1); // middle pivot, so pre-sorted input stays O(N)
+        double pivot = coord(lo, byX);
+        int i = lo, j = hi + 1;
+        while (true) {
+            while (coord(++i, byX) < pivot) {
+                if (i == hi) {
+                    break;
+                }
+            }
+            while (pivot < coord(--j, byX)) {
+                if (j == lo) {
+                    break;
+                }
+            }
+            if (i >= j) {
+                break;
+            }
+            swap(i, j);
+        }
+        swap(lo, j);
+        return j;
+    }
+
+    private double coord(int i, boolean byX) {
+        return byX ? xs[i] : ys[i];
+    }
+
+    private void swap(int i, int j) {
+        double tx = xs[i], ty = ys[i];
+        long tid = ids[i];
+        xs[i] = xs[j];
+        ys[i] = ys[j];
+        ids[i] = ids[j];
+        xs[j] = tx;
+        ys[j] = ty;
+        ids[j] = tid;
+    }
+
+    private static boolean lookAtX(int d) {
+        return d % 2 == 0;
+    }
+}
@@ -1,11 +1,12 @@
 package bearmaps.proj2c;
 
-import bearmaps.MyTrieSet;
+import bearmaps.hw4.ContractionHierarchy;
+import bearmaps.hw4.Landmarks;
 import bearmaps.hw4.WeightedEdge;
-import bearmaps.hw4.streetmap.Node;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
 import bearmaps.hw4.streetmap.StreetMapGraph;
-import bearmaps.proj2ab.KDTree;
-import bearmaps.proj2ab.Point;
+import bearmaps.proj2ab.StaticKDTree;
+import bearmaps.proj2c.utils.Constants;
 
 import java.time.temporal.ValueRange;
 import java.util.*;
@@ -19,68 +20,130 @@ import java.util.*;
  */
 public class AugmentedStreetMapGraph extends StreetMapGraph {
 
-    private MyTrieSet locations;
-    private Map<Node, Point> node2point;
-    private Map<Point, Node> point2node;
+    /** The names of the named nodes, for search. */
+    private final SearchIndex locations;
+    /** Built once; read-only afterwards, so closest() may be called from any thread. */
+    private final StaticKDTree positions;
+    /** compact(), which holds every node and edge, for the primitive-array solvers. */
+    private final CompactStreetMapGraph compact;
+    /** Routes found on this graph; a reloaded graph starts with an empty cache. */
+    private final RouteCache routeCache = new RouteCache(Constants.ROUTE_CACHE_SIZE,
+            Constants.ROUTE_CACHE_TTL_SECONDS);
+    /** Built or loaded on first use; see contractionHierarchy(). */
+    private ContractionHierarchy hierarchy;
+    /** Built or loaded on first use; see landmarks(). */
+    private Landmarks landmarks;
 
     public AugmentedStreetMapGraph(String dbPath) {
         super(dbPath);
-        locations = new MyTrieSet();
-        node2point = new HashMap<>();
-        point2node = new HashMap<>();
-        List<Node> nodes = getNodes();
-        for (Node node : nodes) {
-            if (node.name() != null) {
-                locations.add(cleanString(node.name()));
+        compact = compact();
+        locations = new SearchIndex(Constants.AUTOCOMPLETE_RESULTS);
+        for (int v = 0; v < compact.numVertices(); v += 1) {
+            if (compact.name(v) != null) {
+                /* Intersections and stops along ways rank above dead ends and lone shops. */
+                locations.add(compact.name(v), compact.id(v), 1 + degree(v));
             }
-            node2point.put(node, nodeToPoint(node));
-            point2node.put(nodeToPoint(node), node);
         }
-        // You might find it helpful to uncomment the line below:
-        // List<Node> nodes = this.getNodes();
+        positions = buildPositions();
     }
 
-    private static Point nodeToPoint(Node n) {
-        return new Point(n.lon(), n.lat());
+    /** Returns how many edges leave the node with index V of compact(). */
+    private int degree(int v) {
+        return compact.edgesFrom(v + 1) - compact.edgesFrom(v);
+    }
+
+    /** Returns the cache Router keeps this graph's routes in. */
+    public RouteCache routeCache() {
+        return routeCache;
     }
 
     /**
-     * For Project Part II
-     * Returns the vertex closest to the given longitude and latitude.
-     * @param lon The target longitude.
-     * @param lat The target latitude.
-     * @return The id of the node in the graph closest to the target.
+     * Returns the contraction hierarchy of compact(), building it on the first call unless
+     * one was set with setContractionHierarchy. Building takes seconds, so the server
+     * loads a prebuilt one on startup when it can.
      */
-    public long closest(double lon, double lat) {
-        // TODO Use KdTree to run in O(logN) time
+    public synchronized ContractionHierarchy contractionHierarchy() {
+        if (hierarchy == null) {
+            hierarchy = new ContractionHierarchy(compact);
+        }
+        return hierarchy;
+    }
 
-        List<Point> points = new LinkedList<>();
-        for (Node n : node2point.keySet()) {
-            points.add(node2point.get(n));
+    /**
+     * Uses CH, which must have been built for compact(), as the contraction hierarchy.
+     * Throws IllegalArgumentException, and keeps the hierarchy it had, if CH was built for
+     * another graph, even one with as many vertices.
+     */
+    public synchronized void setContractionHierarchy(ContractionHierarchy ch) {
+        if (ch.numVertices() != compact.numVertices()) {
+            throw new IllegalArgumentException("Hierarchy has " + ch.numVertices()
+                    + " vertices, graph has " + compact.numVertices() + ".");
         }
-        KDTree positions = new KDTree(points);
-        Point closestPoint = positions.nearest(lon, lat);
+        if (ch.graphFingerprint() != compact.fingerprint()) {
+            throw new IllegalArgumentException("Hierarchy was built for another graph.");
+        }
+        hierarchy = ch;
+    }
 
-        return point2node.get(closestPoint).id();
+    /**
+     * Returns the ALT landmark tables of compact(), computing Landmarks.DEFAULT_LANDMARKS
+     * of them on the first call unless some were set with setLandmarks.
+     */
+    public synchronized Landmarks landmarks() {
+        if (landmarks == null) {
+            landmarks = new Landmarks(compact, Landmarks.DEFAULT_LANDMARKS);
+        }
+        return landmarks;
+    }
 
+    /**
+     * Uses L, which must have been computed on compact(), as the landmark tables. Throws
+     * IllegalArgumentException, and keeps the tables it had, if L was computed on another
+     * graph, even one with as many vertices: its bounds could then overestimate, and ALT
+     * would return longer paths than the shortest.
+     */
+    public synchronized void setLandmarks(Landmarks l) {
+        if (l.numVertices() != compact.numVertices()) {
+            throw new IllegalArgumentException("Landmarks cover " + l.numVertices()
+                    + " vertices, graph has " + compact.numVertices() + ".");
+        }
+        if (l.graphFingerprint() != compact.fingerprint()) {
+            throw new IllegalArgumentException("Landmarks were computed on another graph.");
+        }
+        landmarks = l;
+    }
 
-        /*
-        double minDist = Double.POSITIVE_INFINITY;
-        Node closestNode = null;
-        for (Node aNode : this.getNodes()) {
-            if (dist(aNode, lon, lat) < minDist) {
-                minDist = dist(aNode, lon, lat);
-                closestNode = aNode;
+    /**
+     * Indexes every node that can be routed from, i.e. every node with at least one
+     * neighbor. Named nodes without edges (shops, bus stops, ...) are left out, since
+     * snapping a route endpoint onto one of them leaves A* with nowhere to go.
+     */
+    private StaticKDTree buildPositions() {
+        int n = 0;
+        double[] lons = new double[compact.numVertices()];
+        double[] lats = new double[compact.numVertices()];
+        long[] ids = new long[compact.numVertices()];
+        for (int v = 0; v < compact.numVertices(); v += 1) {
+            if (degree(v) > 0) {
+                lons[n] = compact.lon(v);
+                lats[n] = compact.lat(v);
+                ids[n] = compact.id(v);
+                n += 1;
             }
         }
-        return closestNode.id();
-        */
+        return new StaticKDTree(Arrays.copyOf(lons, n), Arrays.copyOf(lats, n),
+                Arrays.copyOf(ids, n));
     }
 
-    private static double dist(Node n, double lon, double lat) {
-        double deltaLon = n.lon() - lon,
-                deltaLat = n.lat() - lat;
-        return Math.sqrt(deltaLat * deltaLat + deltaLon * deltaLon);
+    /**
+     * For Project Part II
+     * Returns the vertex closest to the given longitude and latitude.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @return The id of the node in the graph closest to the target.
+     */
+    public long closest(double lon, double lat) {
+        return positions.nearest(lon, lat);
     }
 
     @Override
@@ -90,28 +153,30 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
 
     /**
      * For Project Part III (gold points)
-     * In linear time, collect all the names of OSM locations that prefix-match the query string.
+     * Collect the names of the OSM locations that best prefix-match the query string, in
+     * time proportional to the length of the prefix and the number of results, forgiving
+     * typos: one edit in prefixes of 3 to 5 letters, two in longer ones, and at most
+     * <code>Constants.MAX_SEARCH_EDITS</code>.
      * @param prefix Prefix string to be searched for. Could be any case, with our without
      *               punctuation.
-     * @return A <code>List</code> of the full names of locations whose cleaned name matches the
-     * cleaned <code>prefix</code>.
+     * @return A <code>List</code> of the full names of at most
+     * <code>Constants.AUTOCOMPLETE_RESULTS</code> locations whose cleaned name matches the
+     * cleaned <code>prefix</code>, one per cleaned name. Names needing fewer edits come
+     * first, then names carried by more nodes, by nodes with more neighbors, and searched
+     * for more often with recordSearch.
      */
     public List<String> getLocationsByPrefix(String prefix) {
-        List<String> fullNames = new LinkedList<>();
-        String cleanPrefix = cleanString(prefix);
-        // System.out.println("Trying to find locations with clean prefix: " + cleanPrefix);
-        LinkedList<String> cleanResults = (LinkedList<String>) locations.keysWithPrefix(cleanPrefix);
-        for (Node n : getNodes()) {
-            if (n.name() != null) {
-                for (String aCleanResult : cleanResults) {
-                    if (aCleanResult.equals(cleanString(n.name()))) {
-                        fullNames.add(n.name());
-                    }
-                }
-            }
-        }
-        // System.out.println("Full names: " + fullNames);
-        return fullNames;
+        int length = SearchIndex.clean(prefix).length();
+        int edits = length < 3 ? 0 : length < 6 ? 1 : 2;
+        return locations.fuzzyCompletions(prefix, Math.min(edits, Constants.MAX_SEARCH_EDITS));
+    }
+
+    /**
+     * Counts a search for the location LOCATION_NAME towards how high it ranks among the
+     * results of getLocationsByPrefix. Returns at once; the count is made in the background.
+     */
+    public void recordSearch(String locationName) {
+        locations.recordQuery(locationName);
     }
 
     /**
@@ -119,43 +184,26 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
      * Collect all locations that match a cleaned <code>locationName</code>, and return
      * information about each node that matches.
      * @param locationName A full name of a location searched for.
-     * @return A list of locations whose cleaned name matches the
-     * cleaned <code>locationName</code>, and each location is a map of parameters for the Json
-     * response as specified: <br>
+     * @return A list of at most <code>Constants.MAX_SEARCH_RESULTS</code> locations whose
+     * cleaned name matches the cleaned <code>locationName</code>, and each location is a map
+     * of parameters for the Json response as specified: <br>
      * "lat" -> Number, The latitude of the node. <br>
      * "lon" -> Number, The longitude of the node. <br>
      * "name" -> String, The actual name of the node. <br>
      * "id" -> Number, The id of the node. <br>
      */
     public List<Map<String, Object>> getLocations(String locationName) {
-        List<Map<String, Object>> results = new LinkedList<>();
-        LinkedList<String> cleanResults = (LinkedList<String>) locations.keysWithPrefix(cleanString(locationName));
-        for (Node n : getNodes()) {
-            if (n.name() != null) {
-                for (String aCleanResult : cleanResults) {
-                    if (aCleanResult.equals(cleanString(n.name()))){
-                        Map<String, Object> subRes = new HashMap<>();
-                        subRes.put("lat", n.lat());
-                        subRes.put("lon", n.lon());
-                        subRes.put("name", n.name());
-                        subRes.put("id", n.id());
-                        results.add(subRes);
-                    }
-                }
-            }
+        long[] ids = locations.idsWithPrefix(locationName, Constants.MAX_SEARCH_RESULTS);
+        List<Map<String, Object>> results = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Map<String, Object> subRes = new HashMap<>();
+            subRes.put("lat", lat(id));
+            subRes.put("lon", lon(id));
+            subRes.put("name", name(id));
+            subRes.put("id", id);
+            results.add(subRes);
         }
         return results;
     }
 
-
-    /**
-     * Useful for Part III. Do not modify.
-     * Helper to process strings into their "cleaned" form, ignoring punctuation and capitalization.
-     * @param s Input string.
-     * @return Cleaned string.
-     */
-    private static String cleanString(String s) {
-        return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
-    }
-
 }
@@ -1,8 +1,13 @@
 package bearmaps.proj2c;
 
+import bearmaps.hw4.ContractionHierarchy;
+import bearmaps.hw4.Landmarks;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import bearmaps.proj2c.utils.Constants;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -15,13 +20,55 @@ import static spark.Spark.*;
 public class MapServerInitializer {
 
 
+    /**
+     * Loads the graph from the snapshot if there is one, else from the OSM XML. A snapshot
+     * that fails to load (corrupt, truncated or of an old version) is reported, and the XML
+     * is read instead, so the server never starts with an empty graph.
+     */
+    private static AugmentedStreetMapGraph loadGraph() {
+        if (new File(Constants.OSM_SNAPSHOT_PATH).exists()) {
+            long start = System.currentTimeMillis();
+            try {
+                AugmentedStreetMapGraph graph =
+                        new AugmentedStreetMapGraph(Constants.OSM_SNAPSHOT_PATH);
+                System.out.println("Loaded " + Constants.OSM_SNAPSHOT_PATH + " in "
+                        + (System.currentTimeMillis() - start) + " ms.");
+                return graph;
+            } catch (UncheckedIOException e) {
+                e.printStackTrace();
+                System.out.println("Falling back to " + Constants.OSM_DB_PATH + ".");
+            }
+        }
+        return new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+    }
+
     /**
      * Place any initialization statements that will be run before the server main loop here.
      * Do not place it in the main function. Do not place initialization code anywhere else.
      **/
     public static void initializeServer(Map<String, APIRouteHandler> apiHandlers){
 
-        Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        Constants.SEMANTIC_STREET_GRAPH = loadGraph();
+        if (new File(Constants.CH_PATH).exists()) {
+            try {
+                Constants.SEMANTIC_STREET_GRAPH.setContractionHierarchy(
+                        ContractionHierarchy.read(Constants.CH_PATH));
+            } catch (IOException | IllegalArgumentException e) {
+                e.printStackTrace();
+                System.out.println("Not using " + Constants.CH_PATH + "; the contraction "
+                        + "hierarchy will be built on first use instead.");
+            }
+        }
+        if (new File(Constants.LANDMARKS_PATH).exists()) {
+            try {
+                Constants.SEMANTIC_STREET_GRAPH.setLandmarks(
+                        Landmarks.read(Constants.LANDMARKS_PATH));
+            } catch (IOException | IllegalArgumentException e) {
+                e.printStackTrace();
+                System.out.println("Not using " + Constants.LANDMARKS_PATH + "; the landmark "
+                        + "tables will be computed on first use instead.");
+            }
+        }
         staticFileLocation("/page");
         /* Allow for all origin requests (since this is not an authenticated server, we do not
          * care about CSRF).  */
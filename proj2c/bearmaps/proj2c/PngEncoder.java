@@ -0,0 +1,249 @@
+package bearmaps.proj2c;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes images as 8-bit RGB PNGs, compressing horizontal strips of rows in parallel on the
+ * common fork-join pool. ImageIO's writer filters and deflates the whole image on one
+ * thread at its fixed compression level, which for a full screen raster takes longer than
+ * finding and drawing the tiles.
+ *
+ * Each strip is deflated on its own and flushed to a byte boundary, so the strips can simply
+ * be written one after another as a single zlib stream, pigz style; matches do not reach
+ * back across strips, which costs a little compression. The zlib checksum of the whole
+ * image is combined from the checksums of the strips.
+ *
+ * Rows are not filtered. Map tiles are mostly flat colors whose raw runs deflate better than
+ * their differences do, which is also why ImageIO ends up choosing no filter for them. Level
+ * 0 stores the rows uncompressed: the fastest lossless mode there is, at the price of a
+ * much larger image.
+ *
+ * Alpha is dropped. An encoder holds no state between images and may be shared by threads.
+ */
+public class PngEncoder {
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int BYTES_PER_PIXEL = 3;
+    private static final int FILTER_NONE = 0;
+    /** The largest number a zlib (Adler-32) checksum is kept modulo. */
+    private static final int ADLER_BASE = 65521;
+
+    private final int level;
+    private final int stripRows;
+
+    /** Makes an encoder that deflates at LEVEL, 0 (none) to 9 (smallest), 64 rows a task. */
+    public PngEncoder(int level) {
+        this(level, 64);
+    }
+
+    /** Makes an encoder that deflates at LEVEL, 0 to 9, STRIP_ROWS rows per parallel task. */
+    public PngEncoder(int level, int stripRows) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("Compression level must be 0 to 9: " + level);
+        }
+        if (stripRows < 1) {
+            throw new IllegalArgumentException("Strips must have rows: " + stripRows);
+        }
+        this.level = level;
+        this.stripRows = stripRows;
+    }
+
+    public int level() {
+        return level;
+    }
+
+    /** Returns IMG encoded as a PNG. */
+    public byte[] encode(BufferedImage img) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            write(img, os);
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory failed.", e);
+        }
+        return os.toByteArray();
+    }
+
+    /** Writes IMG to OUT as a PNG. OUT is neither flushed nor closed. */
+    public void write(BufferedImage img, OutputStream out) throws IOException {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int numStrips = (height + stripRows - 1) / stripRows;
+        Strip[] strips = IntStream.range(0, numStrips).parallel()
+                .mapToObj(s -> encodeStrip(img, s * stripRows,
+                        Math.min(height, (s + 1) * stripRows), s == numStrips - 1))
+                .toArray(Strip[]::new);
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(width);
+        h.writeInt(height);
+        h.writeByte(8);                 // bits per sample
+        h.writeByte(2);                 // color type: RGB
+        h.writeByte(0);                 // compression: deflate
+        h.writeByte(0);                 // filters: adaptive, one byte per row
+        h.writeByte(0);                 // not interlaced
+        writeChunk(data, "IHDR", header.toByteArray(), 0, header.size(), null);
+
+        long adler = 1;
+        for (int s = 0; s < numStrips; s += 1) {
+            adler = combineAdler(adler, strips[s].adler, strips[s].rawLength);
+        }
+        for (int s = 0; s < numStrips; s += 1) {
+            byte[] prefix = s == 0 ? zlibHeader() : null;
+            byte[] body = strips[s].deflated;
+            if (s == numStrips - 1) {
+                body = appendInt(body, strips[s].deflatedLength, (int) adler);
+                writeChunk(data, "IDAT", body, 0, strips[s].deflatedLength + 4, prefix);
+            } else {
+                writeChunk(data, "IDAT", body, 0, strips[s].deflatedLength, prefix);
+            }
+        }
+        writeChunk(data, "IEND", new byte[0], 0, 0, null);
+    }
+
+    /** A deflated run of rows, with the length and checksum of the rows. */
+    private static class Strip {
+        private byte[] deflated;
+        private int deflatedLength;
+        private int rawLength;
+        private long adler;
+    }
+
+    /** Deflates rows FROM to TO - 1 of IMG; LAST ends the zlib stream. */
+    private Strip encodeStrip(BufferedImage img, int from, int to, boolean last) {
+        int width = img.getWidth();
+        int rowLength = 1 + width * BYTES_PER_PIXEL;
+        byte[] raw = new byte[(to - from) * rowLength];
+        int[] pixels = null;
+        if (img.getType() == BufferedImage.TYPE_INT_RGB
+                || img.getType() == BufferedImage.TYPE_INT_ARGB) {
+            pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        }
+        int[] argb = pixels == null ? new int[width] : null;
+        for (int y = from; y < to; y += 1) {
+            int i = (y - from) * rowLength;
+            raw[i] = FILTER_NONE;
+            samples(img, pixels, y, argb, raw, i + 1);
+        }
+
+        Strip strip = new Strip();
+        strip.rawLength = raw.length;
+        Adler32 checksum = new Adler32();
+        checksum.update(raw, 0, raw.length);
+        strip.adler = checksum.getValue();
+
+        Deflater deflater = new Deflater(level, true);
+        deflater.setInput(raw);
+        if (last) {
+            deflater.finish();
+        }
+        byte[] out = new byte[Math.max(64, raw.length / 4)];
+        int size = 0;
+        while (true) {
+            if (size == out.length) {
+                out = Arrays.copyOf(out, 2 * size);
+            }
+            int n = last ? deflater.deflate(out, size, out.length - size)
+                    : deflater.deflate(out, size, out.length - size, Deflater.SYNC_FLUSH);
+            size += n;
+            /* Deflating is done when a flush left room to spare, or the stream finished. */
+            if (last ? deflater.finished() : size < out.length) {
+                break;
+            }
+        }
+        deflater.end();
+        strip.deflated = out;
+        strip.deflatedLength = size;
+        return strip;
+    }
+
+    /**
+     * Puts the red, green and blue samples of row Y of IMG into OUT from START on. PIXELS is
+     * IMG's own pixel array, or null if IMG does not keep one pixel per int, in which case the
+     * row is first copied to ARGB.
+     */
+    private static void samples(BufferedImage img, int[] pixels, int y, int[] argb, byte[] out,
+                                int start) {
+        int width = img.getWidth();
+        int[] src = pixels;
+        int offset = y * width;
+        if (pixels == null) {
+            img.getRGB(0, y, width, 1, argb, 0, width);
+            src = argb;
+            offset = 0;
+        }
+        for (int x = 0, i = start; x < width; x += 1, i += BYTES_PER_PIXEL) {
+            int rgb = src[offset + x];
+            out[i] = (byte) (rgb >> 16);
+            out[i + 1] = (byte) (rgb >> 8);
+            out[i + 2] = (byte) rgb;
+        }
+    }
+
+    /** Returns the two byte zlib header announcing a 32K window and this level. */
+    private byte[] zlibHeader() {
+        int cmf = 0x78;
+        int flevel = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+        int flg = flevel << 6;
+        flg += 31 - (cmf * 256 + flg) % 31;
+        return new byte[]{(byte) cmf, (byte) flg};
+    }
+
+    /**
+     * Returns the Adler-32 checksum of two byte runs joined, given the checksum A1 of the
+     * first, the checksum A2 of the second and the LENGTH of the second. This is zlib's
+     * adler32_combine.
+     */
+    private static long combineAdler(long a1, long a2, long length) {
+        long rem = length % ADLER_BASE;
+        long sum1 = a1 & 0xffff;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (a2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((a1 >> 16) & 0xffff) + ((a2 >> 16) & 0xffff) + ADLER_BASE - rem;
+        sum1 %= ADLER_BASE;
+        sum2 %= ADLER_BASE;
+        return (sum2 << 16) | sum1;
+    }
+
+    /** Returns BYTES with the big-endian VALUE written at LENGTH, growing it if need be. */
+    private static byte[] appendInt(byte[] bytes, int length, int value) {
+        byte[] res = bytes.length >= length + 4 ? bytes : Arrays.copyOf(bytes, length + 4);
+        res[length] = (byte) (value >>> 24);
+        res[length + 1] = (byte) (value >>> 16);
+        res[length + 2] = (byte) (value >>> 8);
+        res[length + 3] = (byte) value;
+        return res;
+    }
+
+    /** Writes a chunk of TYPE holding PREFIX, if not null, then LENGTH bytes of BYTES. */
+    private static void writeChunk(DataOutputStream out, String type, byte[] bytes, int offset,
+                                   int length, byte[] prefix) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        int prefixLength = prefix == null ? 0 : prefix.length;
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        if (prefix != null) {
+            crc.update(prefix);
+        }
+        crc.update(bytes, offset, length);
+        out.writeInt(prefixLength + length);
+        out.write(typeBytes);
+        if (prefix != null) {
+            out.write(prefix);
+        }
+        out.write(bytes, offset, length);
+        out.writeInt((int) crc.getValue());
+    }
+}
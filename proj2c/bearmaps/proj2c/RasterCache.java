@@ -0,0 +1,137 @@
+package bearmaps.proj2c;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encoded raster images, so that a raster asked for again is neither drawn nor encoded
+ * again. A raster is keyed by its depth, the range of tiles it covers and the version of the
+ * route drawn over it (see RouteStore.version), 0 for none; a route that changes gets a new
+ * version, so images of old routes are never served, and simply age out. Since most rasters
+ * have no route on them, everyone looking at the same part of the map shares them.
+ *
+ * Entries are evicted least recently used first once the images take up more than a fixed
+ * number of bytes. All methods are synchronized and do no more than a hash probe under the
+ * lock; cached arrays are shared and must not be modified.
+ */
+public class RasterCache {
+    private final long maxBytes;
+    private final LinkedHashMap<Key, byte[]> images;
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /** Makes a cache holding at most MAX_BYTES of images. */
+    public RasterCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.images = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the image of the COLS x ROWS tiles at DEPTH from (X0, Y0) on, with the route of
+     * version ROUTE_VERSION over them, or null if it is not cached.
+     */
+    public synchronized byte[] get(int depth, int x0, int y0, int cols, int rows,
+                                   long routeVersion) {
+        byte[] image = images.get(new Key(depth, x0, y0, cols, rows, routeVersion));
+        if (image == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return image;
+    }
+
+    /** Caches IMAGE as the image get() describes. Images larger than the cache are not kept. */
+    public synchronized void put(int depth, int x0, int y0, int cols, int rows,
+                                 long routeVersion, byte[] image) {
+        if (image.length > maxBytes) {
+            return;
+        }
+        byte[] old = images.put(new Key(depth, x0, y0, cols, rows, routeVersion), image);
+        if (old != null) {
+            bytes -= old.length;
+        }
+        bytes += image.length;
+        while (bytes > maxBytes) {
+            Map.Entry<Key, byte[]> eldest = images.entrySet().iterator().next();
+            bytes -= eldest.getValue().length;
+            images.remove(eldest.getKey());
+            evictions += 1;
+        }
+    }
+
+    /** Forgets every cached image. The counters are kept. */
+    public synchronized void invalidate() {
+        images.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return images.size();
+    }
+
+    /** Returns how many bytes the cached images take up. */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("RasterCache(%d images, %d/%d bytes, %d hits, %d misses, "
+                + "%d evictions)", images.size(), bytes, maxBytes, hits, misses, evictions);
+    }
+
+    private static class Key {
+        private final int depth;
+        private final int x0;
+        private final int y0;
+        private final int cols;
+        private final int rows;
+        private final long routeVersion;
+
+        Key(int depth, int x0, int y0, int cols, int rows, long routeVersion) {
+            this.depth = depth;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.cols = cols;
+            this.rows = rows;
+            this.routeVersion = routeVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return depth == other.depth && x0 == other.x0 && y0 == other.y0
+                    && cols == other.cols && rows == other.rows
+                    && routeVersion == other.routeVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = depth;
+            h = h * 31 + x0;
+            h = h * 31 + y0;
+            h = h * 31 + cols;
+            h = h * 31 + rows;
+            return h * 31 + Long.hashCode(routeVersion);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package bearmaps.proj2c;
+
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLON;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLON;
+import static bearmaps.proj2c.utils.Constants.TILE_SIZE;
+
+/**
+ * Where the map tiles are. The root tile covers the box from (ROOT_ULLON, ROOT_ULLAT) to
+ * (ROOT_LRLON, ROOT_LRLAT), and each depth splits every tile of the one above into four, so
+ * at depth d the box is 2^d by 2^d tiles, numbered from 0 left to right (x) and top to
+ * bottom (y). Everything here is a constant number of arithmetic operations on primitives,
+ * whatever the depth, and allocates nothing.
+ */
+public final class RasterGeometry {
+    /**
+     * The deepest depth tiles can be numbered at: TileCache packs tile numbers into 28 bits,
+     * and past this the tiles of the Berkeley box would be well under a millimeter anyway.
+     */
+    public static final int MAX_SUPPORTED_DEPTH = 28;
+
+    private RasterGeometry() {
+    }
+
+    /** Returns how many tiles the root is split into along each side at DEPTH. */
+    public static int tilesPerSide(int depth) {
+        return 1 << depth;
+    }
+
+    /** Returns the longitude one tile at DEPTH spans. */
+    public static double tileLonWidth(int depth) {
+        return (ROOT_LRLON - ROOT_ULLON) / tilesPerSide(depth);
+    }
+
+    /** Returns the latitude one tile at DEPTH spans. */
+    public static double tileLatHeight(int depth) {
+        return (ROOT_ULLAT - ROOT_LRLAT) / tilesPerSide(depth);
+    }
+
+    /** Returns the longitudinal distance per pixel of the tiles at DEPTH. */
+    public static double lonDPP(int depth) {
+        return tileLonWidth(depth) / TILE_SIZE;
+    }
+
+    /** Returns the latitudinal distance per pixel of the tiles at DEPTH. */
+    public static double latDPP(int depth) {
+        return tileLatHeight(depth) / TILE_SIZE;
+    }
+
+    /**
+     * Returns the shallowest depth, up to MAX_DEPTH, whose tiles cover at most LON_DPP of
+     * longitude per pixel, or MAX_DEPTH if none does.
+     */
+    public static int depthFor(double lonDPP, int maxDepth) {
+        if (!(lonDPP > 0)) {
+            return maxDepth;
+        }
+        /* lonDPP(d) halves with every depth, so the answer is ceil(log2(lonDPP(0) / lonDPP)),
+         * up to rounding, which the two loops below settle exactly. */
+        int depth = (int) Math.ceil(Math.log(lonDPP(0) / lonDPP) / Math.log(2));
+        depth = Math.max(0, Math.min(maxDepth, depth));
+        while (depth > 0 && lonDPP(depth - 1) <= lonDPP) {
+            depth -= 1;
+        }
+        while (depth < maxDepth && lonDPP(depth) > lonDPP) {
+            depth += 1;
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the x of the tile at DEPTH that longitude LON falls in. Longitudes left or
+     * right of the root give the first or last column.
+     */
+    public static int tileX(int depth, double lon) {
+        return clamp((lon - ROOT_ULLON) / tileLonWidth(depth), depth);
+    }
+
+    /**
+     * Returns the y of the tile at DEPTH that latitude LAT falls in. Latitudes above or below
+     * the root give the first or last row.
+     */
+    public static int tileY(int depth, double lat) {
+        return clamp((ROOT_ULLAT - lat) / tileLatHeight(depth), depth);
+    }
+
+    private static int clamp(double index, int depth) {
+        if (index < 0) {
+            return 0;
+        }
+        return (int) Math.min(Math.floor(index), tilesPerSide(depth) - 1);
+    }
+
+    /** Returns the longitude of the left edge of the tiles in column X at DEPTH. */
+    public static double ulLon(int depth, int x) {
+        return ROOT_ULLON + x * tileLonWidth(depth);
+    }
+
+    /** Returns the latitude of the top edge of the tiles in row Y at DEPTH. */
+    public static double ulLat(int depth, int y) {
+        return ROOT_ULLAT - y * tileLatHeight(depth);
+    }
+
+    /**
+     * Returns whether the box from (ULLON, ULLAT) to (LRLON, LRLAT) is a box at all and
+     * overlaps the root, if only partly.
+     */
+    public static boolean intersectsRoot(double ullon, double ullat, double lrlon,
+                                         double lrlat) {
+        return ullon < lrlon && ullat > lrlat
+                && ullon < ROOT_LRLON && lrlon > ROOT_ULLON
+                && ullat > ROOT_LRLAT && lrlat < ROOT_ULLAT;
+    }
+}
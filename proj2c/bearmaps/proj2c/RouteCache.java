@@ -0,0 +1,142 @@
+package bearmaps.proj2c;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of routes, keyed by the (source node, destination node) pair that
+ * the request coordinates snapped to. Two clicks a few meters apart on the same building
+ * snap to the same nodes and so share an entry.
+ *
+ * Entries older than the time to live are treated as missing. Every graph owns its own
+ * cache (see AugmentedStreetMapGraph.routeCache()), so reloading the graph starts from an
+ * empty one; invalidate() empties it explicitly. All methods are synchronized, which is
+ * plenty for lookups that cost a hash probe next to searches that cost milliseconds.
+ */
+public class RouteCache {
+    private final int capacity;
+    private final long ttlNanos;
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Makes a cache holding at most CAPACITY routes, each for at most TTL_SECONDS seconds.
+     * A TTL_SECONDS of 0 or less means routes never expire.
+     */
+    public RouteCache(int capacity, double ttlSeconds) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.ttlNanos = ttlSeconds > 0 ? (long) (ttlSeconds * 1e9) : Long.MAX_VALUE;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > RouteCache.this.capacity) {
+                    evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the route from node SRC to node DEST, or null if it is not cached or has
+     * expired. The returned list must not be modified.
+     */
+    public synchronized List<Long> get(long src, long dest) {
+        Key key = new Key(src, dest);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses += 1;
+            return null;
+        }
+        if (System.nanoTime() - entry.created > ttlNanos) {
+            entries.remove(key);
+            evictions += 1;
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return entry.route;
+    }
+
+    /** Caches ROUTE as the route from node SRC to node DEST. */
+    public synchronized void put(long src, long dest, List<Long> route) {
+        entries.put(new Key(src, dest),
+                new Entry(Collections.unmodifiableList(new ArrayList<>(route)), System.nanoTime()));
+    }
+
+    /** Forgets every cached route. The counters are kept. */
+    public synchronized void invalidate() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /** Returns how many routes were dropped to make room or because they expired. */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("RouteCache(%d/%d routes, %d hits, %d misses, %d evictions)",
+                entries.size(), capacity, hits, misses, evictions);
+    }
+
+    private static class Key {
+        private final long src;
+        private final long dest;
+
+        Key(long src, long dest) {
+            this.src = src;
+            this.dest = dest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return src == other.src && dest == other.dest;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(src) * 31 + Long.hashCode(dest);
+        }
+    }
+
+    private static class Entry {
+        private final List<Long> route;
+        private final long created;
+
+        Entry(List<Long> route, long created) {
+            this.route = route;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package bearmaps.proj2c;
+
+import java.awt.geom.Path2D;
+import java.util.List;
+
+/**
+ * The shape of a route: the coordinates of its nodes, looked up once, and for each depth
+ * the subset of them that still draws the same line at that depth's resolution.
+ *
+ * Simplification is Douglas-Peucker in the pixel space of the depth, dropping every node
+ * that moves the line by no more than half a pixel, so a route across the whole map keeps
+ * a few dozen of its thousands of nodes when zoomed out and all of them that matter when
+ * zoomed in. Each depth is simplified the first time it is asked for, under the lock; a
+ * geometry is immutable otherwise and may be shared by threads.
+ */
+public class RouteGeometry {
+    /** How far, in pixels, simplification may move the line. */
+    private static final double TOLERANCE_PX = 0.5;
+    /** Coordinates are encoded in polylines to this many digits after the point. */
+    private static final double POLYLINE_SCALE = 1e5;
+
+    private final double[] lons;
+    private final double[] lats;
+    /** The indices of the nodes kept at each depth, or null until first asked for. */
+    private final int[][] simplified = new int[RasterGeometry.MAX_SUPPORTED_DEPTH + 1][];
+
+    /** Makes the geometry of ROUTE, a list of node ids in G. */
+    public RouteGeometry(List<Long> route, AugmentedStreetMapGraph g) {
+        lons = new double[route.size()];
+        lats = new double[route.size()];
+        int i = 0;
+        for (long id : route) {
+            lons[i] = g.lon(id);
+            lats[i] = g.lat(id);
+            i += 1;
+        }
+    }
+
+    /** Makes the geometry of the route through the points (LONS[i], LATS[i]), in order. */
+    public RouteGeometry(double[] lons, double[] lats) {
+        if (lons.length != lats.length) {
+            throw new IllegalArgumentException("As many longitudes as latitudes needed.");
+        }
+        this.lons = lons.clone();
+        this.lats = lats.clone();
+    }
+
+    /** Returns how many points the route has. */
+    public int size() {
+        return lons.length;
+    }
+
+    public double lon(int i) {
+        return lons[i];
+    }
+
+    public double lat(int i) {
+        return lats[i];
+    }
+
+    /**
+     * Returns the indices, in order, of the points that draw the route at DEPTH to within
+     * half a pixel; always the first and the last. The array must not be modified.
+     */
+    public synchronized int[] simplified(int depth) {
+        if (simplified[depth] == null) {
+            simplified[depth] = douglasPeucker(1 / RasterGeometry.lonDPP(depth),
+                    1 / RasterGeometry.latDPP(depth));
+        }
+        return simplified[depth];
+    }
+
+    /**
+     * Returns the indices of the points Douglas-Peucker keeps when longitudes are scaled by
+     * X_SCALE and latitudes by Y_SCALE to become pixels. Runs on an explicit stack, since
+     * long routes would recurse too deeply.
+     */
+    private int[] douglasPeucker(double xScale, double yScale) {
+        int n = lons.length;
+        if (n <= 2) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i += 1) {
+                all[i] = i;
+            }
+            return all;
+        }
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        double tolerance2 = TOLERANCE_PX * TOLERANCE_PX;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double ax = lons[first] * xScale, ay = lats[first] * yScale;
+            double bx = lons[last] * xScale, by = lats[last] * yScale;
+            int farthest = -1;
+            double farthest2 = tolerance2;
+            for (int i = first + 1; i < last; i += 1) {
+                double d2 = distance2(lons[i] * xScale, lats[i] * yScale, ax, ay, bx, by);
+                if (d2 > farthest2) {
+                    farthest = i;
+                    farthest2 = d2;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+        int count = 0;
+        for (boolean k : keep) {
+            count += k ? 1 : 0;
+        }
+        int[] kept = new int[count];
+        for (int i = 0, j = 0; i < n; i += 1) {
+            if (keep[i]) {
+                kept[j] = i;
+                j += 1;
+            }
+        }
+        return kept;
+    }
+
+    /** Returns the squared distance from (PX, PY) to the segment from (AX, AY) to (BX, BY). */
+    private static double distance2(double px, double py, double ax, double ay, double bx,
+                                    double by) {
+        double dx = bx - ax, dy = by - ay;
+        double length2 = dx * dx + dy * dy;
+        double t = length2 == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / length2;
+        t = Math.max(0, Math.min(1, t));
+        double ex = ax + t * dx - px, ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Returns the route simplified for DEPTH as a path in the pixels of a WIDTH x HEIGHT
+     * raster of the box from (ULLON, ULLAT) to (LRLON, LRLAT). Segments that do not come
+     * within MARGIN pixels of the raster are left out, so a long route that mostly runs off
+     * screen costs next to nothing to draw. Returns null if nothing is left.
+     */
+    public Path2D path(int depth, double ullon, double ullat, double lrlon, double lrlat,
+                       int width, int height, double margin) {
+        int[] kept = simplified(depth);
+        double xScale = width / (lrlon - ullon), yScale = height / (ullat - lrlat);
+        Path2D.Double path = null;
+        boolean connected = false;
+        double px = 0, py = 0;
+        for (int k = 0; k < kept.length; k += 1) {
+            double x = (lons[kept[k]] - ullon) * xScale, y = (ullat - lats[kept[k]]) * yScale;
+            if (k > 0 && Math.max(px, x) >= -margin && Math.min(px, x) <= width + margin
+                    && Math.max(py, y) >= -margin && Math.min(py, y) <= height + margin) {
+                if (path == null) {
+                    path = new Path2D.Double();
+                }
+                if (!connected) {
+                    path.moveTo(px, py);
+                }
+                path.lineTo(x, y);
+                connected = true;
+            } else {
+                connected = false;
+            }
+            px = x;
+            py = y;
+        }
+        return path;
+    }
+
+    /**
+     * Returns the route simplified for DEPTH in the Encoded Polyline Algorithm Format: each
+     * point as latitude then longitude, to five decimal places, relative to the point before.
+     */
+    public String polyline(int depth) {
+        StringBuilder sb = new StringBuilder();
+        long lastLat = 0, lastLon = 0;
+        for (int i : simplified(depth)) {
+            long lat = Math.round(lats[i] * POLYLINE_SCALE);
+            long lon = Math.round(lons[i] * POLYLINE_SCALE);
+            encodeSigned(lat - lastLat, sb);
+            encodeSigned(lon - lastLon, sb);
+            lastLat = lat;
+            lastLon = lon;
+        }
+        return sb.toString();
+    }
+
+    private static void encodeSigned(long value, StringBuilder sb) {
+        long v = value < 0 ? ~(value << 1) : value << 1;
+        while (v >= 0x20) {
+            sb.append((char) ((0x20 | (v & 0x1f)) + 63));
+            v >>= 5;
+        }
+        sb.append((char) (v + 63));
+    }
+
+    /**
+     * Returns the route simplified for DEPTH as [longitude, latitude] pairs, the way GeoJSON
+     * lists the coordinates of a LineString.
+     */
+    public double[][] coordinates(int depth) {
+        int[] kept = simplified(depth);
+        double[][] coordinates = new double[kept.length][];
+        for (int k = 0; k < kept.length; k += 1) {
+            coordinates[k] = new double[]{lons[kept[k]], lats[kept[k]]};
+        }
+        return coordinates;
+    }
+}
@@ -0,0 +1,119 @@
+package bearmaps.proj2c;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The route each client has asked for, so that the raster handler draws every user's own
+ * route and not whichever one was requested last. Routes are keyed by an owner string,
+ * normally the client's session id (see APIRouteHandler.routeOwner). The null owner, a
+ * client without a session, never has a route: get returns it none and version 0.
+ *
+ * At most a fixed number of owners are remembered, least recently active first out, and an
+ * owner that has not been seen for longer than the time to live is forgotten. Routes are
+ * immutable lists replaced wholesale on every change, so a reader never sees one half
+ * written. Every route stored gets a new version number, so that anything drawn from a
+ * route can tell whether it is still current. All methods are synchronized and do no more
+ * than a hash probe under the lock.
+ */
+public class RouteStore {
+    private final int capacity;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> routes;
+    private long nextVersion = 1;
+
+    /**
+     * Makes a store for at most CAPACITY owners, each forgotten after TTL_SECONDS seconds
+     * without a request. A TTL_SECONDS of 0 or less means owners never expire.
+     */
+    public RouteStore(int capacity, double ttlSeconds) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.ttlNanos = ttlSeconds > 0 ? (long) (ttlSeconds * 1e9) : Long.MAX_VALUE;
+        this.routes = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > RouteStore.this.capacity;
+            }
+        };
+    }
+
+    /** Returns OWNER's route, empty if there is none. The list must not be modified. */
+    public synchronized List<Long> get(String owner) {
+        Entry entry = live(owner);
+        return entry == null ? Collections.emptyList() : entry.route;
+    }
+
+    /**
+     * Adds ROUTE to the end of OWNER's route and returns the whole route. The list must not
+     * be modified.
+     */
+    public synchronized List<Long> append(String owner, List<Long> route) {
+        Entry entry = live(owner);
+        List<Long> combined = new ArrayList<>(entry == null ? route.size()
+                : entry.route.size() + route.size());
+        if (entry != null) {
+            combined.addAll(entry.route);
+        }
+        combined.addAll(route);
+        List<Long> res = Collections.unmodifiableList(combined);
+        routes.put(owner, new Entry(res, nextVersion, System.nanoTime()));
+        nextVersion += 1;
+        return res;
+    }
+
+    /**
+     * Returns the version of OWNER's route, 0 if there is none. Versions are never reused, so
+     * a version read before get(OWNER) is never newer than the route get returns.
+     */
+    public synchronized long version(String owner) {
+        Entry entry = live(owner);
+        return entry == null ? 0 : entry.version;
+    }
+
+    /** Forgets OWNER's route. */
+    public synchronized void clear(String owner) {
+        routes.remove(owner);
+    }
+
+    /** Returns how many owners have a route. */
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Returns OWNER's entry and marks it as just seen, or null if it is missing or expired. */
+    private Entry live(String owner) {
+        Entry entry = routes.get(owner);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (now - entry.lastSeen > ttlNanos) {
+            routes.remove(owner);
+            return null;
+        }
+        entry.lastSeen = now;
+        return entry;
+    }
+
+    private static class Entry {
+        private final List<Long> route;
+        private final long version;
+        private long lastSeen;
+
+        Entry(List<Long> route, long version, long lastSeen) {
+            this.route = route;
+            this.version = version;
+            this.lastSeen = lastSeen;
+        }
+    }
+}
@@ -1,8 +1,16 @@
 package bearmaps.proj2c;
 
-import bearmaps.hw4.AStarSolver;
-import bearmaps.hw4.WeirdSolver;
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.ContractionHierarchySolver;
+import bearmaps.hw4.DistanceMatrix;
+import bearmaps.hw4.IndexedAStarSolver;
+import bearmaps.hw4.Isochrone;
+import bearmaps.hw4.IndexedLandmarkGraph;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.regex.Matcher;
@@ -13,28 +21,126 @@ import java.util.regex.Pattern;
  * @author Josh Hug, ______
  */
 public class Router {
+    /** Seconds a single shortest path search may take. */
+    private static final double TIMEOUT = 20;
+
+    /** The shortest path algorithms shortestPath can run. */
+    public enum Algorithm {
+        /** One-sided A*. */
+        ASTAR,
+        /** A* from both ends at once; explores fewer states on long routes. */
+        BIDIRECTIONAL_ASTAR,
+        /** A* with the ALT heuristic from the graph's landmark tables. */
+        ALT,
+        /** Upward search over the graph's contraction hierarchy; by far the fastest query. */
+        CONTRACTION_HIERARCHY
+    }
+
+    /**
+     * Returns a List of longs representing the shortest path from the node
+     * closest to a start location and the node closest to the destination location,
+     * found with A*.
+     * @param g The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @return A list of node id's in the order visited on the shortest path.
+     */
+    public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                          double destlon, double destlat) {
+        return shortestPath(g, stlon, stlat, destlon, destlat, Algorithm.ASTAR);
+    }
 
     /**
      * Overloaded method for shortestPath that has flexibility to specify a solver
      * and returns a List of longs representing the shortest path from the node
      * closest to a start location and the node closest to the destination location.
+     * Routes are looked up in g.routeCache() before searching; every algorithm finds a
+     * shortest path, so a route cached by one serves them all.
      * @param g The graph to use.
      * @param stlon The longitude of the start location.
      * @param stlat The latitude of the start location.
      * @param destlon The longitude of the destination location.
      * @param destlat The latitude of the destination location.
+     * @param algorithm The algorithm to search with.
      * @return A list of node id's in the order visited on the shortest path.
      */
     public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
-                                          double destlon, double destlat) {
+                                          double destlon, double destlat,
+                                          Algorithm algorithm) {
         long src = g.closest(stlon, stlat);
         long dest = g.closest(destlon, destlat);
-        // TODO why src hasn't any neighbors??? only in test case I & VI
-        // print and found is an empty list
-        // System.out.println(g.neighbors(src));
-        // System.out.println(g.neighbors(dest));
-        AStarSolver astarsol = new AStarSolver<>(g, src, dest, 20);
-        return  astarsol.solution();
+        List<Long> cached = g.routeCache().get(src, dest);
+        if (cached != null) {
+            return new ArrayList<>(cached);
+        }
+        CompactStreetMapGraph csr = g.compact();
+        int s = csr.index(src), t = csr.index(dest);
+        ShortestPathsSolver<Integer> solver;
+        switch (algorithm) {
+            case BIDIRECTIONAL_ASTAR:
+                solver = new BidirectionalAStarSolver(csr, s, t, TIMEOUT);
+                break;
+            case ALT:
+                solver = new IndexedAStarSolver(new IndexedLandmarkGraph(csr, g.landmarks()),
+                        s, t, TIMEOUT);
+                break;
+            case CONTRACTION_HIERARCHY:
+                solver = new ContractionHierarchySolver(g.contractionHierarchy(), s, t, TIMEOUT);
+                break;
+            default:
+                solver = new IndexedAStarSolver(csr, s, t, TIMEOUT);
+                break;
+        }
+        List<Long> route = new ArrayList<>();
+        for (int v : solver.solution()) {
+            route.add(csr.id(v));
+        }
+        if (solver.outcome() != SolverOutcome.TIMEOUT) {
+            g.routeCache().put(src, dest, route);
+        }
+        return route;
+    }
+
+    /**
+     * Returns the road distances between every pair of a set of start and end locations,
+     * each snapped to its closest node first, computed with the contraction hierarchy of G.
+     * @param g The graph to use.
+     * @param sources The start locations as longitude, latitude pairs: lon0, lat0, lon1, ...
+     * @param targets The end locations, in the same form.
+     * @return A matrix whose entry (i, j) is the distance from start i to end j.
+     */
+    public static DistanceMatrix distanceMatrix(AugmentedStreetMapGraph g, double[] sources,
+                                                double[] targets) {
+        CompactStreetMapGraph csr = g.compact();
+        return new DistanceMatrix(g.contractionHierarchy(), snap(g, csr, sources),
+                snap(g, csr, targets));
+    }
+
+    /**
+     * Returns everything reachable within each of several distances of a location, which
+     * is first snapped to its closest node. Vertices are indices into g.compact().
+     * @param g The graph to use.
+     * @param lon The longitude of the location.
+     * @param lat The latitude of the location.
+     * @param budgets The distances, in miles.
+     * @return The isochrone of every budget, found in one search.
+     */
+    public static Isochrone isochrone(AugmentedStreetMapGraph g, double lon, double lat,
+                                      double[] budgets) {
+        CompactStreetMapGraph csr = g.compact();
+        return new Isochrone(csr, csr.index(g.closest(lon, lat)), budgets);
+    }
+
+    /** Returns the index in CSR of the node closest to each lon, lat pair in LONLATS. */
+    private static int[] snap(AugmentedStreetMapGraph g, CompactStreetMapGraph csr,
+                              double[] lonLats) {
+        int[] res = new int[lonLats.length / 2];
+        for (int i = 0; i < res.length; i += 1) {
+            res[i] = csr.index(g.closest(lonLats[2 * i], lonLats[2 * i + 1]));
+        }
+        return res;
     }
 
     /**
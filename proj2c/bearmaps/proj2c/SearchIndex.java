@@ -0,0 +1,534 @@
+package bearmaps.proj2c;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An index from the names of locations to the ids of the nodes that carry them. Names are
+ * compared cleaned (see clean()), so "Top Dog" and "top-dog" are the same name. Every name
+ * is a path down a trie whose last node holds the ids of the nodes with that name, so
+ * finding the locations whose names start with a prefix walks the prefix and then only
+ * the part of the trie the results are in, however many locations there are in all.
+ *
+ * For autocomplete, every name has a score: the weights it was added with, plus one for
+ * every time recordQuery() was called with it. Each trie node keeps the best scoring
+ * completions under it, so the top completions of a prefix cost a walk down the prefix
+ * and nothing else. Queries are recorded on a background thread, which updates the scores
+ * and the lists of best completions along the name's path, and publishes every changed
+ * list as a new array, so searches never wait for it.
+ *
+ * Search also forgives typos: fuzzyCompletions() walks the trie with a Levenshtein
+ * automaton, going down only the branches some completion of which could still be close
+ * enough to the prefix, and collects the best completions cached at the nodes it accepts.
+ *
+ * Adding is not thread safe; once built, an index may be searched from any thread.
+ */
+public class SearchIndex {
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final long[] NO_IDS = new long[0];
+    private static final Node[] NO_COMPLETIONS = new Node[0];
+
+    /**
+     * What clean() turns each ASCII character into: letters into lower case letters, the
+     * space into itself, and everything else into 0, meaning dropped.
+     */
+    private static final char[] CLEAN = new char[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c += 1) {
+            CLEAN[c] = c;
+            CLEAN[c - 'a' + 'A'] = c;
+        }
+        CLEAN[' '] = ' ';
+    }
+
+    private static class Node {
+        /** The characters of the edges to the children, in increasing order. */
+        private char[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+        /** The ids of the locations whose cleaned name ends here; the first idCount used. */
+        private long[] ids = NO_IDS;
+        private int idCount = 0;
+
+        /** The name shown for the locations ending here: the one added with most weight. */
+        private String name;
+        private double nameWeight;
+        /** The sum of the weights the name was added with, plus the queries recorded. */
+        private double score;
+        /** Where the name comes alphabetically among all names, as of the last ranking. */
+        private int order;
+        /**
+         * The best scoring names at or under this node, at most completions of them, best
+         * first. Never modified once published: changes replace the array.
+         */
+        private volatile Node[] best = NO_COMPLETIONS;
+
+        /** Returns the child along C, or null if there is none. */
+        private Node child(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i < 0 ? null : children[i];
+        }
+
+        /** Returns the child along C, adding it first if there is none. */
+        private Node childOrAdd(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -i - 1;
+            int n = labels.length;
+            char[] newLabels = new char[n + 1];
+            Node[] newChildren = new Node[n + 1];
+            System.arraycopy(labels, 0, newLabels, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(labels, i, newLabels, i + 1, n - i);
+            System.arraycopy(children, i, newChildren, i + 1, n - i);
+            newLabels[i] = c;
+            newChildren[i] = new Node();
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[i];
+        }
+
+        private void addId(long id) {
+            if (idCount == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(1, 2 * idCount));
+            }
+            ids[idCount] = id;
+            idCount += 1;
+        }
+    }
+
+    /** Best scores first, and alphabetically among equal scores. */
+    private static final Comparator<Node> BY_RANK = (a, b) -> {
+        int c = Double.compare(b.score, a.score);
+        return c != 0 ? c : Integer.compare(a.order, b.order);
+    };
+
+    private final Node root = new Node();
+    private int size = 0;
+    /** The length of the longest cleaned name. */
+    private int longest = 0;
+    /** How many completions each node keeps. */
+    private final int completions;
+    /** Whether names were added since the lists of best completions were computed. */
+    private volatile boolean stale = true;
+
+    /**
+     * Records queries for every index, one at a time. Shared, so that the indices of graphs
+     * built and thrown away (in tests, say) do not each leave a thread behind.
+     */
+    private static final ExecutorService RECORDER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "search-popularity");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Makes an empty index that keeps the best COMPLETIONS completions of every prefix. */
+    public SearchIndex(int completions) {
+        if (completions < 1) {
+            throw new IllegalArgumentException("Completions must be positive: " + completions);
+        }
+        this.completions = completions;
+    }
+
+    /**
+     * Returns S with everything but letters and spaces left out, in lower case. Does what
+     * s.replaceAll("[^a-zA-Z ]", "").toLowerCase() did, in one pass over a lookup table,
+     * and returns S itself when it is clean already.
+     */
+    public static String clean(String s) {
+        int n = s.length();
+        int i = 0;
+        while (i < n && cleaned(s.charAt(i)) == s.charAt(i)) {
+            i += 1;
+        }
+        if (i == n) {
+            return s;
+        }
+        char[] chars = new char[n];
+        s.getChars(0, i, chars, 0);
+        int length = i;
+        for (; i < n; i += 1) {
+            char c = cleaned(s.charAt(i));
+            if (c != 0) {
+                chars[length] = c;
+                length += 1;
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    /** Returns what C is cleaned into, or 0 if it is dropped. */
+    private static char cleaned(char c) {
+        return c < CLEAN.length ? CLEAN[c] : 0;
+    }
+
+    /**
+     * Adds the location with node id ID and name NAME, with weight 1. Names that clean to
+     * nothing are left out, as nothing could find them.
+     */
+    public void add(String name, long id) {
+        add(name, id, 1);
+    }
+
+    /**
+     * Adds the location with node id ID and name NAME, adding WEIGHT to the score of its
+     * cleaned name. Names that clean to nothing are left out, as nothing could find them.
+     */
+    public void add(String name, long id, double weight) {
+        Node node = root;
+        int length = 0;
+        for (int i = 0; i < name.length(); i += 1) {
+            char c = cleaned(name.charAt(i));
+            if (c != 0) {
+                node = node.childOrAdd(c);
+                length += 1;
+            }
+        }
+        if (node == root) {
+            return;
+        }
+        longest = Math.max(longest, length);
+        node.addId(id);
+        if (node.name == null || weight > node.nameWeight) {
+            node.name = name;
+            node.nameWeight = weight;
+        }
+        node.score += weight;
+        size += 1;
+        stale = true;
+    }
+
+    /** Returns how many locations were added. */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the ids of at most LIMIT locations whose cleaned names start with the cleaned
+     * PREFIX: those with the alphabetically first names, and of the locations with the same
+     * name, those added first. Cleans PREFIX as it goes, without allocating a copy.
+     */
+    public long[] idsWithPrefix(String prefix, int limit) {
+        Node node = find(prefix);
+        if (node == null || limit <= 0) {
+            return NO_IDS;
+        }
+
+        long[] ids = new long[Math.min(limit, size)];
+        int count = 0;
+        /* Depth first, children in order, so names come out alphabetically. The stack holds
+         * the nodes left to visit, the next one on top. */
+        Node[] stack = new Node[16];
+        int top = 0;
+        stack[top++] = node;
+        while (top > 0 && count < ids.length) {
+            Node n = stack[--top];
+            int take = Math.min(n.idCount, ids.length - count);
+            System.arraycopy(n.ids, 0, ids, count, take);
+            count += take;
+            if (top + n.children.length > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(2 * stack.length, top + n.children.length));
+            }
+            for (int i = n.children.length - 1; i >= 0; i -= 1) {
+                stack[top++] = n.children[i];
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Returns the names of at most as many locations as this index keeps completions for,
+     * whose cleaned names start with the cleaned PREFIX, best scoring first. Locations
+     * with the same cleaned name count once, under the name added with most weight.
+     */
+    public List<String> topCompletions(String prefix) {
+        if (stale) {
+            rank();
+        }
+        Node node = find(prefix);
+        Node[] best = node == null ? NO_COMPLETIONS : node.best;
+        String[] names = new String[best.length];
+        for (int i = 0; i < best.length; i += 1) {
+            names[i] = best[i].name;
+        }
+        return Arrays.asList(names);
+    }
+
+    /**
+     * Returns the names of at most as many locations as this index keeps completions for,
+     * whose cleaned names start with something at most MAX_DISTANCE edits (insertions,
+     * deletions or substitutions of one character) away from the cleaned PREFIX. Names
+     * needing fewer edits come first, and the best scoring first among names needing as
+     * many; with a MAX_DISTANCE of 0 this is topCompletions(PREFIX).
+     */
+    public List<String> fuzzyCompletions(String prefix, int maxDistance) {
+        if (stale) {
+            rank();
+        }
+        Node exact = find(prefix);
+        if (maxDistance <= 0 || exact != null && exact.best.length == completions) {
+            return topCompletions(prefix);
+        }
+
+        char[] query = clean(prefix).toCharArray();
+        /* The automaton's state after reading the characters down to a node is the row
+         * of edit distances from that node's prefix to each prefix of the query; one row
+         * per depth, reused by siblings. */
+        int[][] rows = new int[longest + 2][query.length + 1];
+        for (int j = 0; j <= query.length; j += 1) {
+            rows[0][j] = j;
+        }
+        List<List<Node>> accepted = new ArrayList<>();
+        for (int d = 0; d <= maxDistance; d += 1) {
+            accepted.add(new ArrayList<>());
+        }
+        accept(root, query, rows, 0, maxDistance + 1, accepted);
+
+        List<String> names = new ArrayList<>(completions);
+        Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int d = 0; d <= maxDistance && names.size() < completions; d += 1) {
+            List<Completion> candidates = new ArrayList<>();
+            for (Node node : accepted.get(d)) {
+                for (Node name : node.best) {
+                    if (seen.add(name)) {
+                        candidates.add(new Completion(name));
+                    }
+                }
+            }
+            Collections.sort(candidates);
+            for (int i = 0; i < candidates.size() && names.size() < completions; i += 1) {
+                names.add(candidates.get(i).node.name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Adds NODE, at DEPTH, to ACCEPTED[d] if the query is d < BOUND edits from its prefix,
+     * ROWS[DEPTH] being the automaton's state there, then does the same for the children
+     * that could do better. BOUND is one more than the most edits allowed, or the fewest
+     * edits an ancestor was accepted with: a node accepted with more would only add names
+     * already in.
+     */
+    private void accept(Node node, char[] query, int[][] rows, int depth, int bound,
+                        List<List<Node>> accepted) {
+        int[] row = rows[depth];
+        int distance = row[query.length];
+        if (distance < bound) {
+            accepted.get(distance).add(node);
+            bound = distance;
+        }
+        /* No entry of a row is ever smaller than the smallest of the row above it, so once
+         * that is at the bound, nothing further down is accepted. */
+        int least = distance;
+        for (int j = 0; j < query.length; j += 1) {
+            least = Math.min(least, row[j]);
+        }
+        if (least >= bound) {
+            return;
+        }
+        int[] next = rows[depth + 1];
+        for (int i = 0; i < node.children.length; i += 1) {
+            char c = node.labels[i];
+            next[0] = row[0] + 1;
+            for (int j = 1; j <= query.length; j += 1) {
+                int substitute = row[j - 1] + (query[j - 1] == c ? 0 : 1);
+                next[j] = Math.min(substitute, Math.min(row[j], next[j - 1]) + 1);
+            }
+            accept(node.children[i], query, rows, depth + 1, bound, accepted);
+        }
+    }
+
+    /**
+     * A name with its score as of when it was looked at, so that completions can be sorted
+     * while the recorder thread raises scores.
+     */
+    private static class Completion implements Comparable<Completion> {
+        private final Node node;
+        private final double score;
+
+        Completion(Node node) {
+            this.node = node;
+            this.score = node.score;
+        }
+
+        @Override
+        public int compareTo(Completion other) {
+            int c = Double.compare(other.score, score);
+            return c != 0 ? c : Integer.compare(node.order, other.node.order);
+        }
+    }
+
+    /** Returns the node at the end of the cleaned PREFIX, or null if there is none. */
+    private Node find(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i += 1) {
+            char c = cleaned(prefix.charAt(i));
+            if (c != 0) {
+                node = node.child(c);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Counts a search for NAME towards the score of its cleaned name, if it is one, in the
+     * background. Searches are dropped when the background thread cannot be reached.
+     */
+    public void recordQuery(String name) {
+        try {
+            RECORDER.execute(() -> promote(name));
+        } catch (RejectedExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Waits until every query recorded so far, in this index or any other, counts. */
+    public void awaitRecorded() {
+        try {
+            RECORDER.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Computes the best completions of every node, and the alphabetical order of names. */
+    private synchronized void rank() {
+        if (!stale) {
+            return;
+        }
+        rank(root, new int[1]);
+        stale = false;
+    }
+
+    /**
+     * Ranks the subtrie at NODE, numbering its names from NEXT[0] on in alphabetical order.
+     * Recursion goes as deep as the longest name.
+     */
+    private void rank(Node node, int[] next) {
+        if (node.idCount > 0) {
+            node.order = next[0];
+            next[0] += 1;
+        }
+        for (Node child : node.children) {
+            rank(child, next);
+        }
+        if (node.idCount == 0 && node.children.length == 1) {
+            /* One way down and nothing here: the same completions as the child, shared. */
+            node.best = node.children[0].best;
+            return;
+        }
+        int count = node.idCount > 0 ? 1 : 0;
+        for (Node child : node.children) {
+            count += child.best.length;
+        }
+        Node[] candidates = new Node[count];
+        count = 0;
+        if (node.idCount > 0) {
+            candidates[count] = node;
+            count += 1;
+        }
+        for (Node child : node.children) {
+            System.arraycopy(child.best, 0, candidates, count, child.best.length);
+            count += child.best.length;
+        }
+        Arrays.sort(candidates, BY_RANK);
+        node.best = candidates.length > completions
+                ? Arrays.copyOf(candidates, completions) : candidates;
+    }
+
+    /**
+     * Adds one to the score of the cleaned NAME, if it is a name, and moves it up the best
+     * completions along its path. Runs on the recorder thread.
+     */
+    private synchronized void promote(String name) {
+        rank();
+        Node[] path = new Node[name.length() + 1];
+        int length = 0;
+        Node node = root;
+        path[length] = root;
+        length += 1;
+        for (int i = 0; i < name.length() && node != null; i += 1) {
+            char c = cleaned(name.charAt(i));
+            if (c != 0) {
+                node = node.child(c);
+                path[length] = node;
+                length += 1;
+            }
+        }
+        if (node == null || node.idCount == 0) {
+            return;
+        }
+        node.score += 1;
+        /* Bottom up. A higher score only ever moves a name up, so once it stays out of a
+         * node's best, it stays out of every ancestor's, and their lists are done. A node
+         * that shared its child's list shares the child's new one. */
+        Node[] oldBelow = null;
+        Node[] newBelow = null;
+        for (int i = length - 1; i >= 0; i -= 1) {
+            Node n = path[i];
+            Node[] old = n.best;
+            Node[] updated = old == oldBelow ? newBelow : promoted(old, node);
+            if (updated == old) {
+                return;
+            }
+            n.best = updated;
+            oldBelow = old;
+            newBelow = updated;
+        }
+    }
+
+    /**
+     * Returns BEST with NAME, whose score just went up, moved or added to where it now
+     * ranks; or BEST itself if NAME still does not rank in it.
+     */
+    private Node[] promoted(Node[] best, Node name) {
+        int at = -1;
+        for (int i = 0; i < best.length; i += 1) {
+            if (best[i] == name) {
+                at = i;
+                break;
+            }
+        }
+        if (at < 0 && best.length == completions
+                && BY_RANK.compare(name, best[best.length - 1]) >= 0) {
+            return best;
+        }
+        int length = at < 0 && best.length < completions ? best.length + 1 : best.length;
+        Node[] updated = new Node[length];
+        int j = 0;
+        boolean placed = false;
+        for (Node n : best) {
+            if (n == name) {
+                continue;
+            }
+            if (!placed && BY_RANK.compare(name, n) < 0) {
+                updated[j] = name;
+                j += 1;
+                placed = true;
+            }
+            if (j < length) {
+                updated[j] = n;
+                j += 1;
+            }
+        }
+        if (!placed) {
+            updated[j] = name;
+        }
+        return updated;
+    }
+}
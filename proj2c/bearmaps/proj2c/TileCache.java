@@ -0,0 +1,175 @@
+package bearmaps.proj2c;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoded map tiles, kept in memory so that panning around the map does not decode the
+ * same PNGs from disk again and again. Tiles are keyed by (depth, x, y) and evicted least
+ * recently used first once their pixels take up more than a fixed number of bytes.
+ *
+ * Decoding happens outside the lock, so two threads missing on the same tile at once may
+ * both decode it; the second copy simply replaces the first. Tiles next to a viewport can
+ * be decoded ahead of time with prefetch(), on a single background thread. Only the last
+ * few viewports wait for that thread; older ones are dropped, since the user has already
+ * moved on from them.
+ *
+ * Cached images are shared between requests and must not be drawn on.
+ */
+public class TileCache {
+    private final String imgRoot;
+    private final long maxBytes;
+    private final LinkedHashMap<Long, BufferedImage> tiles;
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /** How many prefetches may wait behind the one being decoded. */
+    private static final int PREFETCH_QUEUE = 2;
+
+    private final ThreadPoolExecutor prefetcher = new ThreadPoolExecutor(1, 1,
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(PREFETCH_QUEUE), r -> {
+                Thread t = new Thread(r, "tile-prefetch");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    /** Makes a cache of the tiles in IMG_ROOT holding at most MAX_BYTES of pixels. */
+    public TileCache(String imgRoot, long maxBytes) {
+        this.imgRoot = imgRoot;
+        this.maxBytes = maxBytes;
+        this.tiles = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Returns the tile at DEPTH, X, Y, decoding it if need be, or null if it is missing. */
+    public BufferedImage get(int depth, int x, int y) {
+        long key = key(depth, x, y);
+        synchronized (this) {
+            BufferedImage img = tiles.get(key);
+            if (img != null) {
+                hits += 1;
+                return img;
+            }
+            misses += 1;
+        }
+        return load(key, depth, x, y);
+    }
+
+    /**
+     * Decodes, in the background, every tile at DEPTH within one tile of the tiles X0 .. X1,
+     * Y0 .. Y1 that is not cached yet and lies within 0 .. LIMIT - 1 both ways. If too
+     * many prefetches are already waiting, the oldest waiting one is dropped.
+     */
+    public void prefetch(int depth, int x0, int x1, int y0, int y1, int limit) {
+        prefetcher.execute(() -> {
+            for (int y = Math.max(0, y0 - 1); y <= Math.min(limit - 1, y1 + 1); y += 1) {
+                for (int x = Math.max(0, x0 - 1); x <= Math.min(limit - 1, x1 + 1); x += 1) {
+                    long key = key(depth, x, y);
+                    boolean cached;
+                    synchronized (this) {
+                        cached = tiles.containsKey(key);
+                    }
+                    if (!cached) {
+                        load(key, depth, x, y);
+                    }
+                }
+            }
+        });
+    }
+
+    /** Returns how many prefetches are waiting for the background thread. */
+    public int pendingPrefetches() {
+        return prefetcher.getQueue().size();
+    }
+
+    private BufferedImage load(long key, int depth, int x, int y) {
+        BufferedImage img = null;
+        try {
+            img = ImageIO.read(new File(imgRoot + fileName(depth, x, y)));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (img == null) {
+            return null;
+        }
+        long size = sizeOf(img);
+        synchronized (this) {
+            BufferedImage old = tiles.put(key, img);
+            if (old != null) {
+                bytes -= sizeOf(old);
+            }
+            bytes += size;
+            while (bytes > maxBytes && tiles.size() > 1) {
+                Map.Entry<Long, BufferedImage> eldest = tiles.entrySet().iterator().next();
+                bytes -= sizeOf(eldest.getValue());
+                tiles.remove(eldest.getKey());
+                evictions += 1;
+            }
+        }
+        return img;
+    }
+
+    /** Returns the name of the file holding the tile at DEPTH, X, Y. */
+    public static String fileName(int depth, int x, int y) {
+        return "d" + depth + "_x" + x + "_y" + y + ".png";
+    }
+
+    private static long key(int depth, int x, int y) {
+        return ((long) depth << 56) | ((long) x << 28) | y;
+    }
+
+    /** Returns how many bytes the pixels of IMG take up. */
+    private static long sizeOf(BufferedImage img) {
+        DataBuffer buffer = img.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /** Forgets every cached tile. The counters are kept. */
+    public synchronized void invalidate() {
+        tiles.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    /** Returns how many bytes the cached pixels take up. */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /** Returns the fraction of get() calls answered from memory, or 0 before the first. */
+    public synchronized double hitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("TileCache(%d tiles, %d/%d bytes, hit rate %.3f, %d evictions)",
+                tiles.size(), bytes, maxBytes, hitRate(), evictions);
+    }
+}
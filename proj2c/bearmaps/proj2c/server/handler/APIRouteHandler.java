@@ -1,12 +1,22 @@
 package bearmaps.proj2c.server.handler;
 
+import bearmaps.proj2c.utils.Constants;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import spark.Request;
 import spark.Response;
 import spark.Route;
+import spark.Session;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.HashMap;
-import java.util.Set;
+import java.util.Map;
 
 import static spark.Spark.halt;
 
@@ -15,6 +25,12 @@ import static spark.Spark.halt;
  * The process is defined as such that first the request parameters are read, then
  * request is process based on those parameters and finally the response is built.
  *
+ * Handlers made with streaming set write their JSON straight to the response's output
+ * stream through a JsonWriter, instead of building it into one String for Spark to copy
+ * out, so the memory a response takes does not grow with its size. What they write is
+ * the same JSON gson.toJson would have made of the result, with the same content type,
+ * which map.js depends on.
+ *
  * Created by rahul
  */
 public abstract class APIRouteHandler<Req, Res> implements Route {
@@ -22,17 +38,67 @@ public abstract class APIRouteHandler<Req, Res> implements Route {
     /** HTTP failed response. */
     private static final int HALT_RESPONSE = 403;
 
+    /** What Spark sends String responses as, unless told otherwise. */
+    private static final String DEFAULT_CONTENT_TYPE = "text/html; charset=utf-8";
+
     private Gson gson;
+    private final boolean streaming;
 
     public APIRouteHandler() {
+        this(false);
+    }
+
+    /**
+     * Makes a handler that writes its responses with writeJsonResponse if STREAMING, and
+     * returns them from buildJsonResponse otherwise.
+     */
+    protected APIRouteHandler(boolean streaming) {
         gson = new Gson();
+        this.streaming = streaming;
     }
 
     @Override
     public Object handle(Request request, Response response) throws Exception {
         Req requestParams = parseRequestParams(request);
         Res result = processRequest(requestParams, response);
-        return buildJsonResponse(result);
+        if (streaming) {
+            return streamJsonResponse(response, result);
+        }
+        return buildJsonResponse(request, result);
+    }
+
+    /**
+     * Returns the key the requester's route is kept under: the "route_token" parameter if
+     * the request has one, so that clients without cookies can keep a route too, and the
+     * id of the requester's session otherwise. Starts no session: a requester that has
+     * neither gets null, which has no route in Constants.ROUTES. Handlers that only read
+     * routes use this, so that crawlers and first page loads leave no session behind.
+     * @param request the request object received
+     * @return the owner of the requester's route in Constants.ROUTES, or null
+     */
+    protected static String routeOwner(Request request) {
+        return routeOwner(request, false);
+    }
+
+    /**
+     * Returns what routeOwner(REQUEST) does, but if CREATE and the requester has neither a
+     * token nor a session, starts a session, which expires once it has been idle for as
+     * long as Constants.ROUTE_OWNER_TTL_SECONDS, as the route kept under it does.
+     * Only handlers that store a route should create sessions.
+     */
+    protected static String routeOwner(Request request, boolean create) {
+        String token = request.queryParams("route_token");
+        if (token != null && !token.isEmpty()) {
+            return "token:" + token;
+        }
+        Session session = request.session(create);
+        if (session == null) {
+            return null;
+        }
+        if (session.isNew()) {
+            session.maxInactiveInterval((int) Constants.ROUTE_OWNER_TTL_SECONDS);
+        }
+        return "session:" + session.id();
     }
 
     /**
@@ -59,6 +125,122 @@ public abstract class APIRouteHandler<Req, Res> implements Route {
         return gson.toJson(result);
     }
 
+    /**
+     * Builds a JSON response to return from the result object, for handlers whose response
+     * depends on who asked. Defaults to buildJsonResponse(result).
+     * @param request   the request object received
+     * @param result    the result computed after processing request
+     * @return  the response body
+     */
+    protected Object buildJsonResponse(Request request, Res result) {
+        return buildJsonResponse(result);
+    }
+
+    /**
+     * Writes the JSON response for RESULT to the response's output stream, in the bytes
+     * buildJsonResponse(result) would have returned, and returns the empty body left for
+     * Spark to send.
+     * @param response  response object
+     * @param result    the result computed after processing request
+     * @return  the empty string
+     */
+    protected Object streamJsonResponse(Response response, Res result) throws IOException {
+        JsonWriter writer = jsonWriter(response);
+        writeJsonResponse(result, writer);
+        writer.flush();
+        return "";
+    }
+
+    /**
+     * Returns a JsonWriter, set up the way the one behind gson.toJson is, that writes to the
+     * response's output stream in UTF-8, as Spark would have written a String. Sets the
+     * content type to the one Spark would have, unless it is set already. The writer must
+     * be flushed, not closed: that would close the response before Spark is done with it.
+     * @param response  response object
+     * @return  the writer
+     */
+    protected JsonWriter jsonWriter(Response response) throws IOException {
+        return gson.newJsonWriter(responseWriter(response));
+    }
+
+    /**
+     * Writes MEMBERS to the response's output stream as a JSON object, as gson.toJson would,
+     * followed by one more member, NAME, whose value is BYTES in Base64, and returns the
+     * empty body left for Spark to send. The Base64 is encoded as it is written, so it is
+     * never held in memory whole; gson has no way to write a string value in pieces.
+     * @param response  response object
+     * @param members   the members before NAME, none of them named NAME; those that are
+     *                  null are left out, as gson.toJson leaves them out
+     * @param name      the name of the Base64 member
+     * @param bytes     what to encode as its value
+     * @return  the empty string
+     */
+    protected Object streamJsonResponse(Response response, Map<String, ?> members, String name,
+                                        byte[] bytes) throws IOException {
+        Writer out = responseWriter(response);
+        out.write('{');
+        for (Map.Entry<String, ?> member : members.entrySet()) {
+            if (member.getValue() == null) {
+                continue;
+            }
+            gson.toJson(member.getKey(), out);
+            out.write(':');
+            gson.toJson(member.getValue(), out);
+            out.write(',');
+        }
+        gson.toJson(name, out);
+        out.write(":\"");
+        /* Base64 is all ASCII, so each byte the encoder gives is one char. Closing the
+         * encoder writes its last bytes, but must not close the response. */
+        OutputStream b64 = Base64.getEncoder().wrap(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(new String(b, off, len, StandardCharsets.ISO_8859_1));
+            }
+        });
+        b64.write(bytes);
+        b64.close();
+        out.write("\"}");
+        out.flush();
+        return "";
+    }
+
+    /**
+     * Returns a buffered Writer to the response's output stream in UTF-8, which must be
+     * flushed, not closed, and sets the content type Spark would have, unless it is set.
+     */
+    private static Writer responseWriter(Response response) throws IOException {
+        if (response.raw().getContentType() == null) {
+            response.type(DEFAULT_CONTENT_TYPE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(response.raw().getOutputStream(),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes RESULT to WRITER as JSON, the way buildJsonResponse(result) would. Handlers
+     * that stream may write their results piece by piece instead.
+     * @param result    the result computed after processing request
+     * @param writer    where to write it, made by streamJsonResponse
+     */
+    protected void writeJsonResponse(Res result, JsonWriter writer) throws IOException {
+        writeJson(result, writer);
+    }
+
+    /** Writes VALUE to WRITER the way gson.toJson(value) would, as part of a larger whole. */
+    protected void writeJson(Object value, JsonWriter writer) throws IOException {
+        if (value == null) {
+            writer.nullValue();
+        } else {
+            gson.toJson(value, value.getClass(), writer);
+        }
+    }
+
     /**
      * Validate & return a parameter map of the required request parameters.
      * Requires that all input parameters are doubles.
@@ -68,19 +250,17 @@ public abstract class APIRouteHandler<Req, Res> implements Route {
      */
     protected  HashMap<String, Double> getRequestParams(
             spark.Request req, String[] requiredParams) {
-        Set<String> reqParams = req.queryParams();
         HashMap<String, Double> params = new HashMap<>();
         for (String param : requiredParams) {
-            if (!reqParams.contains(param)) {
-                halt(HALT_RESPONSE, "Request failed - parameters missing.");
-            } else {
-                try {
-                    params.put(param, Double.parseDouble(req.queryParams(param)));
-                } catch (NumberFormatException e) {
-                    e.printStackTrace();
-                    halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
-                }
+            String value = req.queryParams(param);
+            if (value == null) {
+                halt(HALT_RESPONSE, QueryParser.MISSING);
+            }
+            double number = QueryParser.parseDouble(value);
+            if (Double.isNaN(number)) {
+                halt(HALT_RESPONSE, QueryParser.NOT_NUMBERS);
             }
+            params.put(param, number);
         }
         return params;
     }
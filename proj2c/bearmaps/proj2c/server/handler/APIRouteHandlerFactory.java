@@ -18,10 +18,15 @@ public class APIRouteHandlerFactory {
 
     static {
         handlerMap = new HashMap<>();
-        handlerMap.put("raster", new RasterAPIHandler());
+        RasterAPIHandler rasterer = new RasterAPIHandler();
+        handlerMap.put("raster", rasterer);
+        handlerMap.put("raster_image", new RasterImageAPIHandler(rasterer));
+        handlerMap.put("route_geometry", new RouteGeometryAPIHandler(rasterer));
         handlerMap.put("route", new RoutingAPIHandler());
         handlerMap.put("clear_route", new ClearRouteAPIHandler());
         handlerMap.put("search", new SearchAPIHandler());
+        handlerMap.put("distance_matrix", new DistanceMatrixAPIHandler());
+        handlerMap.put("isochrone", new IsochroneAPIHandler());
         handlerMap.put("", new RedirectAPIHandler());
     }
 
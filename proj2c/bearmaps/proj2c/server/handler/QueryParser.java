@@ -0,0 +1,102 @@
+package bearmaps.proj2c.server.handler;
+
+import spark.Request;
+
+/**
+ * Reads a fixed list of numeric query parameters into a double[], without exceptions: a
+ * parameter that is missing or is not a number is reported by what read() returns, which
+ * is cheap enough for requests that come in on every mouse drag. Parsers hold nothing but
+ * the names, so one per endpoint may be shared by all requests.
+ */
+public class QueryParser {
+    /** Why read() failed. Also what getRequestParams halts with. */
+    public static final String MISSING = "Request failed - parameters missing.";
+    public static final String NOT_NUMBERS = "Incorrect parameters - provide numbers.";
+
+    private final String[] names;
+
+    /** Makes a parser for the parameters NAMES, which read() puts in this order. */
+    public QueryParser(String... names) {
+        this.names = names.clone();
+    }
+
+    /** Returns how many parameters this parser reads. */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Reads the parameters of REQUEST into VALUES, in the order they were named in. Returns
+     * null if they all are numbers, MISSING if one is missing, and NOT_NUMBERS if one is
+     * something else; VALUES is then only partly filled.
+     */
+    public String read(Request request, double[] values) {
+        for (int i = 0; i < names.length; i += 1) {
+            String value = request.queryParams(names[i]);
+            if (value == null) {
+                return MISSING;
+            }
+            values[i] = parseDouble(value);
+            if (Double.isNaN(values[i])) {
+                return NOT_NUMBERS;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns S as a double, or NaN if S is null or not a number written in decimal, with
+     * an optional sign, fraction and exponent, like "-122.25" or "1e-3"; spaces around it
+     * are fine. Checks S first, so that Double.parseDouble never gets to throw.
+     */
+    public static double parseDouble(String s) {
+        if (s == null) {
+            return Double.NaN;
+        }
+        int i = 0;
+        int end = s.length();
+        while (i < end && s.charAt(i) <= ' ') {
+            i += 1;
+        }
+        while (end > i && s.charAt(end - 1) <= ' ') {
+            end -= 1;
+        }
+        if (i < end && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+            i += 1;
+        }
+        int digits = 0;
+        while (i < end && isDigit(s.charAt(i))) {
+            i += 1;
+            digits += 1;
+        }
+        if (i < end && s.charAt(i) == '.') {
+            i += 1;
+            while (i < end && isDigit(s.charAt(i))) {
+                i += 1;
+                digits += 1;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i += 1;
+            if (i < end && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+                i += 1;
+            }
+            int exponentDigits = 0;
+            while (i < end && isDigit(s.charAt(i))) {
+                i += 1;
+                exponentDigits += 1;
+            }
+            if (exponentDigits == 0) {
+                return Double.NaN;
+            }
+        }
+        return i == end ? Double.parseDouble(s) : Double.NaN;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
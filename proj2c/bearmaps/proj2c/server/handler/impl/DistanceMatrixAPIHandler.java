@@ -0,0 +1,88 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.hw4.DistanceMatrix;
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.utils.Tuple;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.MAX_MATRIX_POINTS;
+import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for the road distances between every pair of a set of start and end
+ * locations, for dispatch and batch planning. Much cheaper than one route request per pair;
+ * see bearmaps.hw4.DistanceMatrix.
+ */
+public class DistanceMatrixAPIHandler
+        extends APIRouteHandler<Tuple<double[], double[]>, Map<String, Object>> {
+
+    /** HTTP failed response. */
+    private static final int HALT_RESPONSE = 403;
+
+    /**
+     * Each request has two parameters, "sources" and "targets", each a list of locations
+     * separated by semicolons, each location a longitude and a latitude separated by a
+     * comma: sources=-122.26,37.87;-122.25,37.86&amp;targets=-122.27,37.87
+     */
+    @Override
+    protected Tuple<double[], double[]> parseRequestParams(Request request) {
+        return new Tuple<>(parseLocations(request.queryParams("sources")),
+                parseLocations(request.queryParams("targets")));
+    }
+
+    private static double[] parseLocations(String param) {
+        if (param == null || param.isEmpty()) {
+            halt(HALT_RESPONSE, "Request failed - sources and targets are required.");
+        }
+        String[] locations = param.split(";");
+        if (locations.length > MAX_MATRIX_POINTS) {
+            halt(HALT_RESPONSE, "Request failed - at most " + MAX_MATRIX_POINTS
+                    + " sources and targets.");
+        }
+        double[] lonLats = new double[2 * locations.length];
+        for (int i = 0; i < locations.length; i += 1) {
+            int comma = locations[i].indexOf(',');
+            try {
+                lonLats[2 * i] = Double.parseDouble(locations[i].substring(0, comma));
+                lonLats[2 * i + 1] = Double.parseDouble(locations[i].substring(comma + 1));
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide lon,lat pairs.");
+            }
+        }
+        return lonLats;
+    }
+
+    /**
+     * Computes the matrix.
+     * @param requestParams The start and end locations as longitude, latitude pairs.
+     * @param response Not used.
+     * @return A map of results for the front end: <br>
+     * "rows" : Number, how many start locations there are. <br>
+     * "cols" : Number, how many end locations there are. <br>
+     * "distances" : Array of rows * cols numbers, row by row: entry cols * i + j is the
+     *               distance from start i to end j, or -1 if there is no path.
+     */
+    @Override
+    protected Map<String, Object> processRequest(Tuple<double[], double[]> requestParams,
+                                                 Response response) {
+        DistanceMatrix matrix = Router.distanceMatrix(SEMANTIC_STREET_GRAPH,
+                requestParams.getFirst(), requestParams.getSecond());
+        double[] distances = matrix.distances().clone();
+        for (int i = 0; i < distances.length; i += 1) {
+            if (distances[i] == Double.POSITIVE_INFINITY) {
+                distances[i] = -1;
+            }
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("rows", matrix.rows());
+        result.put("cols", matrix.cols());
+        result.put("distances", distances);
+        return result;
+    }
+}
@@ -0,0 +1,137 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.hw4.Isochrone;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.utils.Tuple;
+import spark.Request;
+import spark.Response;
+
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.ISOCHRONE_MASK_SIZE;
+import static bearmaps.proj2c.utils.Constants.MAX_ISOCHRONE_BUDGET;
+import static bearmaps.proj2c.utils.Constants.MAX_ISOCHRONE_BUDGETS;
+import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for everything reachable within some distances of a location. Each
+ * request is one bounded Dijkstra search on the handling thread, with no shared state, so
+ * concurrent requests do not wait on each other.
+ */
+public class IsochroneAPIHandler
+        extends APIRouteHandler<Tuple<double[], double[]>, Map<String, Object>> {
+
+    /** HTTP failed response. */
+    private static final int HALT_RESPONSE = 403;
+
+    /**
+     * Each request has the parameters lon and lat, the location, and budgets, one or more
+     * distances in miles separated by commas: lon=-122.26&amp;lat=37.87&amp;budgets=0.5,1,2
+     */
+    @Override
+    protected Tuple<double[], double[]> parseRequestParams(Request request) {
+        String lon = request.queryParams("lon"), lat = request.queryParams("lat");
+        String budgetList = request.queryParams("budgets");
+        if (lon == null || lat == null || budgetList == null) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        String[] parts = budgetList.split(",");
+        double[] location = new double[2];
+        double[] budgets = new double[parts.length];
+        try {
+            location[0] = Double.parseDouble(lon);
+            location[1] = Double.parseDouble(lat);
+            for (int i = 0; i < parts.length; i += 1) {
+                budgets[i] = Double.parseDouble(parts[i]);
+            }
+        } catch (NumberFormatException e) {
+            halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+        }
+        if (budgets.length > MAX_ISOCHRONE_BUDGETS) {
+            halt(HALT_RESPONSE, "Request failed - at most " + MAX_ISOCHRONE_BUDGETS
+                    + " budgets.");
+        }
+        for (double budget : budgets) {
+            if (!(budget >= 0 && budget <= MAX_ISOCHRONE_BUDGET)) {
+                halt(HALT_RESPONSE, "Request failed - budgets must be between 0 and "
+                        + MAX_ISOCHRONE_BUDGET + " miles.");
+            }
+        }
+        return new Tuple<>(location, budgets);
+    }
+
+    /**
+     * Finds the isochrones.
+     * @param requestParams The location as a longitude, latitude pair, and the budgets.
+     * @param response Not used.
+     * @return A map of results for the front end: <br>
+     * "budgets"   : Array of the budgets, smallest first. <br>
+     * "node_ids"  : Array of the ids of every node within the largest budget, closest
+     *               first. <br>
+     * "counts"    : Array with, for each budget, how many of node_ids are within it. <br>
+     * "mask_ul_lon", "mask_ul_lat", "mask_lr_lon", "mask_lr_lat" : Numbers, the box the
+     *               mask covers. <br>
+     * "mask_width", "mask_height" : Numbers, the size of the mask in cells. <br>
+     * "mask"      : String, Base64 of one byte per cell, row by row from the upper left:
+     *               the index of the smallest budget that reaches the cell, or -1.
+     */
+    @Override
+    protected Map<String, Object> processRequest(Tuple<double[], double[]> requestParams,
+                                                 Response response) {
+        double[] location = requestParams.getFirst();
+        Isochrone isochrone = Router.isochrone(SEMANTIC_STREET_GRAPH, location[0], location[1],
+                requestParams.getSecond());
+        CompactStreetMapGraph g = SEMANTIC_STREET_GRAPH.compact();
+        int[] vertices = isochrone.vertices();
+
+        long[] ids = new long[vertices.length];
+        double ullon = Double.POSITIVE_INFINITY, lrlon = Double.NEGATIVE_INFINITY;
+        double lrlat = Double.POSITIVE_INFINITY, ullat = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < vertices.length; i += 1) {
+            int v = vertices[i];
+            ids[i] = g.id(v);
+            ullon = Math.min(ullon, g.lon(v));
+            lrlon = Math.max(lrlon, g.lon(v));
+            lrlat = Math.min(lrlat, g.lat(v));
+            ullat = Math.max(ullat, g.lat(v));
+        }
+        int[] counts = new int[isochrone.numBudgets()];
+        double[] budgets = new double[isochrone.numBudgets()];
+        for (int b = 0; b < counts.length; b += 1) {
+            counts[b] = isochrone.count(b);
+            budgets[b] = isochrone.budget(b);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("budgets", budgets);
+        result.put("node_ids", ids);
+        result.put("counts", counts);
+        if (vertices.length > 0) {
+            /* Pad by a hair so the extreme vertices fall inside the last cells. */
+            double pad = 1e-9 + 1e-6 * Math.max(lrlon - ullon, ullat - lrlat);
+            ullon -= pad;
+            lrlon += pad;
+            lrlat -= pad;
+            ullat += pad;
+            double aspect = (lrlon - ullon) / (ullat - lrlat);
+            int width = aspect >= 1 ? ISOCHRONE_MASK_SIZE
+                    : Math.max(1, (int) Math.round(ISOCHRONE_MASK_SIZE * aspect));
+            int height = aspect >= 1 ? Math.max(1, (int) Math.round(ISOCHRONE_MASK_SIZE / aspect))
+                    : ISOCHRONE_MASK_SIZE;
+            byte[] mask = isochrone.mask(g, ullon, ullat, lrlon, lrlat, width, height);
+            result.put("mask_ul_lon", ullon);
+            result.put("mask_ul_lat", ullat);
+            result.put("mask_lr_lon", lrlon);
+            result.put("mask_lr_lat", lrlat);
+            result.put("mask_width", width);
+            result.put("mask_height", height);
+            result.put("mask", Base64.getEncoder().encodeToString(mask));
+        }
+        return result;
+    }
+}
@@ -1,20 +1,24 @@
 package bearmaps.proj2c.server.handler.impl;
 
-import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.PngEncoder;
+import bearmaps.proj2c.RasterCache;
+import bearmaps.proj2c.RasterGeometry;
+import bearmaps.proj2c.RouteGeometry;
+import bearmaps.proj2c.TileCache;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
 import bearmaps.proj2c.utils.Constants;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutput;
-import java.io.File;
-import java.io.IOException;
+import java.awt.geom.Path2D;
+import java.awt.image.DataBufferInt;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.*;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static bearmaps.proj2c.utils.Constants.*;
 
@@ -23,18 +27,30 @@ import static bearmaps.proj2c.utils.Constants.*;
  * will be rastered into one large image to be displayed to the user.
  * @author rahul, Josh Hug, _________
  */
-public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+public class RasterAPIHandler extends APIRouteHandler<RasterRequest, Map<String, Object>> {
 
-    /**
-     * Each raster request to the server will have the following parameters
-     * as keys in the params map accessible by,
-     * i.e., params.get("ullat") inside RasterAPIHandler.processRequest(). <br>
-     * ullat : upper left corner latitude, <br> ullon : upper left corner longitude, <br>
-     * lrlat : lower right corner latitude,<br> lrlon : lower right corner longitude <br>
-     * w : user viewport window width in pixels,<br> h : user viewport height in pixels.
-     **/
-    private static final String[] REQUIRED_RASTER_REQUEST_PARAMS = {"ullat", "ullon", "lrlat",
-            "lrlon", "w", "h"};
+    /** Decoded tiles, shared by all requests. */
+    private final TileCache tiles = new TileCache(Constants.IMG_ROOT, Constants.TILE_CACHE_BYTES);
+
+    private final PngEncoder png = new PngEncoder(Constants.RASTER_PNG_COMPRESSION);
+
+    /** Encoded rasters, shared by all requests. */
+    private final RasterCache rasters = new RasterCache(Constants.RASTER_CACHE_BYTES);
+
+    /** The geometry of recently drawn routes, by route version. */
+    private final Map<Long, RouteGeometry> geometries =
+            new LinkedHashMap<Long, RouteGeometry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, RouteGeometry> eldest) {
+                    return size() > Constants.ROUTE_GEOMETRY_CACHE_SIZE;
+                }
+            };
+
+    /** Tells this run of the server from earlier ones in ETags, since tiles may change. */
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    /** HTTP failed response. */
+    private static final int HALT_RESPONSE = 403;
 
     /**
      * The result of rastering must be a map containing all of the
@@ -44,9 +60,13 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
             "raster_ul_lat", "raster_lr_lon", "raster_lr_lat", "depth", "query_success"};
 
 
+    /**
+     * Returns the raster REQUEST asks for, with an error if it is malformed. Does not halt:
+     * handle() turns the error into a failed response without an exception.
+     */
     @Override
-    protected Map<String, Double> parseRequestParams(Request request) {
-        return getRequestParams(request, REQUIRED_RASTER_REQUEST_PARAMS);
+    protected RasterRequest parseRequestParams(Request request) {
+        return RasterRequest.parse(request);
     }
 
     /**
@@ -64,8 +84,8 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
      *         <li>The tiles must be arranged in-order to reconstruct the full image.</li>
      *     </ul>
      *
-     * @param requestParams Map of the HTTP GET request's query parameters - the query box and
-     *               the user viewport width and height.
+     * @param requestParams The HTTP GET request's query parameters - the query box and the user
+     *               viewport width and height.
      *
      * @param response : Not used by this function. You may ignore.
      * @return A map of results for the front end as specified: <br>
@@ -81,50 +101,36 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
      *                    forget to set this to true on success! <br>
      */
     @Override
-    public Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
-        System.out.println("yo, wanna know the parameters given by the web browser? They are:");
-        System.out.println(requestParams);
+    public Map<String, Object> processRequest(RasterRequest requestParams, Response response) {
         Map<String, Object> results = new HashMap<>();
         // variables declaration
-        double lrlon = requestParams.get("lrlon"), ullon = requestParams.get("ullon"), width = requestParams.get("w");
-        double lrlat = requestParams.get("lrlat"), ullat = requestParams.get("ullat");
-        double queryBoxLonDPP = (lrlon - ullon) / width;
-
-        /* Fail Corner Case I: Partial Coverage */
-        // TODO
+        double lrlon = requestParams.lrlon, ullon = requestParams.ullon, width = requestParams.width;
+        double lrlat = requestParams.lrlat, ullat = requestParams.ullat;
 
-        /* Fail Corner Case II: No Coverage */
-        if (outsideOfRoot(ullon, ullat, lrlon, lrlat) || queryBoxMakesNoSense(ullon, ullat, lrlon, lrlat)) {
+        /* Fail Corner Case: No Coverage. A box partly outside the root gets the part inside. */
+        if (requestParams.error != null || !(width > 0)
+                || !RasterGeometry.intersectsRoot(ullon, ullat, lrlon, lrlat)) {
             return queryFail();
         }
 
-        int depth = chooseAppropriateDepth(queryBoxLonDPP);
-
-        List<Integer> xIndices = xIndices(depth, ullon, lrlon);
-        List<Integer> yIndices = yIndices(depth, ullat, lrlat);
-        int xGrids = xIndices.size(), yGrids = yIndices.size();
-
-        String[][] render_grid = new String[yGrids][xGrids];
-
-        Map<String, Double> rasterInfos = rasterCoordinates(depth, xIndices.get(0), xIndices.get(xIndices.size() - 1), yIndices.get(0), yIndices.get(yIndices.size() - 1));
-        double raster_ul_lon = rasterInfos.get("raster_ullon"),
-                raster_ul_lat = rasterInfos.get("raster_ullat"),
-                raster_lr_lon = rasterInfos.get("raster_lrlon"),
-                raster_lr_lat = rasterInfos.get("raster_lrlat");
-
-        boolean query_success = depth > 0;
-
-        int i = 0;
-        for (Integer x : xIndices) {
-            int j = 0;
-            for (Integer y : yIndices) {
-                String imgName = indexToImgName(depth, x, y);
-                render_grid[j][i] = imgName;
-                j += 1;
+        double queryBoxLonDPP = (lrlon - ullon) / width;
+        int depth = RasterGeometry.depthFor(queryBoxLonDPP, Constants.MAX_DEPTH);
+        int x0 = RasterGeometry.tileX(depth, ullon), x1 = RasterGeometry.tileX(depth, lrlon);
+        int y0 = RasterGeometry.tileY(depth, ullat), y1 = RasterGeometry.tileY(depth, lrlat);
+
+        String[][] render_grid = new String[y1 - y0 + 1][x1 - x0 + 1];
+        for (int y = y0; y <= y1; y += 1) {
+            for (int x = x0; x <= x1; x += 1) {
+                render_grid[y - y0][x - x0] = indexToImgName(depth, x, y);
             }
-            i += 1;
         }
 
+        double raster_ul_lon = RasterGeometry.ulLon(depth, x0),
+                raster_ul_lat = RasterGeometry.ulLat(depth, y0),
+                raster_lr_lon = RasterGeometry.ulLon(depth, x1 + 1),
+                raster_lr_lat = RasterGeometry.ulLat(depth, y1 + 1);
+        boolean query_success = true;
+
         results.put("render_grid", render_grid);
         results.put("raster_ul_lon", raster_ul_lon);
         results.put("raster_ul_lat", raster_ul_lat);
@@ -139,17 +145,130 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         return results;
     }
 
+    /**
+     * Does what processRequest(RasterRequest.of(REQUEST_PARAMS), RESPONSE) does, for callers
+     * with the query parameters in a map, keyed by their names in RasterRequest.PARAMS.
+     */
+    public Map<String, Object> processRequest(Map<String, Double> requestParams,
+                                              Response response) {
+        return processRequest(RasterRequest.of(requestParams), response);
+    }
+
+    /**
+     * Streams the response: the raster's fields as JSON, then the image as a PNG encoded in
+     * Base64 on the fly, so that the Base64 text is never held in memory whole. The
+     * requester's own route, if any, is drawn over the tiles.
+     *
+     * With "image=separate" among the parameters, the image is left out, and "image_url" is
+     * where to get it from as a plain PNG, see RasterImageAPIHandler.
+     *
+     * Malformed parameters get a 403 with the reason, as halt would give, without throwing.
+     */
     @Override
-    protected Object buildJsonResponse(Map<String, Object> result) {
-        boolean rasterSuccess = validateRasteredImgParams(result);
-
-        if (rasterSuccess) {
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            writeImagesToOutputStream(result, os);
-            String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
-            result.put("b64_encoded_image_data", encodedImage);
+    public Object handle(Request request, Response response) throws Exception {
+        RasterRequest requestParams = parseRequestParams(request);
+        if (requestParams.error != null) {
+            response.status(HALT_RESPONSE);
+            return requestParams.error;
+        }
+        Map<String, Object> result = processRequest(requestParams, response);
+        if (!validateRasteredImgParams(result)) {
+            return streamJsonResponse(response, result);
+        }
+        putRasterSize(result);
+        String owner = routeOwner(request);
+        if ("separate".equals(request.queryParams("image"))) {
+            result.put("image_url", imageUrl(requestParams, request.queryParams("route_token"),
+                    ROUTES.version(owner)));
+            return streamJsonResponse(response, result);
+        }
+        byte[] image = image(result, owner, ROUTES.version(owner));
+        return streamJsonResponse(response, result, "b64_encoded_image_data", image);
+    }
+
+    /**
+     * Returns the path, relative to the server root, of the PNG RasterImageAPIHandler draws
+     * for REQUEST_PARAMS, with ROUTE_TOKEN if it is not null. The ROUTE_VERSION is only there
+     * so that browsers see a new URL, and load it, whenever the route changes.
+     */
+    private static String imageUrl(RasterRequest requestParams, String routeToken,
+                                   long routeVersion) throws UnsupportedEncodingException {
+        StringBuilder url = new StringBuilder("raster_image");
+        char separator = '?';
+        for (int i = 0; i < RasterRequest.PARAMS.length; i += 1) {
+            url.append(separator).append(RasterRequest.PARAMS[i]).append('=')
+                    .append(requestParams.get(i));
+            separator = '&';
+        }
+        if (routeToken != null) {
+            url.append("&route_token=").append(URLEncoder.encode(routeToken, "UTF-8"));
         }
-        return super.buildJsonResponse(result);
+        return url.append("&v=").append(routeVersion).toString();
+    }
+
+    /**
+     * Returns the image of the raster RESULT as a PNG, with OWNER's route drawn over it, whose
+     * version is ROUTE_VERSION. The image comes from the raster cache if it can; otherwise
+     * it is drawn, encoded and cached. The array must not be modified.
+     */
+    byte[] image(Map<String, Object> result, String owner, long routeVersion) {
+        String[][] renderGrid = (String[][]) result.get("render_grid");
+        int depth = (int) result.get("depth");
+        int x0 = firstTileX(result), y0 = firstTileY(result);
+        int cols = renderGrid[0].length, rows = renderGrid.length;
+        byte[] image = rasters.get(depth, x0, y0, cols, rows, routeVersion);
+        if (image == null) {
+            image = png.encode(drawRaster(result, routeGeometry(owner, routeVersion)));
+            rasters.put(depth, x0, y0, cols, rows, routeVersion, image);
+        }
+        return image;
+    }
+
+    /**
+     * Returns the geometry of OWNER's route, whose version is ROUTE_VERSION, or null if OWNER
+     * has no route. Geometries are looked up once per route version and kept for a while,
+     * so the nodes of a route are not looked up for every raster it is drawn on.
+     */
+    RouteGeometry routeGeometry(String owner, long routeVersion) {
+        if (routeVersion == 0) {
+            return null;
+        }
+        synchronized (geometries) {
+            RouteGeometry geometry = geometries.get(routeVersion);
+            if (geometry != null) {
+                return geometry;
+            }
+        }
+        List<Long> route = ROUTES.get(owner);
+        if (route.isEmpty()) {
+            return null;
+        }
+        RouteGeometry geometry = new RouteGeometry(route, SEMANTIC_STREET_GRAPH);
+        synchronized (geometries) {
+            geometries.put(routeVersion, geometry);
+        }
+        return geometry;
+    }
+
+    /** Adds the size in pixels of the raster RESULT to it. */
+    private static void putRasterSize(Map<String, Object> result) {
+        String[][] renderGrid = (String[][]) result.get("render_grid");
+        result.put("raster_width", renderGrid[0].length * Constants.TILE_SIZE);
+        result.put("raster_height", renderGrid.length * Constants.TILE_SIZE);
+    }
+
+    /**
+     * Returns the ETag of the image of the raster RESULT with the route whose version is
+     * ROUTE_VERSION. It names everything the image is drawn from: the tiles, the route and
+     * the settings of this run of the server.
+     */
+    String etag(Map<String, Object> result, long routeVersion) {
+        String[][] renderGrid = (String[][]) result.get("render_grid");
+        int depth = (int) result.get("depth");
+        return "\"" + EPOCH + "-" + png.level() + "-" + depth
+                + "-" + firstTileX(result) + "-" + firstTileY(result)
+                + "-" + renderGrid[0].length + "x" + renderGrid.length
+                + "-" + routeVersion + "\"";
     }
 
     private Map<String, Object> queryFail() {
@@ -165,195 +284,113 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
     }
 
     /**
-     * Validates that Rasterer has returned a result that can be rendered.
+     * Validates that Rasterer has returned a result that can be rendered. Prints nothing:
+     * this runs on every raster request, and panning off the map fails it on every drag.
      * @param rip : Parameters provided by the rasterer
+     * @return whether RIP has every field of a raster and does not report a failed query
      */
-    private boolean validateRasteredImgParams(Map<String, Object> rip) {
+    boolean validateRasteredImgParams(Map<String, Object> rip) {
         for (String p : REQUIRED_RASTER_RESULT_PARAMS) {
             if (!rip.containsKey(p)) {
-                System.out.println("Your rastering result is missing the " + p + " field.");
-                return false;
-            }
-        }
-        if (rip.containsKey("query_success")) {
-            boolean success = (boolean) rip.get("query_success");
-            if (!success) {
-                System.out.println("query_success was reported as a failure");
                 return false;
             }
         }
-        return true;
+        return !Boolean.FALSE.equals(rip.get("query_success"));
     }
 
     /**
-     * Writes the images corresponding to rasteredImgParams to the output stream.
+     * Draws the tiles of rasteredImageParams, and ROUTE over them, into one image.
      * In Spring 2016, students had to do this on their own, but in 2017,
      * we made this into provided code since it was just a bit too low level.
      */
-    private  void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
-                                                  ByteArrayOutputStream os) {
+    private BufferedImage drawRaster(Map<String, Object> rasteredImageParams,
+                                     RouteGeometry route) {
         String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
         int numVertTiles = renderGrid.length;
         int numHorizTiles = renderGrid[0].length;
-
-        BufferedImage img = new BufferedImage(numHorizTiles * Constants.TILE_SIZE,
-                numVertTiles * Constants.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
-        Graphics graphic = img.getGraphics();
-        int x = 0, y = 0;
-
-        for (int r = 0; r < numVertTiles; r += 1) {
-            for (int c = 0; c < numHorizTiles; c += 1) {
-                graphic.drawImage(getImage(Constants.IMG_ROOT + renderGrid[r][c]), x, y, null);
-                x += Constants.TILE_SIZE;
-                if (x >= img.getWidth()) {
-                    x = 0;
-                    y += Constants.TILE_SIZE;
-                }
+        int depth = (int) rasteredImageParams.get("depth");
+        int x0 = firstTileX(rasteredImageParams);
+        int y0 = firstTileY(rasteredImageParams);
+
+        BufferedImage img = drawTiles(depth, x0, y0, numHorizTiles, numVertTiles);
+
+        /* If there is a route, draw it: just the nodes that matter at this depth, and just
+         * the stretches near the raster. */
+        if (route != null) {
+            Path2D path = route.path(depth,
+                    (double) rasteredImageParams.get("raster_ul_lon"),
+                    (double) rasteredImageParams.get("raster_ul_lat"),
+                    (double) rasteredImageParams.get("raster_lr_lon"),
+                    (double) rasteredImageParams.get("raster_lr_lat"),
+                    img.getWidth(), img.getHeight(), Constants.ROUTE_STROKE_WIDTH_PX);
+            if (path != null) {
+                Graphics2D g2d = img.createGraphics();
+                g2d.setColor(Constants.ROUTE_STROKE_COLOR);
+                g2d.setStroke(new BasicStroke(Constants.ROUTE_STROKE_WIDTH_PX,
+                        BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                g2d.draw(path);
+                g2d.dispose();
             }
         }
 
-        /* If there is a route, draw it. */
-        double ullon = (double) rasteredImageParams.get("raster_ul_lon"); //tiles.get(0).ulp;
-        double ullat = (double) rasteredImageParams.get("raster_ul_lat"); //tiles.get(0).ulp;
-        double lrlon = (double) rasteredImageParams.get("raster_lr_lon"); //tiles.get(0).ulp;
-        double lrlat = (double) rasteredImageParams.get("raster_lr_lat"); //tiles.get(0).ulp;
-
-        final double wdpp = (lrlon - ullon) / img.getWidth();
-        final double hdpp = (ullat - lrlat) / img.getHeight();
-        AugmentedStreetMapGraph graph = SEMANTIC_STREET_GRAPH;
-        List<Long> route = ROUTE_LIST;
-
-        if (route != null && !route.isEmpty()) {
-            Graphics2D g2d = (Graphics2D) graphic;
-            g2d.setColor(Constants.ROUTE_STROKE_COLOR);
-            g2d.setStroke(new BasicStroke(Constants.ROUTE_STROKE_WIDTH_PX,
-                    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            route.stream().reduce((v, w) -> {
-                g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
-                        (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
-                return w;
-            });
-        }
-
-        rasteredImageParams.put("raster_width", img.getWidth());
-        rasteredImageParams.put("raster_height", img.getHeight());
-
-        try {
-            ImageIO.write(img, "png", os);
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (Constants.TILE_PREFETCH) {
+            tiles.prefetch(depth, x0, x0 + numHorizTiles - 1, y0, y0 + numVertTiles - 1,
+                    RasterGeometry.tilesPerSide(depth));
         }
-
+        return img;
     }
 
-    private BufferedImage getImage(String imgPath) {
-        BufferedImage tileImg = null;
-        if (tileImg == null) {
-            try {
-                File in = new File(imgPath);
-                tileImg = ImageIO.read(in);
-            } catch (IOException | NullPointerException e) {
-                e.printStackTrace();
-            }
-        }
-        return tileImg;
-    }
-
-    /********************************************************************
-     * My helpers
-     ********************************************************************/
-
-    private static int chooseAppropriateDepth(double stdLonDPP) {
-        int d = 0;
-        double computedLonDPP = (ROOT_LRLON - ROOT_ULLON) / TILE_SIZE ;
-        for ( ; d < 8; d += 1) {
-            if (Double.compare(computedLonDPP, stdLonDPP) < 0) {
-                return d;
+    /**
+     * Returns the COLS x ROWS tiles at DEPTH whose upper left one is (X0, Y0), side by side in
+     * one image. The tiles are decoded, or fetched from the cache, and copied in parallel;
+     * each task writes only its own tile's block of the image's pixel array, so the tasks
+     * need no locking. Missing tiles are left black.
+     */
+    private BufferedImage drawTiles(int depth, int x0, int y0, int cols, int rows) {
+        BufferedImage img = new BufferedImage(cols * Constants.TILE_SIZE,
+                rows * Constants.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        int width = img.getWidth();
+        IntStream.range(0, rows * cols).parallel().forEach(t -> {
+            int r = t / cols, c = t % cols;
+            BufferedImage tile = tiles.get(depth, x0 + c, y0 + r);
+            if (tile != null) {
+                tile.getRGB(0, 0, Math.min(tile.getWidth(), Constants.TILE_SIZE),
+                        Math.min(tile.getHeight(), Constants.TILE_SIZE), pixels,
+                        r * Constants.TILE_SIZE * width + c * Constants.TILE_SIZE, width);
             }
-            computedLonDPP = computedLonDPP / 2;
-        }
-        return -1;
+        });
+        return img;
     }
 
-    private static String indexToImgName(int depth, int x, int y) {
-        return "d" + String.valueOf(depth) + "_x" + String.valueOf(x) + "_y" + String.valueOf(y) + ".png";
+    /** Returns the x index of the leftmost tiles of the raster RESULT. */
+    private static int firstTileX(Map<String, Object> result) {
+        return (int) Math.round(((double) result.get("raster_ul_lon") - ROOT_ULLON)
+                / RasterGeometry.tileLonWidth((int) result.get("depth")));
     }
 
-    private static ArrayList<Integer> xIndices(int depth, double ullon, double lrlon) {
-        ArrayList<Integer> res = new ArrayList<>();
-        double deltaX = (ROOT_LRLON - ROOT_ULLON) / (depth * depth);
-        double currentBox_ul_lon = ROOT_ULLON, currentBox_lr_lon = currentBox_ul_lon + deltaX;
-        boolean adding = false;
-        int x = 0;
-        while (x < depth * depth) {
-            if (Double.compare(currentBox_ul_lon, ullon) <= 0 && Double.compare(currentBox_lr_lon, ullon) > 0) {
-                adding = true;
-            }
-            if (Double.compare(currentBox_ul_lon, lrlon) > 0) {
-                break;
-            }
-            if (adding) {
-                res.add(x);
-            }
-            x += 1;
-            currentBox_lr_lon += deltaX;
-            currentBox_ul_lon += deltaX;
-        }
-        return res;
+    /** Returns the y index of the topmost tiles of the raster RESULT. */
+    private static int firstTileY(Map<String, Object> result) {
+        return (int) Math.round((ROOT_ULLAT - (double) result.get("raster_ul_lat"))
+                / RasterGeometry.tileLatHeight((int) result.get("depth")));
     }
 
-    private static ArrayList<Integer> yIndices(int depth, double ullat, double lrlat) {
-        ArrayList<Integer> res = new ArrayList<>();
-        double deltaY = (ROOT_ULLAT - ROOT_LRLAT) / (depth * depth);
-        double currentBox_ul_lat = ROOT_ULLAT, currentBox_lr_lat = currentBox_ul_lat - deltaY;
-        boolean adding = false;
-        int y = 0;
-        while (y < depth * depth) {
-            if (Double.compare(currentBox_ul_lat, ullat) >= 0 && Double.compare(currentBox_lr_lat, ullat) < 0) {
-                adding = true;
-            }
-            if (Double.compare(currentBox_ul_lat, lrlat) < 0) {
-                adding = false;
-            }
-            if (adding) {
-                res.add(y);
-            }
-            y += 1;
-            currentBox_lr_lat -= deltaY;
-            currentBox_ul_lat -= deltaY;
-        }
-        return res;
+    /** Returns the cache the tiles are drawn from. */
+    public TileCache tileCache() {
+        return tiles;
     }
 
-    private static Map<String, Double> rasterCoordinates(int depth, int xStart, int xEnd, int yStart, int yEnd) {
-        Map<String, Double> res = new HashMap<>();
-        double deltaX = (ROOT_LRLON - ROOT_ULLON) / (depth * depth );
-        double deltaY = (ROOT_ULLAT - ROOT_LRLAT) / (depth * depth );
-        double raster_ullon = ROOT_ULLON + xStart * deltaX,
-                raster_lrlon = ROOT_ULLON + (xEnd + 1) * deltaX,
-                raster_ullat = ROOT_ULLAT - yStart * deltaY,
-                raster_lrlat = ROOT_ULLAT - (yEnd + 1) * deltaY;
-        res.put("raster_ullon", raster_ullon);
-        res.put("raster_ullat", raster_ullat);
-        res.put("raster_lrlon", raster_lrlon);
-        res.put("raster_lrlat", raster_lrlat);
-        return res;
+    /** Returns the cache of encoded rasters. */
+    public RasterCache rasterCache() {
+        return rasters;
     }
 
-    private static boolean outsideOfRoot(double ullon, double ullat, double lrlon, double lrlat) {
-        if (ullon >= ROOT_ULLON && ullat <= ROOT_ULLAT && lrlon <= ROOT_LRLON && lrlat >= ROOT_LRLAT) {
-            return false;
-        }
-        return true;
-    }
+    /********************************************************************
+     * My helpers
+     ********************************************************************/
 
-    private static boolean queryBoxMakesNoSense(double ullon, double ullat, double lrlon, double lrlat) {
-        if (ullon < lrlon && ullat > lrlat) {
-            return false;
-        }
-        return true;
+    private static String indexToImgName(int depth, int x, int y) {
+        return TileCache.fileName(depth, x, y);
     }
 
 }
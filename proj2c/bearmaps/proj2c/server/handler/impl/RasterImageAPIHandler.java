@@ -0,0 +1,100 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.io.OutputStream;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.ROUTES;
+
+/**
+ * Handles requests for just the image of a raster, as a plain PNG. Takes the same
+ * parameters as RasterAPIHandler, whose JSON with "image=separate" links here: the
+ * metadata and the picture travel apart, and the picture without the third Base64 adds.
+ *
+ * Every image carries an ETag naming its tiles and the version of the requester's route.
+ * Browsers are told to check back each time, and a request whose If-None-Match still names
+ * the current ETag gets a 304 with no body, without drawing or encoding anything.
+ *
+ * Requests that are malformed or raster nothing get a 403 with the reason, without the
+ * exception halt would throw: panning off the map does that on every drag.
+ */
+public class RasterImageAPIHandler extends APIRouteHandler<RasterRequest,
+        Map<String, Object>> {
+
+    /** HTTP failed response. */
+    private static final int HALT_RESPONSE = 403;
+    private static final int NOT_MODIFIED = 304;
+
+    private final RasterAPIHandler rasterer;
+
+    /** Makes a handler drawing images with RASTERER, and so with its tile cache. */
+    public RasterImageAPIHandler(RasterAPIHandler rasterer) {
+        this.rasterer = rasterer;
+    }
+
+    @Override
+    protected RasterRequest parseRequestParams(Request request) {
+        return rasterer.parseRequestParams(request);
+    }
+
+    @Override
+    protected Map<String, Object> processRequest(RasterRequest requestParams,
+                                                 Response response) {
+        return rasterer.processRequest(requestParams, response);
+    }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        RasterRequest requestParams = parseRequestParams(request);
+        if (requestParams.error != null) {
+            response.status(HALT_RESPONSE);
+            return requestParams.error;
+        }
+        Map<String, Object> result = processRequest(requestParams, response);
+        if (!rasterer.validateRasteredImgParams(result)) {
+            response.status(HALT_RESPONSE);
+            return "Request failed - nothing to raster there.";
+        }
+        String owner = routeOwner(request);
+        /* The version first: the route read after it is at least as new, never older. */
+        long routeVersion = ROUTES.version(owner);
+        String etag = rasterer.etag(result, routeVersion);
+        response.header("ETag", etag);
+        response.header("Cache-Control", "no-cache");
+        if (matches(request.headers("If-None-Match"), etag)) {
+            response.status(NOT_MODIFIED);
+            return "";
+        }
+
+        byte[] image = rasterer.image(result, owner, routeVersion);
+        response.type("image/png");
+        response.header("Content-Length", Integer.toString(image.length));
+        OutputStream out = response.raw().getOutputStream();
+        out.write(image);
+        out.flush();
+        return "";
+    }
+
+    /**
+     * Returns whether the If-None-Match header IF_NONE_MATCH, which may be null or list
+     * several tags, weak or not, names ETAG.
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,77 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.server.handler.QueryParser;
+import spark.Request;
+
+import java.util.Map;
+
+/**
+ * The parameters of a raster request: the query box, from (ullon, ullat) to (lrlon, lrlat),
+ * and the size of the user's viewport in pixels. A request that could not be parsed has
+ * an error saying why, and its numbers mean nothing.
+ */
+public final class RasterRequest {
+    /**
+     * Each raster request to the server has these parameters:<br>
+     * ullat : upper left corner latitude, <br> ullon : upper left corner longitude, <br>
+     * lrlat : lower right corner latitude,<br> lrlon : lower right corner longitude <br>
+     * w : user viewport window width in pixels,<br> h : user viewport height in pixels.
+     */
+    static final String[] PARAMS = {"ullat", "ullon", "lrlat", "lrlon", "w", "h"};
+    private static final QueryParser PARSER = new QueryParser(PARAMS);
+
+    public final double ullat, ullon, lrlat, lrlon, width, height;
+    /** Why the request could not be parsed, or null if it could. */
+    public final String error;
+
+    public RasterRequest(double ullat, double ullon, double lrlat, double lrlon, double width,
+                         double height) {
+        this(ullat, ullon, lrlat, lrlon, width, height, null);
+    }
+
+    private RasterRequest(double ullat, double ullon, double lrlat, double lrlon,
+                          double width, double height, String error) {
+        this.ullat = ullat;
+        this.ullon = ullon;
+        this.lrlat = lrlat;
+        this.lrlon = lrlon;
+        this.width = width;
+        this.height = height;
+        this.error = error;
+    }
+
+    /** Returns the raster REQUEST asks for. Never throws, whatever the parameters. */
+    public static RasterRequest parse(Request request) {
+        double[] v = new double[PARAMS.length];
+        String error = PARSER.read(request, v);
+        return new RasterRequest(v[0], v[1], v[2], v[3], v[4], v[5], error);
+    }
+
+    /** Returns the raster PARAMS, which has a value for every one of PARAMS, asks for. */
+    public static RasterRequest of(Map<String, Double> params) {
+        return new RasterRequest(params.get("ullat"), params.get("ullon"), params.get("lrlat"),
+                params.get("lrlon"), params.get("w"), params.get("h"));
+    }
+
+    /** Returns the value of the parameter PARAMS[I]. */
+    double get(int i) {
+        switch (i) {
+            case 0: return ullat;
+            case 1: return ullon;
+            case 2: return lrlat;
+            case 3: return lrlon;
+            case 4: return width;
+            case 5: return height;
+            default: throw new IndexOutOfBoundsException("No parameter " + i);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (error != null) {
+            return "{error=" + error + "}";
+        }
+        return "{ullat=" + ullat + ", ullon=" + ullon + ", lrlat=" + lrlat + ", lrlon=" + lrlon
+                + ", w=" + width + ", h=" + height + "}";
+    }
+}
@@ -0,0 +1,118 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.RasterGeometry;
+import bearmaps.proj2c.RouteGeometry;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.server.handler.QueryParser;
+import bearmaps.proj2c.utils.Constants;
+import bearmaps.proj2c.utils.Tuple;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.ROUTES;
+
+/**
+ * Handles requests for the requester's route as vector data, so that the browser can draw
+ * it over the map itself instead of having it burned into every raster. The route comes
+ * simplified for the depth asked for, in one of two formats:
+ * <ul>
+ *     <li>format=geojson (the default): a GeoJSON Feature with a LineString geometry, whose
+ *     properties are the depth and the route version.</li>
+ *     <li>format=polyline: "polyline", the points in the Encoded Polyline Algorithm Format,
+ *     with "depth" and "route_version".</li>
+ * </ul>
+ * The route version changes whenever the route does, so clients can skip redrawing.
+ */
+public class RouteGeometryAPIHandler
+        extends APIRouteHandler<Tuple<String, Tuple<Integer, String>>, Map<String, Object>> {
+
+    /** HTTP failed response. */
+    private static final int HALT_RESPONSE = 403;
+
+    private final RasterAPIHandler rasterer;
+
+    /** Makes a handler sharing RASTERER's route geometries. */
+    public RouteGeometryAPIHandler(RasterAPIHandler rasterer) {
+        this.rasterer = rasterer;
+    }
+
+    /**
+     * Answers 403 with the reason if the depth or the format asked for is not one there is,
+     * without the exception halt would throw, and handles the request otherwise.
+     */
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        if (depth(request) < 0) {
+            response.status(HALT_RESPONSE);
+            return "Request failed - depth must be a whole number from 0 to "
+                    + RasterGeometry.MAX_SUPPORTED_DEPTH + ".";
+        }
+        if (format(request) == null) {
+            response.status(HALT_RESPONSE);
+            return "Request failed - format must be geojson or polyline.";
+        }
+        return super.handle(request, response);
+    }
+
+    /** Returns the owner of the requester's route, the depth and the format. */
+    @Override
+    protected Tuple<String, Tuple<Integer, String>> parseRequestParams(Request request) {
+        return new Tuple<>(routeOwner(request), new Tuple<>(depth(request), format(request)));
+    }
+
+    /**
+     * Returns the depth REQUEST asks for, Constants.MAX_DEPTH if it does not say, or -1 if
+     * it is not a whole number from 0 to RasterGeometry.MAX_SUPPORTED_DEPTH.
+     */
+    private static int depth(Request request) {
+        String depthParam = request.queryParams("depth");
+        if (depthParam == null) {
+            return Constants.MAX_DEPTH;
+        }
+        double depth = QueryParser.parseDouble(depthParam);
+        if (!(depth >= 0 && depth <= RasterGeometry.MAX_SUPPORTED_DEPTH)
+                || depth != Math.floor(depth)) {
+            return -1;
+        }
+        return (int) depth;
+    }
+
+    /** Returns the format REQUEST asks for, "geojson" if it does not say, or null if unknown. */
+    private static String format(Request request) {
+        String format = request.queryParams("format");
+        if (format == null) {
+            return "geojson";
+        }
+        return format.equals("geojson") || format.equals("polyline") ? format : null;
+    }
+
+    @Override
+    protected Map<String, Object> processRequest(
+            Tuple<String, Tuple<Integer, String>> requestParams, Response response) {
+        String owner = requestParams.getFirst();
+        int depth = requestParams.getSecond().getFirst();
+        long routeVersion = ROUTES.version(owner);
+        RouteGeometry route = rasterer.routeGeometry(owner, routeVersion);
+
+        Map<String, Object> results = new HashMap<>();
+        if (requestParams.getSecond().getSecond().equals("polyline")) {
+            results.put("polyline", route == null ? "" : route.polyline(depth));
+            results.put("depth", depth);
+            results.put("route_version", routeVersion);
+            return results;
+        }
+        Map<String, Object> geometry = new HashMap<>();
+        geometry.put("type", "LineString");
+        geometry.put("coordinates", route == null ? new double[0][] : route.coordinates(depth));
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("depth", depth);
+        properties.put("route_version", routeVersion);
+        results.put("type", "Feature");
+        results.put("geometry", geometry);
+        results.put("properties", properties);
+        return results;
+    }
+}
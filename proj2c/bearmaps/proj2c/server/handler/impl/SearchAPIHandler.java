@@ -16,6 +16,10 @@ import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
  */
 public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>, Object> {
 
+    /** Makes a handler that streams its results out. */
+    public SearchAPIHandler() {
+        super(true);
+    }
 
     @Override
     protected Tuple<Set<String>, String> parseRequestParams(Request request) {
@@ -30,6 +34,7 @@ public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>
         /* Search for actual location data. */
         if (reqParams.contains("full")) {
             result = getLocations(term);
+            SEMANTIC_STREET_GRAPH.recordSearch(term);
         } else {
             /* Search for prefix matching strings. */
             result = getLocationsByPrefix(term);
@@ -38,11 +43,11 @@ public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>
     }
 
     /**
-     * In linear time, collect all the names of OSM locations that prefix-match the query string.
+     * Collect the names of the OSM locations that best prefix-match the query string.
      * @param prefix Prefix string to be searched for. Could be any case, with our without
      *               punctuation.
-     * @return A <code>List</code> of the full names of locations whose cleaned name matches the
-     * cleaned <code>prefix</code>.
+     * @return A <code>List</code> of the full names of the top-ranked locations whose cleaned
+     * name matches the cleaned <code>prefix</code>, best first.
      */
     public List<String> getLocationsByPrefix(String prefix) {
 
@@ -1,10 +1,9 @@
 package bearmaps.proj2c.utils;
 
 import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.RouteStore;
 
 import java.awt.*;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * A class holding all the constant values used throughout the project
@@ -27,9 +26,81 @@ public class Constants {
      **/
     public static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
 
+    /**
+     * Binary snapshot of the graph in OSM_DB_PATH, compiled once with
+     * bearmaps.hw4.streetmap.GraphSnapshot. The server loads it instead of the XML if it
+     * exists, which is much faster.
+     */
+    public static final String OSM_SNAPSHOT_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.bin";
+
+    /**
+     * Contraction hierarchy for the graph in OSM_DB_PATH, built once with
+     * bearmaps.hw4.ContractionHierarchy. Loaded on startup if it exists; otherwise the
+     * hierarchy is built the first time a route asks for it.
+     */
+    public static final String CH_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.ch";
+
+    /**
+     * ALT landmark tables for the graph in OSM_DB_PATH, computed once with
+     * bearmaps.hw4.Landmarks. Loaded on startup if they exist; otherwise they are computed
+     * the first time a route asks for them.
+     */
+    public static final String LANDMARKS_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.alt";
+
+    /** How many routes each graph's RouteCache holds. */
+    public static final int ROUTE_CACHE_SIZE = 4096;
+
+    /** Seconds a cached route stays valid; 0 or less keeps routes until evicted. */
+    public static final double ROUTE_CACHE_TTL_SECONDS = 3600;
+
+    /** Most start or end locations one distance_matrix request may list. */
+    public static final int MAX_MATRIX_POINTS = 500;
+
+    /** Largest distance, in miles, an isochrone request may ask about. */
+    public static final double MAX_ISOCHRONE_BUDGET = 20;
+
+    /** Most distances one isochrone request may list. */
+    public static final int MAX_ISOCHRONE_BUDGETS = 8;
+
+    /** Cells along the longer side of the mask an isochrone request returns. */
+    public static final int ISOCHRONE_MASK_SIZE = 256;
+
+    /** Most locations one search returns. */
+    public static final int MAX_SEARCH_RESULTS = 100;
+
+    /** How many names autocomplete suggests for a prefix. */
+    public static final int AUTOCOMPLETE_RESULTS = 10;
+
+    /** Most typos autocomplete forgives in a prefix; 0 turns fuzzy matching off. */
+    public static final int MAX_SEARCH_EDITS = 2;
+
     /** The tile images are in the IMG_ROOT folder. */
     public static final String IMG_ROOT = "../library-sp19/data/proj2c_imgs/";
 
+    /**
+     * The deepest tiles in IMG_ROOT. Rasters never go deeper, however closely they zoom in;
+     * at most RasterGeometry.MAX_SUPPORTED_DEPTH.
+     */
+    public static final int MAX_DEPTH = 7;
+
+    /** Most bytes of decoded tile pixels RasterAPIHandler keeps in memory. */
+    public static final long TILE_CACHE_BYTES = 256L * 1024 * 1024;
+
+    /** Whether RasterAPIHandler decodes the tiles around each raster ahead of time. */
+    public static final boolean TILE_PREFETCH = true;
+
+    /**
+     * How hard RasterAPIHandler compresses rasters, from 0 (not at all, fastest, but several
+     * times larger) to 9 (smallest, slowest). 1 costs about half of what ImageIO does.
+     */
+    public static final int RASTER_PNG_COMPRESSION = 1;
+
+    /** Most bytes of encoded rasters RasterAPIHandler keeps in memory. */
+    public static final long RASTER_CACHE_BYTES = 64L * 1024 * 1024;
+
+    /** How many routes RasterAPIHandler keeps the simplified geometry of. */
+    public static final int ROUTE_GEOMETRY_CACHE_SIZE = 1024;
+
     /** Route stroke information: Cyan with half transparency. */
     public static final Color ROUTE_STROKE_COLOR = new Color(108, 181, 230, 200);
 
@@ -41,9 +112,16 @@ public class Constants {
 
     public static AugmentedStreetMapGraph SEMANTIC_STREET_GRAPH;
 
+    /** Most clients whose routes are remembered at once. */
+    public static final int MAX_ROUTE_OWNERS = 10000;
+
+    /** Seconds a client's route is remembered after its last request. */
+    public static final double ROUTE_OWNER_TTL_SECONDS = 3600;
+
     /**
-     * This is used to maintain a single List of route so that the same instance(object) is accessed
-     * from everywhere in the code. Enum is a cleaner way to achieve such a singleton pattern.
+     * The route of every client, so that concurrent users each see their own. See
+     * bearmaps.proj2c.server.handler.APIRouteHandler.routeOwner for who counts as a client.
      */
-    public static final List<Long> ROUTE_LIST = new LinkedList<>();
+    public static final RouteStore ROUTES = new RouteStore(MAX_ROUTE_OWNERS,
+            ROUTE_OWNER_TTL_SECONDS);
 }
@@ -0,0 +1,75 @@
+package bearmaps.test;
+
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks that StreetMapGraph answers by OSM id exactly what its CSR graph holds. */
+public class TestCompactStreetMapGraph {
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+    private static StreetMapGraph graph;
+    private static CompactStreetMapGraph compact;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new StreetMapGraph(OSM_DB_PATH_TINY);
+        compact = graph.compact();
+        initialized = true;
+    }
+
+    @Test
+    public void testNodes() {
+        for (int v = 0; v < compact.numVertices(); v += 1) {
+            long id = compact.id(v);
+            assertEquals(v, compact.index(id));
+            assertEquals(graph.lon(id), compact.lon(v), 0.0);
+            assertEquals(graph.lat(id), compact.lat(v), 0.0);
+            assertEquals(graph.name(id), compact.name(v));
+        }
+        assertEquals(-1, compact.index(-61L));
+    }
+
+    @Test
+    public void testEdges() {
+        int numEdges = 0;
+        for (int v = 0; v < compact.numVertices(); v += 1) {
+            Map<Long, Double> expected = new HashMap<>();
+            List<WeightedEdge<Long>> edges = graph.neighbors(compact.id(v));
+            for (WeightedEdge<Long> e : edges) {
+                expected.put(e.to(), e.weight());
+            }
+            int from = compact.edgesFrom(v), to = compact.edgesFrom(v + 1);
+            assertEquals(edges.size(), to - from);
+            for (int e = from; e < to; e += 1) {
+                long target = compact.id(compact.edgeTo(e));
+                assertTrue(expected.containsKey(target));
+                assertEquals(expected.get(target), compact.edgeWeight(e), 0.0);
+            }
+            numEdges += edges.size();
+        }
+        assertEquals(numEdges, compact.numEdges());
+    }
+
+    @Test
+    public void testEstimatedDistance() {
+        for (int s = 0; s < compact.numVertices(); s += 1) {
+            for (int t = 0; t < compact.numVertices(); t += 1) {
+                assertEquals(graph.estimatedDistanceToGoal(compact.id(s), compact.id(t)),
+                        compact.estimatedDistanceToGoal(s, t), 1e-12);
+            }
+        }
+    }
+}
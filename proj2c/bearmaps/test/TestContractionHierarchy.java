@@ -0,0 +1,167 @@
+package bearmaps.test;
+
+import bearmaps.hw4.ContractionHierarchy;
+import bearmaps.hw4.ContractionHierarchySolver;
+import bearmaps.hw4.IndexedAStarGraph;
+import bearmaps.hw4.IndexedAStarSolver;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks ContractionHierarchySolver against IndexedAStarSolver, on every pair of tiny graph
+ * nodes and on random pairs of Berkeley nodes.
+ */
+public class TestContractionHierarchy {
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_RANDOM_PAIRS = 200;
+    private static CompactStreetMapGraph tiny;
+    private static CompactStreetMapGraph berkeley;
+    private static ContractionHierarchy tinyCH;
+    private static ContractionHierarchy berkeleyCH;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        tiny = new StreetMapGraph(OSM_DB_PATH_TINY).compact();
+        tinyCH = new ContractionHierarchy(tiny);
+        berkeley = new StreetMapGraph(OSM_DB_PATH).compact();
+        berkeleyCH = new ContractionHierarchy(berkeley);
+        initialized = true;
+    }
+
+    @Test
+    public void testTiny() {
+        for (int s = 0; s < tiny.numVertices(); s += 1) {
+            for (int t = 0; t < tiny.numVertices(); t += 1) {
+                check(tiny, tinyCH, s, t);
+            }
+        }
+    }
+
+    @Test
+    public void testBerkeley() {
+        Random r = new Random(61);
+        for (int i = 0; i < NUM_RANDOM_PAIRS; i += 1) {
+            check(berkeley, berkeleyCH, r.nextInt(berkeley.numVertices()),
+                    r.nextInt(berkeley.numVertices()));
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        File file = File.createTempFile("berkeley", ".ch");
+        file.deleteOnExit();
+        berkeleyCH.write(file.getPath());
+        ContractionHierarchy loaded = ContractionHierarchy.read(file.getPath());
+        assertEquals(berkeleyCH.numVertices(), loaded.numVertices());
+        assertEquals(berkeleyCH.numEdges(), loaded.numEdges());
+        assertEquals(berkeley.fingerprint(), loaded.graphFingerprint());
+        Random r = new Random(61);
+        for (int i = 0; i < NUM_RANDOM_PAIRS; i += 1) {
+            check(berkeley, loaded, r.nextInt(berkeley.numVertices()),
+                    r.nextInt(berkeley.numVertices()));
+        }
+    }
+
+    @Test
+    public void testRejectsOtherGraph() {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        IndexedAStarGraph longer = new Stretched(graph.compact());
+        assertEquals(graph.compact().numVertices(), longer.numVertices());
+        assertNotEquals(graph.compact().fingerprint(), longer.fingerprint());
+
+        boolean thrown = false;
+        try {
+            graph.setContractionHierarchy(new ContractionHierarchy(longer));
+        } catch (IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+
+        ContractionHierarchy own = new ContractionHierarchy(graph.compact());
+        graph.setContractionHierarchy(own);
+        assertSame(own, graph.contractionHierarchy());
+    }
+
+    /** G with every edge a little longer: as many vertices, but another graph. */
+    private static class Stretched implements IndexedAStarGraph {
+        private final IndexedAStarGraph g;
+
+        Stretched(IndexedAStarGraph g) {
+            this.g = g;
+        }
+
+        @Override
+        public int numVertices() {
+            return g.numVertices();
+        }
+
+        @Override
+        public int edgesFrom(int v) {
+            return g.edgesFrom(v);
+        }
+
+        @Override
+        public int edgeTo(int e) {
+            return g.edgeTo(e);
+        }
+
+        @Override
+        public double edgeWeight(int e) {
+            return g.edgeWeight(e) * 1.5;
+        }
+
+        @Override
+        public double estimatedDistanceToGoal(int s, int goal) {
+            return g.estimatedDistanceToGoal(s, goal);
+        }
+    }
+
+    private void check(CompactStreetMapGraph g, ContractionHierarchy ch, int s, int t) {
+        ShortestPathsSolver<Integer> expected = new IndexedAStarSolver(g, s, t, 10);
+        ShortestPathsSolver<Integer> actual = new ContractionHierarchySolver(ch, s, t, 10);
+        assertEquals(expected.outcome(), actual.outcome());
+        if (actual.outcome() != SolverOutcome.SOLVED) {
+            return;
+        }
+        assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+        List<Integer> path = actual.solution();
+        assertEquals(s, (int) path.get(0));
+        assertEquals(t, (int) path.get(path.size() - 1));
+        double weight = 0;
+        for (int i = 0; i < path.size() - 1; i += 1) {
+            weight += edgeWeight(g, path.get(i), path.get(i + 1));
+        }
+        assertEquals(actual.solutionWeight(), weight, 1e-9);
+    }
+
+    /** Returns the weight of the lightest edge from V to W, failing if there is none. */
+    private static double edgeWeight(CompactStreetMapGraph g, int v, int w) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int e = g.edgesFrom(v); e < g.edgesFrom(v + 1); e += 1) {
+            if (g.edgeTo(e) == w) {
+                best = Math.min(best, g.edgeWeight(e));
+            }
+        }
+        assertEquals(false, Double.isInfinite(best));
+        return best;
+    }
+}
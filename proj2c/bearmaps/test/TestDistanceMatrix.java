@@ -0,0 +1,100 @@
+package bearmaps.test;
+
+import bearmaps.hw4.ContractionHierarchy;
+import bearmaps.hw4.DistanceMatrix;
+import bearmaps.hw4.IndexedAStarSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks DistanceMatrix against one IndexedAStarSolver search per pair, on all tiny graph
+ * nodes and on random sets of Berkeley nodes.
+ */
+public class TestDistanceMatrix {
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static CompactStreetMapGraph tiny;
+    private static CompactStreetMapGraph berkeley;
+    private static ContractionHierarchy tinyCH;
+    private static ContractionHierarchy berkeleyCH;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        tiny = new StreetMapGraph(OSM_DB_PATH_TINY).compact();
+        tinyCH = new ContractionHierarchy(tiny);
+        berkeley = new StreetMapGraph(OSM_DB_PATH).compact();
+        berkeleyCH = new ContractionHierarchy(berkeley);
+        initialized = true;
+    }
+
+    @Test
+    public void testTinyAllPairs() {
+        int[] all = new int[tiny.numVertices()];
+        for (int v = 0; v < all.length; v += 1) {
+            all[v] = v;
+        }
+        check(tiny, new DistanceMatrix(tinyCH, all, all), all, all);
+    }
+
+    @Test
+    public void testBerkeley() {
+        Random r = new Random(61);
+        int[] sources = new int[30];
+        int[] targets = new int[40];
+        for (int i = 0; i < sources.length; i += 1) {
+            sources[i] = r.nextInt(berkeley.numVertices());
+        }
+        for (int j = 0; j < targets.length; j += 1) {
+            targets[j] = r.nextInt(berkeley.numVertices());
+        }
+        check(berkeley, new DistanceMatrix(berkeleyCH, sources, targets), sources, targets);
+    }
+
+    @Test
+    public void testEmpty() {
+        DistanceMatrix matrix = new DistanceMatrix(tinyCH, new int[0], new int[]{0, 1});
+        assertEquals(0, matrix.rows());
+        assertEquals(2, matrix.cols());
+        assertEquals(0, matrix.distances().length);
+    }
+
+    @Test
+    public void testRouterSnapsLocations() {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        DistanceMatrix matrix = Router.distanceMatrix(graph, new double[]{0.2, 38.2},
+                new double[]{0.6, 38.6, 0.2, 38.2});
+        double expected = graph.estimatedDistanceToGoal(22L, 46L)
+                + graph.estimatedDistanceToGoal(46L, 66L);
+        assertEquals(expected, matrix.get(0, 0), 1e-9);
+        assertEquals(0.0, matrix.get(0, 1), 0.0);
+    }
+
+    private void check(CompactStreetMapGraph g, DistanceMatrix matrix, int[] sources,
+                       int[] targets) {
+        assertEquals(sources.length, matrix.rows());
+        assertEquals(targets.length, matrix.cols());
+        for (int i = 0; i < sources.length; i += 1) {
+            for (int j = 0; j < targets.length; j += 1) {
+                IndexedAStarSolver solver = new IndexedAStarSolver(g, sources[i], targets[j], 10);
+                if (solver.outcome() == SolverOutcome.SOLVED) {
+                    assertEquals(solver.solutionWeight(), matrix.get(i, j), 1e-9);
+                } else {
+                    assertEquals(Double.POSITIVE_INFINITY, matrix.get(i, j), 0.0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package bearmaps.test;
+
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.GraphSnapshot;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Round-trips the tiny graph through a binary snapshot. */
+public class TestGraphSnapshot {
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        StreetMapGraph fromXML = new StreetMapGraph(OSM_DB_PATH_TINY);
+        CompactStreetMapGraph compact = fromXML.compact();
+        File snapshot = File.createTempFile("tiny", GraphSnapshot.SUFFIX);
+        snapshot.deleteOnExit();
+        GraphSnapshot.write(compact, snapshot.getPath());
+
+        StreetMapGraph fromSnapshot = new StreetMapGraph(snapshot.getPath());
+        assertTrue(fromSnapshot.equals(fromXML));
+        assertTrue(fromXML.equals(fromSnapshot));
+
+        for (int v = 0; v < compact.numVertices(); v += 1) {
+            long id = compact.id(v);
+            assertEquals(fromXML.lon(id), fromSnapshot.lon(id), 0.0);
+            assertEquals(fromXML.lat(id), fromSnapshot.lat(id), 0.0);
+            assertEquals(fromXML.name(id), fromSnapshot.name(id));
+            List<WeightedEdge<Long>> edges = fromSnapshot.neighbors(id);
+            for (WeightedEdge<Long> e : edges) {
+                assertEquals(fromXML.estimatedDistanceToGoal(id, e.to()), e.weight(), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatedSnapshotThrows() throws Exception {
+        File snapshot = File.createTempFile("truncated", GraphSnapshot.SUFFIX);
+        snapshot.deleteOnExit();
+        GraphSnapshot.write(new StreetMapGraph(OSM_DB_PATH_TINY).compact(), snapshot.getPath());
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        boolean thrown = false;
+        try {
+            new StreetMapGraph(snapshot.getPath());
+        } catch (UncheckedIOException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+}
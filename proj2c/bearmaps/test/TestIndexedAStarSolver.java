@@ -0,0 +1,78 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.IndexedAStarSolver;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the solvers for int-indexed graphs against AStarSolver on every pair of tiny
+ * graph nodes.
+ */
+public class TestIndexedAStarSolver {
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+    private static StreetMapGraph graph;
+    private static CompactStreetMapGraph compact;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new StreetMapGraph(OSM_DB_PATH_TINY);
+        compact = graph.compact();
+        initialized = true;
+    }
+
+    @Test
+    public void testIndexedAStar() {
+        for (int s = 0; s < compact.numVertices(); s += 1) {
+            for (int t = 0; t < compact.numVertices(); t += 1) {
+                checkAgainstAStar(s, t, new IndexedAStarSolver(compact, s, t, 10));
+            }
+        }
+    }
+
+    @Test
+    public void testBidirectionalAStar() {
+        for (int s = 0; s < compact.numVertices(); s += 1) {
+            for (int t = 0; t < compact.numVertices(); t += 1) {
+                checkAgainstAStar(s, t, new BidirectionalAStarSolver(compact, s, t, 10));
+            }
+        }
+    }
+
+    private void checkAgainstAStar(int s, int t, ShortestPathsSolver<Integer> actual) {
+        if (s == t) {
+            List<Integer> path = actual.solution();
+            assertEquals(1, path.size());
+            assertEquals(s, (int) path.get(0));
+            return;
+        }
+        AStarSolver<Long> expected = new AStarSolver<>(graph, compact.id(s), compact.id(t), 10);
+        assertEquals(expected.outcome(), actual.outcome());
+        if (actual.outcome() != SolverOutcome.SOLVED) {
+            return;
+        }
+        assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+        List<Integer> path = actual.solution();
+        assertEquals(s, (int) path.get(0));
+        assertEquals(t, (int) path.get(path.size() - 1));
+        double weight = 0;
+        for (int i = 0; i < path.size() - 1; i += 1) {
+            weight += graph.estimatedDistanceToGoal(compact.id(path.get(i)),
+                    compact.id(path.get(i + 1)));
+        }
+        assertEquals(actual.solutionWeight(), weight, 1e-9);
+    }
+}
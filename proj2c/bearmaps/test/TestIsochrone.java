@@ -0,0 +1,96 @@
+package bearmaps.test;
+
+import bearmaps.hw4.IndexedAStarSolver;
+import bearmaps.hw4.Isochrone;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks Isochrone against IndexedAStarSolver distances and checks its raster mask.
+ */
+public class TestIsochrone {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static CompactStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new StreetMapGraph(OSM_DB_PATH).compact();
+        initialized = true;
+    }
+
+    @Test
+    public void testBudgets() {
+        Random r = new Random(61);
+        double[] budgets = {0.5, 0.1, 0.25};
+        for (int trial = 0; trial < 5; trial += 1) {
+            int source = r.nextInt(graph.numVertices());
+            Isochrone isochrone = new Isochrone(graph, source, budgets);
+            assertEquals(0.1, isochrone.budget(0), 0.0);
+            assertEquals(0.5, isochrone.budget(2), 0.0);
+
+            int[] vertices = isochrone.vertices();
+            double[] dists = isochrone.dists();
+            assertEquals(vertices.length, isochrone.count(2));
+            Set<Integer> reached = new HashSet<>();
+            for (int i = 0; i < vertices.length; i += 1) {
+                reached.add(vertices[i]);
+                if (i > 0) {
+                    assertTrue(dists[i - 1] <= dists[i]);
+                }
+                for (int b = 0; b < budgets.length; b += 1) {
+                    assertEquals(i < isochrone.count(b), dists[i] <= isochrone.budget(b));
+                }
+            }
+
+            /* Every vertex is in exactly when its distance is within the largest budget. */
+            for (int i = 0; i < 200; i += 1) {
+                int t = r.nextInt(graph.numVertices());
+                IndexedAStarSolver solver = new IndexedAStarSolver(graph, source, t, 10);
+                boolean within = solver.outcome() == SolverOutcome.SOLVED
+                        && solver.solutionWeight() <= 0.5;
+                assertEquals(within, reached.contains(t));
+            }
+            for (int i = 0; i < vertices.length; i += 10) {
+                IndexedAStarSolver solver = new IndexedAStarSolver(graph, source, vertices[i], 10);
+                assertEquals(solver.solutionWeight(), dists[i], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testZeroBudget() {
+        Isochrone isochrone = new Isochrone(graph, 0, new double[]{0});
+        assertEquals(1, isochrone.count(0));
+        assertEquals(0, isochrone.vertices()[0]);
+    }
+
+    @Test
+    public void testMask() {
+        int source = new Random(61).nextInt(graph.numVertices());
+        Isochrone isochrone = new Isochrone(graph, source, new double[]{0.2, 0.4});
+        double lon = graph.lon(source), lat = graph.lat(source);
+        int size = 64;
+        byte[] mask = isochrone.mask(graph, lon - 0.01, lat + 0.01, lon + 0.01, lat - 0.01,
+                size, size);
+        assertEquals(size * size, mask.length);
+        /* The source's own cell is within the smallest budget. */
+        assertEquals(0, mask[(size / 2) * size + size / 2]);
+        for (byte cell : mask) {
+            assertTrue(cell >= -1 && cell <= 1);
+        }
+    }
+}
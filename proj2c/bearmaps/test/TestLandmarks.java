@@ -0,0 +1,160 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.IndexedAStarGraph;
+import bearmaps.hw4.IndexedAStarSolver;
+import bearmaps.hw4.IndexedLandmarkGraph;
+import bearmaps.hw4.LandmarkAStarGraph;
+import bearmaps.hw4.Landmarks;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the ALT bounds never overestimate and that A* with them still finds
+ * shortest paths, on every pair of tiny graph nodes and on random pairs of Berkeley nodes.
+ */
+public class TestLandmarks {
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_RANDOM_PAIRS = 200;
+    private static StreetMapGraph tinyGraph;
+    private static CompactStreetMapGraph tiny;
+    private static CompactStreetMapGraph berkeley;
+    private static Landmarks tinyLandmarks;
+    private static Landmarks berkeleyLandmarks;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        tinyGraph = new StreetMapGraph(OSM_DB_PATH_TINY);
+        tiny = tinyGraph.compact();
+        tinyLandmarks = new Landmarks(tiny, 3);
+        berkeley = new StreetMapGraph(OSM_DB_PATH).compact();
+        berkeleyLandmarks = new Landmarks(berkeley, Landmarks.DEFAULT_LANDMARKS);
+        initialized = true;
+    }
+
+    @Test
+    public void testTinyDecorator() {
+        LandmarkAStarGraph<Long> alt = new LandmarkAStarGraph<>(tinyGraph, tinyLandmarks,
+                tiny::index);
+        for (int s = 0; s < tiny.numVertices(); s += 1) {
+            for (int t = 0; t < tiny.numVertices(); t += 1) {
+                long sid = tiny.id(s), tid = tiny.id(t);
+                AStarSolver<Long> expected = new AStarSolver<>(tinyGraph, sid, tid, 10);
+                AStarSolver<Long> actual = new AStarSolver<>(alt, sid, tid, 10);
+                assertEquals(expected.outcome(), actual.outcome());
+                if (expected.outcome() == SolverOutcome.SOLVED) {
+                    assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+                    assertTrue(tinyLandmarks.lowerBound(s, t) <= expected.solutionWeight());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBerkeley() {
+        check(berkeleyLandmarks);
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        File file = File.createTempFile("berkeley", ".alt");
+        file.deleteOnExit();
+        berkeleyLandmarks.write(file.getPath());
+        Landmarks loaded = Landmarks.read(file.getPath());
+        assertEquals(berkeley.fingerprint(), loaded.graphFingerprint());
+        assertEquals(berkeleyLandmarks.numLandmarks(), loaded.numLandmarks());
+        for (int i = 0; i < loaded.numLandmarks(); i += 1) {
+            assertEquals(berkeleyLandmarks.landmark(i), loaded.landmark(i));
+        }
+        check(loaded);
+    }
+
+    @Test
+    public void testRejectsOtherGraph() throws Exception {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        Landmarks other = new Landmarks(new Stretched(tiny), 3);
+        assertEquals(graph.compact().numVertices(), other.numVertices());
+        File file = File.createTempFile("other", ".alt");
+        file.deleteOnExit();
+        other.write(file.getPath());
+        for (Landmarks l : new Landmarks[]{other, Landmarks.read(file.getPath())}) {
+            boolean thrown = false;
+            try {
+                graph.setLandmarks(l);
+            } catch (IllegalArgumentException e) {
+                thrown = true;
+            }
+            assertTrue(thrown);
+        }
+
+        graph.setLandmarks(tinyLandmarks);
+        assertSame(tinyLandmarks, graph.landmarks());
+    }
+
+    /** G with every edge a little longer: as many vertices, but another graph. */
+    private static class Stretched implements IndexedAStarGraph {
+        private final IndexedAStarGraph g;
+
+        Stretched(IndexedAStarGraph g) {
+            this.g = g;
+        }
+
+        @Override
+        public int numVertices() {
+            return g.numVertices();
+        }
+
+        @Override
+        public int edgesFrom(int v) {
+            return g.edgesFrom(v);
+        }
+
+        @Override
+        public int edgeTo(int e) {
+            return g.edgeTo(e);
+        }
+
+        @Override
+        public double edgeWeight(int e) {
+            return g.edgeWeight(e) * 1.5;
+        }
+
+        @Override
+        public double estimatedDistanceToGoal(int s, int goal) {
+            return g.estimatedDistanceToGoal(s, goal);
+        }
+    }
+
+    private void check(Landmarks landmarks) {
+        IndexedLandmarkGraph alt = new IndexedLandmarkGraph(berkeley, landmarks);
+        Random r = new Random(61);
+        for (int i = 0; i < NUM_RANDOM_PAIRS; i += 1) {
+            int s = r.nextInt(berkeley.numVertices()), t = r.nextInt(berkeley.numVertices());
+            IndexedAStarSolver expected = new IndexedAStarSolver(berkeley, s, t, 10);
+            SolverOutcome outcome = expected.outcome();
+            double weight = expected.solutionWeight();
+            IndexedAStarSolver actual = new IndexedAStarSolver(alt, s, t, 10);
+            assertEquals(outcome, actual.outcome());
+            if (outcome == SolverOutcome.SOLVED) {
+                assertEquals(weight, actual.solutionWeight(), 1e-9);
+                assertTrue(landmarks.lowerBound(s, t) <= weight);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.GraphSnapshot;
+import bearmaps.hw4.streetmap.OsmReader;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks that reading OSM XML in pieces builds the graph one parser would. */
+public class TestOsmReader {
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+    private static final String[] STREETS = {"Oxford Street", "Yali's Way", "Hearst & Euclid",
+                                             null};
+
+    @Test
+    public void testPiecesMakeTheSameGraph() throws Exception {
+        File osm = randomOsm(false);
+        byte[] whole = snapshot(OsmReader.read(osm.getPath(), 1));
+        for (int pieces : new int[]{2, 3, 7, 50, 1000}) {
+            assertArrayEquals("" + pieces, whole,
+                    snapshot(OsmReader.read(osm.getPath(), pieces)));
+        }
+        assertTrue(OsmReader.read(osm.getPath(), 7).numEdges() > 0);
+    }
+
+    @Test
+    public void testCommentedOutNodesFallBackToOneParser() throws Exception {
+        File osm = randomOsm(true);
+        byte[] whole = snapshot(OsmReader.read(osm.getPath(), 1));
+        assertArrayEquals(whole, snapshot(OsmReader.read(osm.getPath(), 1000)));
+    }
+
+    @Test
+    public void testTiny() throws Exception {
+        CompactStreetMapGraph whole = OsmReader.read(OSM_DB_PATH_TINY, 1);
+        assertEquals(9, whole.numVertices());
+        assertArrayEquals(snapshot(whole), snapshot(OsmReader.read(OSM_DB_PATH_TINY, 4)));
+    }
+
+    /**
+     * Writes an OSM file of a few hundred nodes, some named, some repeated, and ways among
+     * them, some not streets and some through unknown nodes. With COMMENT, a commented-out
+     * node sits in the middle.
+     */
+    private static File randomOsm(boolean comment) throws Exception {
+        Random random = new Random(61);
+        File osm = Files.createTempFile("pieces", ".osm.xml").toFile();
+        osm.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(osm, "UTF-8")) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<osm version=\"0.6\">");
+            out.println(" <bounds minlat=\"37.8\" minlon=\"-122.3\" maxlat=\"37.9\""
+                    + " maxlon=\"-122.2\"/>");
+            int numNodes = 400;
+            for (int i = 0; i < numNodes; i += 1) {
+                int id = random.nextInt(10) == 0 ? random.nextInt(i + 1) : i;
+                out.printf(Locale.ROOT, " <node id=\"%d\" lat=\"%.7f\" lon=\"%.7f\"", id,
+                        37.8 + random.nextDouble() / 10, -122.3 + random.nextDouble() / 10);
+                if (random.nextInt(5) == 0) {
+                    out.printf(">\n  <tag k=\"name\" v=\"Caf&#233; &amp; Bar %d&apos;s\"/>\n"
+                            + " </node>\n", i);
+                } else {
+                    out.println("/>");
+                }
+                if (comment && i == numNodes / 2) {
+                    out.println(" <!-- <node id=\"1\" lat=\"0\" lon=\"0\"/> -->");
+                }
+            }
+            for (int w = 0; w < 150; w += 1) {
+                out.printf(" <way id=\"%d\">\n", w);
+                for (int j = 2 + random.nextInt(4); j > 0; j -= 1) {
+                    out.printf("  <nd ref=\"%d\"/>\n", random.nextInt(numNodes + 20));
+                }
+                out.printf("  <tag k=\"highway\" v=\"%s\"/>\n",
+                        random.nextInt(4) == 0 ? "footway" : "residential");
+                String name = STREETS[random.nextInt(STREETS.length)];
+                if (name != null) {
+                    out.printf("  <tag k=\"name\" v=\"%s\"/>\n",
+                            name.replace("&", "&amp;").replace("'", "&apos;"));
+                }
+                out.println(" </way>");
+            }
+            out.println(" <relation id=\"1\">\n  <member type=\"way\" ref=\"3\" role=\"\"/>\n"
+                    + " </relation>");
+            out.println("</osm>");
+        }
+        return osm;
+    }
+
+    private static byte[] snapshot(CompactStreetMapGraph g) throws Exception {
+        File bin = File.createTempFile("pieces", GraphSnapshot.SUFFIX);
+        bin.deleteOnExit();
+        GraphSnapshot.write(g, bin.getPath());
+        return Files.readAllBytes(bin.toPath());
+    }
+}
@@ -0,0 +1,87 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.PngEncoder;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that PngEncoder writes PNGs that ImageIO reads back pixel for pixel.
+ */
+public class TestPngEncoder {
+
+    /** Returns a WIDTH x HEIGHT image of TYPE with smooth stretches and random noise. */
+    private static BufferedImage image(int width, int height, int type, long seed) {
+        Random r = new Random(seed);
+        BufferedImage img = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y += 1) {
+            for (int x = 0; x < width; x += 1) {
+                int rgb = r.nextInt(10) == 0 ? r.nextInt(1 << 24) : (x * 7) << 16 | (y * 3) << 8 | x ^ y;
+                img.setRGB(x, y, 0xff000000 | rgb);
+            }
+        }
+        return img;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, byte[] png) throws IOException {
+        BufferedImage actual = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y += 1) {
+            for (int x = 0; x < expected.getWidth(); x += 1) {
+                assertEquals(expected.getRGB(x, y) & 0xffffff, actual.getRGB(x, y) & 0xffffff);
+            }
+        }
+    }
+
+    @Test
+    public void testEveryLevel() throws IOException {
+        BufferedImage img = image(100, 70, BufferedImage.TYPE_INT_RGB, 1);
+        for (int level = 0; level <= 9; level += 1) {
+            assertSamePixels(img, new PngEncoder(level, 16).encode(img));
+        }
+    }
+
+    @Test
+    public void testStripSizes() throws IOException {
+        BufferedImage img = image(37, 53, BufferedImage.TYPE_INT_RGB, 2);
+        for (int rows : new int[]{1, 2, 7, 52, 53, 54, 1000}) {
+            assertSamePixels(img, new PngEncoder(6, rows).encode(img));
+        }
+    }
+
+    @Test
+    public void testOtherImageTypes() throws IOException {
+        for (int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR,
+                                  BufferedImage.TYPE_INT_BGR}) {
+            BufferedImage img = image(20, 30, type, type);
+            assertSamePixels(img, new PngEncoder(1, 8).encode(img));
+        }
+    }
+
+    @Test
+    public void testTinyImages() throws IOException {
+        BufferedImage img = image(1, 1, BufferedImage.TYPE_INT_RGB, 3);
+        assertSamePixels(img, new PngEncoder(1).encode(img));
+        img = image(300, 1, BufferedImage.TYPE_INT_RGB, 4);
+        assertSamePixels(img, new PngEncoder(9, 4).encode(img));
+    }
+
+    @Test
+    public void testCompressionLevels() {
+        BufferedImage img = image(256, 256, BufferedImage.TYPE_INT_RGB, 5);
+        int stored = new PngEncoder(0).encode(img).length;
+        int fast = new PngEncoder(1).encode(img).length;
+        int best = new PngEncoder(9).encode(img).length;
+        assertTrue(stored > 3 * 256 * 256);
+        assertTrue(fast < stored);
+        assertTrue(best <= fast);
+    }
+}
@@ -0,0 +1,84 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.server.handler.QueryParser;
+import bearmaps.proj2c.server.handler.impl.RasterRequest;
+import org.junit.Test;
+import spark.Request;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the number parsing raster requests go through, which must agree with
+ * Double.parseDouble on numbers and give NaN, rather than throw, on anything else.
+ */
+public class TestQueryParser {
+
+    @Test
+    public void testNumbers() {
+        for (String s : new String[]{"-122.25", "37.87", "1e-3", "+2E+4", "5.", ".5", "0",
+                                     "-0.000001", "256"}) {
+            assertEquals(s, Double.parseDouble(s), QueryParser.parseDouble(s), 0);
+        }
+        assertEquals(5, QueryParser.parseDouble(" 5 "), 0);
+    }
+
+    @Test
+    public void testNotNumbers() {
+        for (String s : new String[]{null, "", " ", "abc", "1e", "1e+", ".", "-", "+.",
+                                     "NaN", "Infinity", "0x10", "1.2.3", "12a", "1d", "--1"}) {
+            assertTrue(s, Double.isNaN(QueryParser.parseDouble(s)));
+        }
+    }
+
+    @Test
+    public void testRead() {
+        QueryParser parser = new QueryParser("x", "y");
+        double[] values = new double[parser.size()];
+        Map<String, String> query = new HashMap<>();
+        query.put("y", "2.5");
+        assertEquals(QueryParser.MISSING, parser.read(request(query), values));
+        query.put("x", "west");
+        assertEquals(QueryParser.NOT_NUMBERS, parser.read(request(query), values));
+        query.put("x", "-1");
+        assertNull(parser.read(request(query), values));
+        assertArrayEquals(new double[]{-1, 2.5}, values, 0);
+
+        RasterRequest raster = RasterRequest.parse(request(query));
+        assertEquals(QueryParser.MISSING, raster.error);
+    }
+
+    @Test
+    public void testRasterRequestOf() {
+        Map<String, Double> params = new HashMap<>();
+        params.put("ullat", 37.87);
+        params.put("ullon", -122.26);
+        params.put("lrlat", 37.86);
+        params.put("lrlon", -122.25);
+        params.put("w", 512.0);
+        params.put("h", 256.0);
+        RasterRequest request = RasterRequest.of(params);
+        assertNull(request.error);
+        assertEquals(37.87, request.ullat, 0);
+        assertEquals(-122.26, request.ullon, 0);
+        assertEquals(37.86, request.lrlat, 0);
+        assertEquals(-122.25, request.lrlon, 0);
+        assertEquals(512, request.width, 0);
+        assertEquals(256, request.height, 0);
+    }
+
+    /** Returns a request whose query parameters are QUERY. */
+    private static Request request(Map<String, String> query) {
+        return new Request() {
+            @Override
+            public String queryParams(String name) {
+                return query.get(name);
+            }
+        };
+    }
+}
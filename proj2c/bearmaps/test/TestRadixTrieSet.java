@@ -0,0 +1,114 @@
+package bearmaps.test;
+
+import bearmaps.FrozenTrieSet;
+import bearmaps.MyTrieSet;
+import bearmaps.RadixTrieSet;
+import bearmaps.TrieSet61B;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests RadixTrieSet and its frozen form against a TreeSet of the same keys.
+ */
+public class TestRadixTrieSet {
+
+    @Test
+    public void testSplitsAndMerges() {
+        RadixTrieSet t = new RadixTrieSet();
+        for (String s : new String[]{"same", "sam", "sad", "sap", "a", "awls", "hello", "sam"}) {
+            t.add(s);
+        }
+        t.add("");
+        assertEquals(7, t.size());
+        /* root, a, awls, hello, s(a), sam, same, sad, sap, and nothing per character. */
+        assertEquals(9, t.nodeCount());
+        for (TrieSet61B set : new TrieSet61B[]{t, t.freeze()}) {
+            assertTrue(set.contains("sam"));
+            assertFalse(set.contains("sa"));
+            assertFalse(set.contains("samey"));
+            assertFalse(set.contains(""));
+            assertEquals(Arrays.asList("sad", "sam", "same", "sap"), set.keysWithPrefix("sa"));
+            assertEquals(Arrays.asList("sam", "same"), set.keysWithPrefix("sam"));
+            assertEquals(Arrays.asList("hello"), set.keysWithPrefix("he"));
+            assertEquals(new ArrayList<String>(), set.keysWithPrefix("hex"));
+            assertEquals("same", set.longestPrefixOf("samestuff"));
+            assertEquals("sam", set.longestPrefixOf("sample"));
+            assertEquals("a", set.longestPrefixOf("awl"));
+            assertEquals("", set.longestPrefixOf("hell"));
+        }
+    }
+
+    @Test
+    public void testRandomAgainstTreeSet() {
+        Random random = new Random(61);
+        for (int trial = 0; trial < 50; trial += 1) {
+            RadixTrieSet radix = new RadixTrieSet();
+            TreeSet<String> expected = new TreeSet<>();
+            for (int i = 0; i < 200; i += 1) {
+                String key = randomString(random, 1 + random.nextInt(6));
+                radix.add(key);
+                expected.add(key);
+            }
+            FrozenTrieSet frozen = radix.freeze();
+            assertEquals(expected.size(), radix.size());
+            assertEquals(expected.size(), frozen.size());
+            assertEquals(radix.nodeCount(), frozen.nodeCount());
+            for (int q = 0; q < 100; q += 1) {
+                String query = randomString(random, random.nextInt(7));
+                List<String> withPrefix = new ArrayList<>();
+                for (String key : expected.tailSet(query)) {
+                    if (!key.startsWith(query)) {
+                        break;
+                    }
+                    withPrefix.add(key);
+                }
+                String longest = "";
+                for (int i = query.length(); i > 0; i -= 1) {
+                    if (expected.contains(query.substring(0, i))) {
+                        longest = query.substring(0, i);
+                        break;
+                    }
+                }
+                for (TrieSet61B set : new TrieSet61B[]{radix, frozen}) {
+                    assertEquals(expected.contains(query), set.contains(query));
+                    assertEquals(withPrefix, set.keysWithPrefix(query));
+                    assertEquals(longest, set.longestPrefixOf(query));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFreezeAnyTrieSet() {
+        MyTrieSet t = new MyTrieSet();
+        t.add("bear");
+        t.add("bears");
+        t.add("maps");
+        FrozenTrieSet frozen = new FrozenTrieSet(t);
+        assertEquals(Arrays.asList("bear", "bears", "maps"), frozen.keysWithPrefix(""));
+        boolean thrown = false;
+        try {
+            frozen.add("more");
+        } catch (UnsupportedOperationException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+}
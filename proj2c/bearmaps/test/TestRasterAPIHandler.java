@@ -1,10 +1,27 @@
 package bearmaps.test;
 
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.utils.Constants;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import org.junit.Before;
 import org.junit.Test;
 import bearmaps.proj2c.server.handler.impl.RasterAPIHandler;
+import spark.Request;
+import spark.Response;
 
+import javax.imageio.ImageIO;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.DecimalFormat;
@@ -15,6 +32,9 @@ import java.util.Map;
 import java.util.Collections;
 import java.util.StringJoiner;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Random;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -51,6 +71,172 @@ public class TestRasterAPIHandler {
         }
     }
 
+    @Test
+    public void testSpecExamples() {
+        Map<String, Double> params = query(-122.241632, 37.87655, -122.24053, 37.87548, 892, 875);
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("raster_ul_lon", -122.24212646484375);
+        expected.put("raster_ul_lat", 37.87701580361881);
+        expected.put("raster_lr_lon", -122.24006652832031);
+        expected.put("raster_lr_lat", 37.87538940251607);
+        expected.put("depth", 7);
+        expected.put("query_success", true);
+        expected.put("render_grid", new String[][]{
+            {"d7_x84_y28.png", "d7_x85_y28.png", "d7_x86_y28.png"},
+            {"d7_x84_y29.png", "d7_x85_y29.png", "d7_x86_y29.png"},
+            {"d7_x84_y30.png", "d7_x85_y30.png", "d7_x86_y30.png"}});
+        checkParamsMap("Spec example 1.\n", expected, rasterer.processRequest(params, null));
+
+        /* Sticks out of the root on the left: only the part inside is rastered. */
+        params = query(-122.3027284165759, 37.88708748276975, -122.20908713544797,
+                37.848731523430196, 305, 300);
+        expected.put("raster_ul_lon", -122.2998046875);
+        expected.put("raster_ul_lat", 37.892195547244356);
+        expected.put("raster_lr_lon", -122.2119140625);
+        expected.put("raster_lr_lat", 37.82280243352756);
+        expected.put("depth", 1);
+        expected.put("render_grid", new String[][]{
+            {"d1_x0_y0.png", "d1_x1_y0.png"},
+            {"d1_x0_y1.png", "d1_x1_y1.png"}});
+        checkParamsMap("Spec example 2.\n", expected, rasterer.processRequest(params, null));
+    }
+
+    @Test
+    public void testNoCoverage() {
+        Map<String, Double> outside = query(-123, 38, -122.9, 37.9, 256, 256);
+        assertEquals(false, rasterer.processRequest(outside, null).get("query_success"));
+        Map<String, Double> backwards = query(-122.24, 37.87, -122.25, 37.88, 256, 256);
+        assertEquals(false, rasterer.processRequest(backwards, null).get("query_success"));
+    }
+
+    @Test
+    public void testDeepestDepth() {
+        /* Far more pixels than the deepest tiles have: the deepest tiles still do. */
+        Map<String, Double> params = query(-122.241632, 37.87655, -122.24163, 37.87654, 5000,
+                5000);
+        Map<String, Object> actual = rasterer.processRequest(params, null);
+        assertEquals(7, actual.get("depth"));
+        assertEquals(1, ((String[][]) actual.get("render_grid")).length);
+    }
+
+    @Test
+    public void testStreamedMembersAreGsonJson() throws Exception {
+        Map<String, Object> members = new LinkedHashMap<>();
+        members.put("a=b", "<p class='x'>&=</p>");
+        members.put("depth", 7);
+        members.put("raster_ul_lon", -122.24212646484375);
+        members.put("query_success", true);
+        members.put("none", null);
+        members.put("render_grid", new String[][]{{"d7_x84_y28.png", "d7_x85_y28.png"}});
+        Random random = new Random(61);
+        for (int size : new int[]{0, 1, 2, 3, 10000}) {
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            Streamer.stream(responseTo(body), members, "b64_encoded_image_data", bytes);
+
+            Map<String, Object> expected = new LinkedHashMap<>(members);
+            expected.put("b64_encoded_image_data", Base64.getEncoder().encodeToString(bytes));
+            assertEquals(json(new Gson().toJson(expected)),
+                    json(new String(body.toByteArray(), StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Test
+    public void testRasterBodyIsGsonJson() throws Exception {
+        Map<String, Double> params = query(-122.241632, 37.87655, -122.24053, 37.87548, 892,
+                875);
+        Map<String, String> query = new HashMap<>();
+        for (Map.Entry<String, Double> param : params.entrySet()) {
+            query.put(param.getKey(), "" + param.getValue());
+        }
+        query.put("route_token", "testRasterBodyIsGsonJson");
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        assertEquals("", rasterer.handle(new Request() {
+            @Override
+            public String queryParams(String name) {
+                return query.get(name);
+            }
+        }, responseTo(body)));
+        JsonObject actual = json(new String(body.toByteArray(), StandardCharsets.UTF_8))
+                .getAsJsonObject();
+
+        Map<String, Object> expected = rasterer.processRequest(params, null);
+        String[][] grid = (String[][]) expected.get("render_grid");
+        expected.put("raster_width", grid[0].length * Constants.TILE_SIZE);
+        expected.put("raster_height", grid.length * Constants.TILE_SIZE);
+        String image = actual.get("b64_encoded_image_data").getAsString();
+        expected.put("b64_encoded_image_data", image);
+        assertEquals(json(new Gson().toJson(expected)), actual);
+        assertEquals(grid[0].length * Constants.TILE_SIZE, ImageIO.read(
+                new ByteArrayInputStream(Base64.getDecoder().decode(image))).getWidth());
+    }
+
+    /** Gives the tests the streaming that handlers get. */
+    private static class Streamer extends APIRouteHandler<Object, Object> {
+        static void stream(Response response, Map<String, ?> members, String name,
+                           byte[] bytes) throws Exception {
+            new Streamer().streamJsonResponse(response, members, name, bytes);
+        }
+
+        @Override
+        protected Object parseRequestParams(Request request) {
+            return null;
+        }
+
+        @Override
+        protected Object processRequest(Object requestParams, Response response) {
+            return null;
+        }
+    }
+
+    /** Returns a Response whose body goes to BODY. */
+    private static Response responseTo(ByteArrayOutputStream body) {
+        ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            public boolean isReady() {
+                return true;
+            }
+
+            public void setWriteListener(WriteListener listener) {
+            }
+        };
+        HttpServletResponse raw = (HttpServletResponse) Proxy.newProxyInstance(
+                HttpServletResponse.class.getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class},
+                (proxy, method, args) -> "getOutputStream".equals(method.getName()) ? out : null);
+        return new Response() {
+            @Override
+            public HttpServletResponse raw() {
+                return raw;
+            }
+
+            @Override
+            public void type(String contentType) {
+            }
+        };
+    }
+
+    private static JsonElement json(String text) {
+        return new JsonParser().parse(text);
+    }
+
+    private static Map<String, Double> query(double ullon, double ullat, double lrlon,
+                                             double lrlat, double w, double h) {
+        Map<String, Double> params = new HashMap<>();
+        params.put("ullon", ullon);
+        params.put("ullat", ullat);
+        params.put("lrlon", lrlon);
+        params.put("lrlat", lrlat);
+        params.put("w", w);
+        params.put("h", h);
+        return params;
+    }
+
     private List<Map<String, Double>> paramsFromFile() throws Exception {
         List<String> lines = Files.readAllLines(Paths.get(PARAMS_FILE), Charset.defaultCharset());
         List<Map<String, Double>> testParams = new ArrayList<>();
@@ -0,0 +1,57 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.RasterCache;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests that RasterCache keys images by tile range and route version, and stays within its
+ * byte budget.
+ */
+public class TestRasterCache {
+
+    @Test
+    public void testKeys() {
+        RasterCache cache = new RasterCache(1000);
+        byte[] image = new byte[10];
+        cache.put(3, 1, 2, 4, 5, 0, image);
+        assertSame(image, cache.get(3, 1, 2, 4, 5, 0));
+        assertNull(cache.get(3, 1, 2, 4, 5, 1));
+        assertNull(cache.get(4, 1, 2, 4, 5, 0));
+        assertNull(cache.get(3, 2, 1, 4, 5, 0));
+        assertNull(cache.get(3, 1, 2, 5, 4, 0));
+        assertEquals(1, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void testEvictsByBytes() {
+        RasterCache cache = new RasterCache(100);
+        cache.put(1, 0, 0, 1, 1, 0, new byte[40]);
+        cache.put(1, 1, 0, 1, 1, 0, new byte[40]);
+        cache.get(1, 0, 0, 1, 1, 0);
+        cache.put(1, 2, 0, 1, 1, 0, new byte[40]);
+        assertEquals(2, cache.size());
+        assertEquals(80, cache.bytes());
+        assertEquals(1, cache.evictions());
+        assertNull(cache.get(1, 1, 0, 1, 1, 0));
+        assertEquals(40, cache.get(1, 0, 0, 1, 1, 0).length);
+    }
+
+    @Test
+    public void testReplaceAndOversized() {
+        RasterCache cache = new RasterCache(100);
+        cache.put(1, 0, 0, 1, 1, 7, new byte[30]);
+        cache.put(1, 0, 0, 1, 1, 7, new byte[50]);
+        assertEquals(50, cache.bytes());
+        cache.put(2, 0, 0, 1, 1, 7, new byte[101]);
+        assertNull(cache.get(2, 0, 0, 1, 1, 7));
+        assertEquals(1, cache.size());
+        cache.invalidate();
+        assertEquals(0, cache.bytes());
+        assertEquals(0, cache.size());
+    }
+}
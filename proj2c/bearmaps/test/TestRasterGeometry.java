@@ -0,0 +1,53 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.RasterGeometry;
+import org.junit.Test;
+
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLON;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLON;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the tile arithmetic of RasterGeometry, including depths deeper than the tiles that
+ * ship with the project.
+ */
+public class TestRasterGeometry {
+    private static final double DELTA = 1e-12;
+
+    @Test
+    public void testDepthFor() {
+        for (int depth = 0; depth <= 20; depth += 1) {
+            double dpp = RasterGeometry.lonDPP(depth);
+            assertEquals(depth, RasterGeometry.depthFor(dpp, 20));
+            assertEquals(depth, RasterGeometry.depthFor(dpp * 1.5, 20));
+            assertEquals(Math.min(depth + 1, 20), RasterGeometry.depthFor(dpp * 0.99, 20));
+            assertEquals(Math.min(depth, 7), RasterGeometry.depthFor(dpp, 7));
+        }
+        assertEquals(0, RasterGeometry.depthFor(1, 7));
+    }
+
+    @Test
+    public void testTileIndices() {
+        int depth = 12;
+        int n = RasterGeometry.tilesPerSide(depth);
+        assertEquals(4096, n);
+        for (int x : new int[]{0, 1, 1000, n - 1}) {
+            double left = RasterGeometry.ulLon(depth, x);
+            assertEquals(x, RasterGeometry.tileX(depth,
+                    left + RasterGeometry.tileLonWidth(depth) / 2));
+        }
+        for (int y : new int[]{0, 1, 3000, n - 1}) {
+            double top = RasterGeometry.ulLat(depth, y);
+            assertEquals(y, RasterGeometry.tileY(depth,
+                    top - RasterGeometry.tileLatHeight(depth) / 2));
+        }
+        assertEquals(0, RasterGeometry.tileX(depth, ROOT_ULLON - 1));
+        assertEquals(n - 1, RasterGeometry.tileX(depth, ROOT_LRLON));
+        assertEquals(0, RasterGeometry.tileY(depth, ROOT_ULLAT + 1));
+        assertEquals(n - 1, RasterGeometry.tileY(depth, ROOT_LRLAT));
+        assertEquals(ROOT_LRLON, RasterGeometry.ulLon(depth, n), DELTA);
+        assertEquals(ROOT_LRLAT, RasterGeometry.ulLat(depth, n), DELTA);
+    }
+}
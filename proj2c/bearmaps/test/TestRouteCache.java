@@ -0,0 +1,75 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.RouteCache;
+import bearmaps.proj2c.Router;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests RouteCache eviction, expiry and counters, and that Router serves repeated
+ * requests from it.
+ */
+public class TestRouteCache {
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        RouteCache cache = new RouteCache(2, 0);
+        cache.put(1, 2, Arrays.asList(1L, 2L));
+        cache.put(3, 4, Arrays.asList(3L, 4L));
+        assertEquals(Arrays.asList(1L, 2L), cache.get(1, 2));
+        cache.put(5, 6, Arrays.asList(5L, 6L));
+        assertNull(cache.get(3, 4));
+        assertEquals(Arrays.asList(1L, 2L), cache.get(1, 2));
+        assertEquals(Arrays.asList(5L, 6L), cache.get(5, 6));
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    public void testDirectionMatters() {
+        RouteCache cache = new RouteCache(4, 0);
+        cache.put(1, 2, Arrays.asList(1L, 2L));
+        assertNull(cache.get(2, 1));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        RouteCache cache = new RouteCache(4, 0.001);
+        cache.put(1, 2, Arrays.asList(1L, 2L));
+        Thread.sleep(10);
+        assertNull(cache.get(1, 2));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    public void testInvalidate() {
+        RouteCache cache = new RouteCache(4, 0);
+        cache.put(1, 2, Arrays.asList(1L, 2L));
+        cache.invalidate();
+        assertNull(cache.get(1, 2));
+    }
+
+    @Test
+    public void testRouterUsesCache() {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        RouteCache cache = graph.routeCache();
+        List<Long> first = Router.shortestPath(graph, 0.2, 38.2, 0.6, 38.6);
+        assertEquals(0, cache.hits());
+        assertEquals(1, cache.misses());
+        /* Slightly different coordinates that snap to the same two nodes. */
+        List<Long> second = Router.shortestPath(graph, 0.21, 38.19, 0.59, 38.6);
+        assertEquals(first, second);
+        assertEquals(1, cache.hits());
+        assertEquals(Arrays.asList(22L, 46L, 66L), second);
+    }
+}
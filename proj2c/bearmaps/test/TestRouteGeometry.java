@@ -0,0 +1,120 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.RasterGeometry;
+import bearmaps.proj2c.RouteGeometry;
+import bearmaps.proj2c.server.handler.impl.RasterAPIHandler;
+import bearmaps.proj2c.server.handler.impl.RouteGeometryAPIHandler;
+import org.junit.Test;
+import spark.Request;
+import spark.Response;
+
+import java.awt.geom.Path2D;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests route simplification, clipping and encoding in RouteGeometry.
+ */
+public class TestRouteGeometry {
+    private static final int DEEPEST = RasterGeometry.MAX_SUPPORTED_DEPTH;
+
+    @Test
+    public void testStraightLineKeepsEnds() {
+        int n = 1000;
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            lons[i] = -122.29 + i * 1e-5;
+            lats[i] = 37.85 + i * 0.5e-5;
+        }
+        RouteGeometry route = new RouteGeometry(lons, lats);
+        assertArrayEquals(new int[]{0, n - 1}, route.simplified(7));
+    }
+
+    @Test
+    public void testCornersDependOnDepth() {
+        /* A detour of about a meter: a dot when zoomed out, a corner when zoomed in. */
+        double[] lons = {-122.27, -122.26, -122.25};
+        double[] lats = {37.86, 37.86001, 37.86};
+        RouteGeometry route = new RouteGeometry(lons, lats);
+        assertArrayEquals(new int[]{0, 2}, route.simplified(1));
+        assertArrayEquals(new int[]{0, 1, 2}, route.simplified(7));
+    }
+
+    @Test
+    public void testKeptPointsAreOrdered() {
+        int n = 500;
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            lons[i] = -122.29 + i * 1e-4;
+            lats[i] = 37.85 + 0.01 * Math.sin(i / 20.0);
+        }
+        RouteGeometry route = new RouteGeometry(lons, lats);
+        for (int depth = 0; depth <= 10; depth += 1) {
+            int[] kept = route.simplified(depth);
+            assertEquals(0, kept[0]);
+            assertEquals(n - 1, kept[kept.length - 1]);
+            for (int k = 1; k < kept.length; k += 1) {
+                assertTrue(kept[k - 1] < kept[k]);
+            }
+            if (depth > 0) {
+                assertTrue(kept.length >= route.simplified(depth - 1).length);
+            }
+        }
+    }
+
+    @Test
+    public void testPathIsClipped() {
+        double[] lons = {-122.28, -122.27, -122.26};
+        double[] lats = {37.86, 37.87, 37.86};
+        RouteGeometry route = new RouteGeometry(lons, lats);
+        assertNotNull(route.path(7, -122.29, 37.88, -122.25, 37.85, 256, 256, 5));
+        assertNull(route.path(7, -122.24, 37.88, -122.22, 37.85, 256, 256, 5));
+        Path2D half = route.path(DEEPEST, -122.275, 37.88, -122.25, 37.85, 256, 256, 0);
+        assertTrue(half.getBounds2D().getMinX() < 0);
+        assertTrue(half.getBounds2D().getMaxX() <= 256);
+    }
+
+    @Test
+    public void testPolyline() {
+        /* The example from the description of the Encoded Polyline Algorithm Format. */
+        double[] lons = {-120.2, -120.95, -126.453};
+        double[] lats = {38.5, 40.7, 43.252};
+        RouteGeometry route = new RouteGeometry(lons, lats);
+        assertEquals("_p~iF~ps|U_ulLnnqC_mqNvxq`@", route.polyline(DEEPEST));
+        assertEquals(3, route.coordinates(DEEPEST).length);
+        assertArrayEquals(new double[]{-120.95, 40.7}, route.coordinates(DEEPEST)[1], 0);
+    }
+
+    @Test
+    public void testHandlerRejectsBadParameters() throws Exception {
+        RouteGeometryAPIHandler handler = new RouteGeometryAPIHandler(new RasterAPIHandler());
+        String[][] bad = {{"depth", "deep"}, {"depth", "3.5"}, {"depth", "-1"},
+                          {"depth", "" + (DEEPEST + 1)}, {"depth", "1e"}, {"format", "kml"}};
+        for (String[] param : bad) {
+            Map<String, String> query = new HashMap<>();
+            query.put(param[0], param[1]);
+            int[] status = {200};
+            Object body = handler.handle(new Request() {
+                @Override
+                public String queryParams(String name) {
+                    return query.get(name);
+                }
+            }, new Response() {
+                @Override
+                public void status(int code) {
+                    status[0] = code;
+                }
+            });
+            assertEquals(param[1], 403, status[0]);
+            assertTrue(body.toString().startsWith("Request failed"));
+        }
+    }
+}
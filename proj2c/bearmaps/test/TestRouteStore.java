@@ -0,0 +1,151 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.RouteStore;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import org.junit.Test;
+import spark.Request;
+import spark.Response;
+import spark.Session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that RouteStore keeps every owner's route apart, and that it stays bounded.
+ */
+public class TestRouteStore {
+
+    @Test
+    public void testOwnersAreSeparate() {
+        RouteStore store = new RouteStore(10, 0);
+        store.append("alice", Arrays.asList(1L, 2L));
+        store.append("bob", Arrays.asList(7L, 8L));
+        assertEquals(Arrays.asList(1L, 2L), store.get("alice"));
+        assertEquals(Arrays.asList(7L, 8L), store.get("bob"));
+        assertTrue(store.get("carol").isEmpty());
+    }
+
+    @Test
+    public void testAppendAndClear() {
+        RouteStore store = new RouteStore(10, 0);
+        store.append("alice", Arrays.asList(1L, 2L));
+        List<Long> full = store.append("alice", Arrays.asList(3L));
+        assertEquals(Arrays.asList(1L, 2L, 3L), full);
+        assertEquals(full, store.get("alice"));
+        store.clear("alice");
+        assertTrue(store.get("alice").isEmpty());
+    }
+
+    @Test
+    public void testVersions() {
+        RouteStore store = new RouteStore(10, 0);
+        assertEquals(0, store.version("alice"));
+        store.append("alice", Arrays.asList(1L, 2L));
+        long first = store.version("alice");
+        assertTrue(first > 0);
+        assertEquals(first, store.version("alice"));
+        store.append("bob", Arrays.asList(1L, 2L));
+        assertTrue(store.version("bob") != first);
+        store.append("alice", Arrays.asList(3L));
+        assertTrue(store.version("alice") > first);
+        store.clear("alice");
+        assertEquals(0, store.version("alice"));
+    }
+
+    @Test
+    public void testLeastRecentlySeenIsForgotten() {
+        RouteStore store = new RouteStore(2, 0);
+        store.append("alice", Arrays.asList(1L));
+        store.append("bob", Arrays.asList(2L));
+        store.get("alice");
+        store.append("carol", Arrays.asList(3L));
+        assertEquals(2, store.size());
+        assertTrue(store.get("bob").isEmpty());
+        assertEquals(Arrays.asList(1L), store.get("alice"));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        RouteStore store = new RouteStore(10, 0.001);
+        store.append("alice", Arrays.asList(1L));
+        Thread.sleep(10);
+        assertTrue(store.get("alice").isEmpty());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testConcurrentOwners() throws Exception {
+        RouteStore store = new RouteStore(100, 0);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t += 1) {
+            String owner = "owner" + t;
+            long id = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i += 1) {
+                    store.append(owner, Arrays.asList(id));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int t = 0; t < 8; t += 1) {
+            List<Long> route = store.get("owner" + t);
+            assertEquals(1000, route.size());
+            for (long v : route) {
+                assertEquals(t, v);
+            }
+        }
+    }
+
+    @Test
+    public void testReadersStartNoSession() {
+        boolean[] created = {false};
+        Request request = new Request() {
+            @Override
+            public String queryParams(String name) {
+                return null;
+            }
+
+            @Override
+            public Session session(boolean create) {
+                created[0] |= create;
+                return null;
+            }
+        };
+        String owner = Owners.of(request);
+        assertNull(owner);
+        assertFalse(created[0]);
+
+        RouteStore store = new RouteStore(10, 0);
+        store.append("alice", Arrays.asList(1L, 2L));
+        assertTrue(store.get(owner).isEmpty());
+        assertEquals(0, store.version(owner));
+        assertEquals(1, store.size());
+    }
+
+    /** Just here to get at the protected routeOwner(). */
+    private static class Owners extends APIRouteHandler<Object, Object> {
+        static String of(Request request) {
+            return routeOwner(request);
+        }
+
+        @Override
+        protected Object parseRequestParams(Request request) {
+            return null;
+        }
+
+        @Override
+        protected Object processRequest(Object requestParams, Response response) {
+            return null;
+        }
+    }
+}
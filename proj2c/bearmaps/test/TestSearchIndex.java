@@ -0,0 +1,117 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.SearchIndex;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests SearchIndex's cleaning of names, its prefix lookups, and its ranked completions.
+ */
+public class TestSearchIndex {
+
+    @Test
+    public void testCleanMatchesRegex() {
+        String[] names = {"", "top dog", "Top Dog", "Peet's Coffee & Tea", "7-Eleven",
+            "CAF\u00C9 Strada", "  spaced  out  ", "123", "Yali's Caf\u00e9"};
+        for (String name : names) {
+            assertEquals(name.replaceAll("[^a-zA-Z ]", "").toLowerCase(),
+                    SearchIndex.clean(name));
+        }
+        String clean = "already clean";
+        assertSame(clean, SearchIndex.clean(clean));
+    }
+
+    @Test
+    public void testPrefixIgnoresCaseAndPunctuation() {
+        SearchIndex index = new SearchIndex(10);
+        index.add("Top Dog", 1);
+        index.add("Top-Dog", 2);
+        index.add("Toss", 3);
+        index.add("Tip Top", 4);
+        index.add("!!!", 5);
+        assertEquals(4, index.size());
+        assertArrayEquals(new long[]{1, 2, 3}, index.idsWithPrefix("TO", 10));
+        assertArrayEquals(new long[]{1}, index.idsWithPrefix("top d'", 10));
+        assertArrayEquals(new long[]{2}, index.idsWithPrefix("TopD", 10));
+        assertArrayEquals(new long[]{4, 1, 2, 3}, index.idsWithPrefix("", 10));
+        assertArrayEquals(new long[0], index.idsWithPrefix("tops", 10));
+        assertArrayEquals(new long[0], index.idsWithPrefix("to", 0));
+    }
+
+    @Test
+    public void testLimit() {
+        SearchIndex index = new SearchIndex(10);
+        for (int i = 0; i < 1000; i += 1) {
+            index.add("Bus Stop " + (char) ('a' + i % 26), i);
+        }
+        long[] ids = index.idsWithPrefix("bus", 30);
+        assertEquals(30, ids.length);
+        /* The first 30 of the 39 "bus stop a"s, in the order added. */
+        for (int k = 0; k < 30; k += 1) {
+            assertEquals(26L * k, ids[k]);
+        }
+        assertEquals(39, index.idsWithPrefix("bus stop b", 100).length);
+    }
+
+    @Test
+    public void testCompletionsAreRanked() {
+        SearchIndex index = new SearchIndex(3);
+        index.add("Shattuck Ave", 1, 5);
+        index.add("shattuck ave", 2, 1);
+        index.add("Shell", 3, 2);
+        index.add("Sheng Kee", 4, 1);
+        index.add("Shen's", 5, 1);
+        index.add("Safeway", 6, 10);
+        assertEquals(Arrays.asList("Safeway", "Shattuck Ave", "Shell"),
+                index.topCompletions("s"));
+        /* Equal scores come alphabetically. */
+        assertEquals(Arrays.asList("Shell", "Sheng Kee", "Shen's"),
+                index.topCompletions("SHE"));
+        assertEquals(Collections.emptyList(), index.topCompletions("x"));
+    }
+
+    @Test
+    public void testQueriesPromote() {
+        SearchIndex index = new SearchIndex(2);
+        index.add("Sheng Kee", 1, 3);
+        index.add("Shen's", 2, 2);
+        index.add("Shell", 3, 1);
+        assertEquals(Arrays.asList("Sheng Kee", "Shen's"), index.topCompletions("sh"));
+        index.recordQuery("shell");
+        index.recordQuery("Nowhere");
+        index.awaitRecorded();
+        assertEquals(Arrays.asList("Sheng Kee", "Shell"), index.topCompletions("sh"));
+        assertEquals(Arrays.asList("Shell"), index.topCompletions("shel"));
+        /* Tied with Sheng Kee, and first alphabetically. */
+        index.recordQuery("Shell!");
+        index.awaitRecorded();
+        assertEquals(Arrays.asList("Shell", "Sheng Kee"), index.topCompletions("s"));
+        assertEquals(Arrays.asList("Sheng Kee", "Shen's"), index.topCompletions("shen"));
+    }
+
+    @Test
+    public void testFuzzyCompletions() {
+        SearchIndex index = new SearchIndex(4);
+        index.add("Telegraph Ave", 1, 5);
+        index.add("Telegraph Channing Mall", 2, 1);
+        index.add("Tolman Hall", 3, 3);
+        index.add("Temescal", 4, 1);
+        /* One substitution away, then one more. */
+        assertEquals(Collections.emptyList(), index.topCompletions("telagraph"));
+        assertEquals(Arrays.asList("Telegraph Ave", "Telegraph Channing Mall"),
+                index.fuzzyCompletions("telagraph", 1));
+        assertEquals(Collections.emptyList(), index.fuzzyCompletions("tleagraph", 1));
+        assertEquals(Arrays.asList("Telegraph Ave", "Telegraph Channing Mall"),
+                index.fuzzyCompletions("tleagraph", 2));
+        /* Exact matches first, then those one edit away, by score. */
+        assertEquals(Arrays.asList("Telegraph Ave", "Telegraph Channing Mall", "Tolman Hall",
+                "Temescal"), index.fuzzyCompletions("tel", 1));
+        assertEquals(Arrays.asList("Tolman Hall"), index.fuzzyCompletions("tolman", 0));
+    }
+}
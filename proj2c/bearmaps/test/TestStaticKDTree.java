@@ -0,0 +1,115 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.StaticKDTree;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks StaticKDTree.nearest against a linear scan. Each point's id is its index, so a
+ * tie between equally close points may be broken either way, but the distance may not.
+ */
+public class TestStaticKDTree {
+
+    @Test
+    public void testRandomPoints() {
+        Random random = new Random(61);
+        for (int trial = 0; trial < 20; trial += 1) {
+            int n = 1 + random.nextInt(2000);
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i += 1) {
+                x[i] = random.nextDouble() * 100 - 50;
+                y[i] = random.nextDouble() * 100 - 50;
+            }
+            check(x, y, random, 500);
+        }
+    }
+
+    @Test
+    public void testDuplicateCoordinates() {
+        Random random = new Random(62);
+        for (int trial = 0; trial < 20; trial += 1) {
+            /* Points on a small grid, so that most coordinates, and many points, repeat. */
+            int n = 1 + random.nextInt(1000);
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i += 1) {
+                x[i] = random.nextInt(5);
+                y[i] = random.nextInt(5);
+            }
+            check(x, y, random, 500);
+        }
+    }
+
+    @Test
+    public void testAllPointsTheSame() {
+        double[] x = new double[100];
+        double[] y = new double[100];
+        Arrays.fill(x, -122.25);
+        Arrays.fill(y, 37.87);
+        check(x, y, new Random(63), 50);
+    }
+
+    @Test
+    public void testQueryOnPoint() {
+        double[] x = {1, 2, 3, 4, 5};
+        double[] y = {5, 4, 3, 2, 1};
+        StaticKDTree tree = new StaticKDTree(x, y, new long[]{10, 20, 30, 40, 50});
+        for (int i = 0; i < x.length; i += 1) {
+            assertEquals(10 * (i + 1), tree.nearest(x[i], y[i]));
+        }
+        assertEquals(5, tree.size());
+    }
+
+    @Test
+    public void testEmpty() {
+        StaticKDTree tree = new StaticKDTree(new double[0], new double[0], new long[0]);
+        boolean thrown = false;
+        try {
+            tree.nearest(0, 0);
+        } catch (NoSuchElementException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    /**
+     * Asks the tree over X and Y for the nearest point to QUERIES random spots in and just
+     * around the box the points span.
+     */
+    private static void check(double[] x, double[] y, Random random, int queries) {
+        long[] ids = new long[x.length];
+        for (int i = 0; i < ids.length; i += 1) {
+            ids[i] = i;
+        }
+        StaticKDTree tree = new StaticKDTree(x, y, ids);
+        assertEquals(x.length, tree.size());
+        double minX = Arrays.stream(x).min().getAsDouble() - 1;
+        double maxX = Arrays.stream(x).max().getAsDouble() + 1;
+        double minY = Arrays.stream(y).min().getAsDouble() - 1;
+        double maxY = Arrays.stream(y).max().getAsDouble() + 1;
+        for (int q = 0; q < queries; q += 1) {
+            double qx = minX + random.nextDouble() * (maxX - minX);
+            double qy = minY + random.nextDouble() * (maxY - minY);
+            int best = 0;
+            for (int i = 1; i < x.length; i += 1) {
+                if (distance(x, y, i, qx, qy) < distance(x, y, best, qx, qy)) {
+                    best = i;
+                }
+            }
+            int found = (int) tree.nearest(qx, qy);
+            assertEquals(distance(x, y, best, qx, qy), distance(x, y, found, qx, qy), 0);
+        }
+    }
+
+    private static double distance(double[] x, double[] y, int i, double qx, double qy) {
+        double dx = x[i] - qx, dy = y[i] - qy;
+        return dx * dx + dy * dy;
+    }
+}
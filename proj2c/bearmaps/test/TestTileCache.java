@@ -0,0 +1,118 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.TileCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests TileCache on a directory of small generated tiles.
+ */
+public class TestTileCache {
+    private static final int TILE = 16;
+    private static String root;
+    /** Pixel bytes of one decoded tile, which depend on the image type ImageIO picks. */
+    private static long tileBytes;
+
+    @Before
+    public void setUp() throws Exception {
+        if (root != null) {
+            return;
+        }
+        File dir = Files.createTempDirectory("tiles").toFile();
+        dir.deleteOnExit();
+        for (int depth = 0; depth <= 2; depth += 1) {
+            for (int x = 0; x < 1 << depth; x += 1) {
+                for (int y = 0; y < 1 << depth; y += 1) {
+                    BufferedImage img = new BufferedImage(TILE, TILE, BufferedImage.TYPE_INT_RGB);
+                    img.setRGB(0, 0, (depth << 16) | (x << 8) | y);
+                    File f = new File(dir, TileCache.fileName(depth, x, y));
+                    ImageIO.write(img, "png", f);
+                    f.deleteOnExit();
+                }
+            }
+        }
+        root = dir.getPath() + File.separator;
+        TileCache probe = new TileCache(root, Long.MAX_VALUE);
+        probe.get(0, 0, 0);
+        tileBytes = probe.bytes();
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        TileCache cache = new TileCache(root, 100 * tileBytes);
+        BufferedImage first = cache.get(2, 1, 3);
+        assertEquals((2 << 16) | (1 << 8) | 3, first.getRGB(0, 0) & 0xffffff);
+        assertSame(first, cache.get(2, 1, 3));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0.5, cache.hitRate(), 1e-9);
+        assertEquals(tileBytes, cache.bytes());
+    }
+
+    @Test
+    public void testEvictsByBytes() {
+        TileCache cache = new TileCache(root, 3 * tileBytes);
+        cache.get(2, 0, 0);
+        cache.get(2, 0, 1);
+        cache.get(2, 0, 2);
+        cache.get(2, 0, 0);
+        cache.get(2, 0, 3);
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.evictions());
+        assertTrue(cache.bytes() <= 3 * tileBytes);
+        long misses = cache.misses();
+        cache.get(2, 0, 0);
+        assertEquals(misses, cache.misses());
+        cache.get(2, 0, 1);
+        assertEquals(misses + 1, cache.misses());
+    }
+
+    @Test
+    public void testMissingTile() {
+        TileCache cache = new TileCache(root, 100 * tileBytes);
+        assertNull(cache.get(5, 0, 0));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        TileCache cache = new TileCache(root, 100 * tileBytes);
+        cache.prefetch(2, 1, 1, 1, 1, 4);
+        for (int i = 0; i < 200 && cache.size() < 9; i += 1) {
+            Thread.sleep(10);
+        }
+        assertEquals(9, cache.size());
+        cache.get(2, 0, 0);
+        cache.get(2, 2, 2);
+        assertEquals(2, cache.hits());
+        assertEquals(0, cache.misses());
+    }
+
+    @Test
+    public void testPrefetchQueueIsBounded() throws Exception {
+        TileCache cache = new TileCache(root, 100 * tileBytes);
+        for (int i = 0; i < 100; i += 1) {
+            cache.prefetch(2, i % 4, i % 4, 0, 0, 4);
+            assertTrue(cache.pendingPrefetches() <= 2);
+        }
+        cache.prefetch(2, 3, 3, 3, 3, 4);
+        for (int i = 0; i < 200 && cache.pendingPrefetches() > 0; i += 1) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        long misses = cache.misses();
+        cache.get(2, 2, 2);
+        cache.get(2, 3, 3);
+        assertEquals(misses, cache.misses());
+    }
+}
@@ -0,0 +1,78 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.Node;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2ab.KDTree;
+import bearmaps.proj2ab.Point;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static bearmaps.proj2c.utils.Constants.*;
+
+/**
+ * Times nearest-node lookups on the Berkeley map: building a fresh KDTree for every
+ * query (how closest() used to work) against the index AugmentedStreetMapGraph now
+ * builds once in its constructor.
+ */
+public class TimeClosest {
+    private static final int NUM_QUERIES_BEFORE = 20;
+    private static final int NUM_QUERIES_AFTER = 1000000;
+
+    /** Just here to get at the protected getNodes(). */
+    private static class NodeDump extends StreetMapGraph {
+        NodeDump(String filename) {
+            super(filename);
+        }
+
+        List<Node> nodes() {
+            return getNodes();
+        }
+    }
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : OSM_DB_PATH;
+        List<Node> nodes = new NodeDump(dbPath).nodes();
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(dbPath);
+        Random r = new Random(61);
+
+        Stopwatch before = new Stopwatch();
+        for (int i = 0; i < NUM_QUERIES_BEFORE; i += 1) {
+            List<Point> points = new ArrayList<>();
+            Map<Point, Node> point2node = new HashMap<>();
+            for (Node n : nodes) {
+                Point p = new Point(n.lon(), n.lat());
+                points.add(p);
+                point2node.put(p, n);
+            }
+            point2node.get(new KDTree(points).nearest(randomLon(r), randomLat(r))).id();
+        }
+        double beforeTime = before.elapsedTime();
+
+        long sink = 0;
+        Stopwatch after = new Stopwatch();
+        for (int i = 0; i < NUM_QUERIES_AFTER; i += 1) {
+            sink += graph.closest(randomLon(r), randomLat(r));
+        }
+        double afterTime = after.elapsedTime();
+
+        System.out.println(nodes.size() + " nodes (checksum " + sink + ")");
+        System.out.println(String.format("per-call KDTree: %.3f us/query",
+                beforeTime * 1e6 / NUM_QUERIES_BEFORE));
+        System.out.println(String.format("prebuilt index:  %.3f us/query",
+                afterTime * 1e6 / NUM_QUERIES_AFTER));
+    }
+
+    private static double randomLon(Random r) {
+        return ROOT_ULLON + r.nextDouble() * (ROOT_LRLON - ROOT_ULLON);
+    }
+
+    private static double randomLat(Random r) {
+        return ROOT_LRLAT + r.nextDouble() * (ROOT_ULLAT - ROOT_LRLAT);
+    }
+}
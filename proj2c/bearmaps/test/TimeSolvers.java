@@ -0,0 +1,76 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.ContractionHierarchy;
+import bearmaps.hw4.ContractionHierarchySolver;
+import bearmaps.hw4.IndexedAStarSolver;
+import bearmaps.hw4.IndexedLandmarkGraph;
+import bearmaps.hw4.Landmarks;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.WeirdSolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+
+import java.util.Random;
+
+/**
+ * Runs every shortest paths solver on the same random pairs of Berkeley nodes and prints
+ * the average number of states each explored and the average time each took.
+ */
+public class TimeSolvers {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_PAIRS = 200;
+    private static final double TIMEOUT = 60;
+    private static final String[] SOLVERS = {"AStarSolver", "WeirdSolver", "IndexedAStarSolver",
+        "BidirectionalAStarSolver", "ContractionHierarchySolver", "ALT IndexedAStarSolver"};
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : OSM_DB_PATH;
+        StreetMapGraph graph = new StreetMapGraph(dbPath);
+        CompactStreetMapGraph compact = graph.compact();
+        ContractionHierarchy ch = new ContractionHierarchy(compact);
+        IndexedLandmarkGraph alt = new IndexedLandmarkGraph(compact,
+                new Landmarks(compact, Landmarks.DEFAULT_LANDMARKS));
+        Random r = new Random(61);
+
+        long[] states = new long[SOLVERS.length];
+        long[] nanos = new long[SOLVERS.length];
+        for (int i = 0; i < NUM_PAIRS; i += 1) {
+            int s = r.nextInt(compact.numVertices()), t = r.nextInt(compact.numVertices());
+            for (int k = 0; k < SOLVERS.length; k += 1) {
+                long start = System.nanoTime();
+                ShortestPathsSolver<?> solver = solve(k, graph, compact, ch, alt, s, t);
+                nanos[k] += System.nanoTime() - start;
+                states[k] += solver.numStatesExplored();
+            }
+        }
+
+        System.out.println(String.format("%d random pairs, %d nodes", NUM_PAIRS,
+                compact.numVertices()));
+        for (int k = 0; k < SOLVERS.length; k += 1) {
+            System.out.println(String.format("%-26s %10.1f states %10.3f ms", SOLVERS[k],
+                    (double) states[k] / NUM_PAIRS, nanos[k] / 1e6 / NUM_PAIRS));
+        }
+    }
+
+    private static ShortestPathsSolver<?> solve(int k, StreetMapGraph graph,
+                                                CompactStreetMapGraph compact,
+                                                ContractionHierarchy ch,
+                                                IndexedLandmarkGraph alt, int s, int t) {
+        switch (k) {
+            case 0:
+                return new AStarSolver<>(graph, compact.id(s), compact.id(t), TIMEOUT);
+            case 1:
+                return new WeirdSolver<>(graph, compact.id(s), compact.id(t), TIMEOUT);
+            case 2:
+                return new IndexedAStarSolver(compact, s, t, TIMEOUT);
+            case 3:
+                return new BidirectionalAStarSolver(compact, s, t, TIMEOUT);
+            case 4:
+                return new ContractionHierarchySolver(ch, s, t, TIMEOUT);
+            default:
+                return new IndexedAStarSolver(alt, s, t, TIMEOUT);
+        }
+    }
+}
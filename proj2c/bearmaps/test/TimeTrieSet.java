@@ -0,0 +1,100 @@
+package bearmaps.test;
+
+import bearmaps.FrozenTrieSet;
+import bearmaps.MyTrieSet;
+import bearmaps.RadixTrieSet;
+import bearmaps.TrieSet61B;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.Random;
+
+/**
+ * Times contains() and longestPrefixOf() on tries of more and more random keys: the way
+ * MyTrieSet used to answer them (listing every key to compare against for contains(),
+ * listing the keys under every prefix of the key for longestPrefixOf()) against the walk
+ * down the key all the trie sets now do. The old times grow with the number of keys; the
+ * new ones stay put, as they depend on the length of the key alone.
+ */
+public class TimeTrieSet {
+    private static final int KEY_LENGTH = 8;
+    private static final int NUM_QUERIES_BEFORE = 200;
+    private static final int NUM_QUERIES_AFTER = 1000000;
+
+    public static void main(String[] args) {
+        System.out.println(String.format("%8s %14s %14s %14s %14s %14s %14s", "keys",
+                "old contains", "contains", "old longest", "longest", "radix", "frozen"));
+        for (int n = 1000; n <= 64000; n *= 2) {
+            Random r = new Random(61);
+            MyTrieSet trie = new MyTrieSet();
+            RadixTrieSet radix = new RadixTrieSet();
+            String[] keys = new String[n];
+            for (int i = 0; i < n; i += 1) {
+                keys[i] = randomKey(r);
+                trie.add(keys[i]);
+                radix.add(keys[i]);
+            }
+            FrozenTrieSet frozen = radix.freeze();
+            long sink = 0;
+
+            Stopwatch sw = new Stopwatch();
+            for (int i = 0; i < NUM_QUERIES_BEFORE; i += 1) {
+                sink += trie.keysWithPrefix("").contains(query(keys, r)) ? 1 : 0;
+            }
+            double oldContains = sw.elapsedTime() / NUM_QUERIES_BEFORE;
+
+            sw = new Stopwatch();
+            for (int i = 0; i < NUM_QUERIES_BEFORE; i += 1) {
+                String key = query(keys, r);
+                int length = 0;
+                while (length < key.length()
+                        && !trie.keysWithPrefix(key.substring(0, length + 1)).isEmpty()) {
+                    length += 1;
+                }
+                sink += length;
+            }
+            double oldLongest = sw.elapsedTime() / NUM_QUERIES_BEFORE;
+
+            double contains = timeContains(trie, keys, r);
+            sw = new Stopwatch();
+            for (int i = 0; i < NUM_QUERIES_AFTER; i += 1) {
+                sink += trie.longestPrefixOf(query(keys, r)).length();
+            }
+            double longest = sw.elapsedTime() / NUM_QUERIES_AFTER;
+
+            System.out.println(String.format("%8d %11.3f us %11.3f us %11.3f us %11.3f us"
+                    + " %11.3f us %11.3f us", n, oldContains * 1e6, contains * 1e6,
+                    oldLongest * 1e6, longest * 1e6, timeContains(radix, keys, r) * 1e6,
+                    timeContains(frozen, keys, r) * 1e6));
+            if (sink == 42) {
+                System.out.println();
+            }
+        }
+    }
+
+    /** Returns the seconds SET takes per contains() call, on keys half of which are in it. */
+    private static double timeContains(TrieSet61B set, String[] keys, Random r) {
+        int found = 0;
+        Stopwatch sw = new Stopwatch();
+        for (int i = 0; i < NUM_QUERIES_AFTER; i += 1) {
+            found += set.contains(query(keys, r)) ? 1 : 0;
+        }
+        double time = sw.elapsedTime() / NUM_QUERIES_AFTER;
+        if (found == 0) {
+            System.out.println("nothing found");
+        }
+        return time;
+    }
+
+    /** Returns one of KEYS or, half of the time, a random key, likely not one of them. */
+    private static String query(String[] keys, Random r) {
+        return r.nextBoolean() ? keys[r.nextInt(keys.length)] : randomKey(r);
+    }
+
+    private static String randomKey(Random r) {
+        char[] key = new char[KEY_LENGTH];
+        for (int i = 0; i < KEY_LENGTH; i += 1) {
+            key[i] = (char) ('a' + r.nextInt(26));
+        }
+        return new String(key);
+    }
+}
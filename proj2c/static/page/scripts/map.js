@@ -92,6 +92,7 @@ $(function() {
         var params = get_view_bounds();
         params.w = w;
         params.h = h;
+        params.image = 'separate';
         console.log(params);
         $warningsContainer.empty();
         $.get({
@@ -102,9 +103,8 @@ $(function() {
                 console.log(data);
                 if (data.query_success) {
                     $loadingStatus.hide();
-                    map.src = 'data:image/png;base64,' + data.b64_encoded_image_data;
-                    console.log('Updating map with image length: ' +
-                                data.b64_encoded_image_data.length);
+                    map.src = host + '/' + data.image_url;
+                    console.log('Updating map with image: ' + data.image_url);
                     ullon_bound = data.raster_ul_lon;
                     ullat_bound = data.raster_ul_lat;
                     lrlon_bound = data.raster_lr_lon;